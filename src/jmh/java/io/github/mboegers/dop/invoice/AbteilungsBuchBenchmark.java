@@ -0,0 +1,100 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skalierung gleichzeitiger Buchungen von 1 bis 64 Threads in das {@linkplain AbteilungsBuch} im Vergleich zu
+ * {@linkplain ConcurrentHashMap#merge}, das je Abteilung sperrt und die Summe als {@linkplain Double} ersetzt.
+ * Die Hälfte der Buchungen trifft dieselbe Abteilung.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar AbteilungsBuchBenchmark
+ *}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class AbteilungsBuchBenchmark {
+    private static final String[] ABTEILUNGEN = {"HR", "IT", "Vertrieb", "Einkauf", "Marketing", "Recht", "Lager",
+            "Kantine"};
+
+    @State(Scope.Benchmark)
+    public static class Buecher {
+        AbteilungsBuch buch;
+        ConcurrentHashMap<String, Double> map;
+
+        @Setup
+        public void setup() {
+            buch = new AbteilungsBuch();
+            map = new ConcurrentHashMap<>();
+        }
+    }
+
+    private static String abteilung() {
+        var random = ThreadLocalRandom.current();
+        return random.nextBoolean() ? ABTEILUNGEN[0] : ABTEILUNGEN[random.nextInt(ABTEILUNGEN.length)];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void abteilungsBuch01(Buecher b) {
+        b.buch.buche(abteilung(), 1d);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void abteilungsBuch04(Buecher b) {
+        b.buch.buche(abteilung(), 1d);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void abteilungsBuch16(Buecher b) {
+        b.buch.buche(abteilung(), 1d);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void abteilungsBuch64(Buecher b) {
+        b.buch.buche(abteilung(), 1d);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void concurrentHashMap01(Buecher b) {
+        b.map.merge(abteilung(), 1d, Double::sum);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentHashMap04(Buecher b) {
+        b.map.merge(abteilung(), 1d, Double::sum);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void concurrentHashMap16(Buecher b) {
+        b.map.merge(abteilung(), 1d, Double::sum);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void concurrentHashMap64(Buecher b) {
+        b.map.merge(abteilung(), 1d, Double::sum);
+    }
+}
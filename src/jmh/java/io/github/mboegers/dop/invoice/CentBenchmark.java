@@ -0,0 +1,87 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche die Summe der MwSt mit {@code double}, exakten {@linkplain Cent} und {@linkplain BigDecimal}.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar CentBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class CentBenchmark {
+    private static final BigDecimal MWST_SATZ = new BigDecimal("0.10");
+
+    @Param({"65536"})
+    int size;
+
+    Kunde[] kunden;
+    double[] werte;
+    long[] werteCent;
+    BigDecimal[] werteBigDecimal;
+
+    @Setup
+    public void setup() {
+        kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        werte = KundenProfil.werte(size, 4711L);
+        werteCent = new long[size];
+        werteBigDecimal = new BigDecimal[size];
+        for (int i = 0; i < size; i++) {
+            werteCent[i] = Cent.von(werte[i], RoundingMode.HALF_EVEN);
+            werteBigDecimal[i] = Cent.alsBigDecimal(werteCent[i]);
+        }
+    }
+
+    @Benchmark
+    public double mitDouble() {
+        double summe = 0;
+        for (int i = 0; i < size; i++) {
+            summe += MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunden[i], werte[i]);
+        }
+        return summe;
+    }
+
+    @Benchmark
+    public long mitCent() {
+        long summe = 0;
+        for (int i = 0; i < size; i++) {
+            summe = Cent.plus(summe, MwStRechner.SwitchExpressionWhenClauseUnnamed
+                    .calculateMwSt(kunden[i], werteCent[i], RoundingMode.HALF_EVEN));
+        }
+        return summe;
+    }
+
+    @Benchmark
+    public BigDecimal mitBigDecimal() {
+        var summe = BigDecimal.ZERO;
+        for (int i = 0; i < size; i++) {
+            var mwst = switch (kunden[i]) {
+                case Businesskunde(String _, _, var isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> BigDecimal.ZERO;
+                case Businesskunde _, Privatkunde _ ->
+                        werteBigDecimal[i].multiply(MWST_SATZ).setScale(2, RoundingMode.HALF_EVEN);
+            };
+            summe = summe.add(mwst);
+        }
+        return summe;
+    }
+}
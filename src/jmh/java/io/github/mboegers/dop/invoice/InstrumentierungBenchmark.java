@@ -0,0 +1,85 @@
+package io.github.mboegers.dop.invoice;
+
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kosten der {@linkplain Instrumentierung} für {@linkplain Main#sendInvoiceFor2}: abgeschaltet wie bei jedem Aufruf
+ * ohne Instrumentierung, mit Histogrammen und mit JFR Ereignissen in einer laufenden Aufzeichnung.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar InstrumentierungBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class InstrumentierungBenchmark {
+
+    @Param({"1024"})
+    int size;
+
+    Rechnung[] rechnungen;
+    Instrumentierung histogramme;
+    Instrumentierung jfr;
+    Recording recording;
+    MailSenke mail;
+    DbSenke db;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole bh) {
+        var kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        var werte = KundenProfil.werte(size, 4711L);
+        rechnungen = new Rechnung[size];
+        for (int i = 0; i < size; i++) {
+            rechnungen[i] = i % 4 == 0
+                    ? new InterneVerechnung("HR", werte[i])
+                    : new ExternVersandt(kunden[i], werte[i]);
+        }
+        histogramme = new Instrumentierung(true, false);
+        jfr = new Instrumentierung(false, true);
+        mail = (adresse, text) -> bh.consume(text);
+        db = (abteilung, wert) -> bh.consume(wert);
+        recording = new Recording();
+        recording.enable(Instrumentierung.StufenEreignis.NAME);
+        recording.setToDisk(true);
+        recording.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recording.close();
+    }
+
+    @Benchmark
+    public void aus() {
+        for (var r : rechnungen) Main.sendInvoiceFor2(r, mail, db, Instrumentierung.AUS);
+    }
+
+    @Benchmark
+    public void histogramme() {
+        for (var r : rechnungen) Main.sendInvoiceFor2(r, mail, db, histogramme);
+    }
+
+    @Benchmark
+    public void jfr() {
+        for (var r : rechnungen) Main.sendInvoiceFor2(r, mail, db, jfr);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.SplittableRandom;
+
+/**
+ * Verteilung der {@linkplain Kunde Kunden} in einem Benchmark Datensatz.
+ * <p>
+ * Die versiegelte Hierarchie kennt nur zwei Typen, daher ist "megamorph" hier der Fall, in dem alle drei Zweige der
+ * Berechnung (Privatkunde, Businesskunde mit und ohne Vorsteuerabzug) getroffen werden.
+ */
+public enum KundenProfil {
+    /**
+     * nur Privatkunden
+     */
+    MONOMORPH,
+    /**
+     * Privatkunden und Businesskunden ohne Vorsteuerabzug
+     */
+    BIMORPH,
+    /**
+     * Privatkunden und Businesskunden mit und ohne Vorsteuerabzug
+     */
+    MEGAMORPH;
+
+    private static final Kunde PRIVAT = new Privatkunde("Merlin", "merlin@dummy.de");
+    private static final Kunde BUSINESS = new Businesskunde("adesso SE", "info@dummy.de", false);
+    private static final Kunde BUSINESS_ABZUG = new Businesskunde("Eureg JUG", "jug@dummy.de", true);
+
+    /**
+     * Erzeuge reproduzierbar {@code size} Kunden.
+     *
+     * @param skew Anteil des dominanten Typs (Privatkunde), der Rest verteilt sich gleichmäßig auf die anderen Typen
+     */
+    Kunde[] kunden(int size, double skew, long seed) {
+        var random = new SplittableRandom(seed);
+        var kunden = new Kunde[size];
+        for (int i = 0; i < size; i++) {
+            kunden[i] = switch (this) {
+                case MONOMORPH -> PRIVAT;
+                case BIMORPH -> random.nextDouble() < skew ? PRIVAT : BUSINESS;
+                case MEGAMORPH -> {
+                    if (random.nextDouble() < skew) yield PRIVAT;
+                    else yield random.nextBoolean() ? BUSINESS : BUSINESS_ABZUG;
+                }
+            };
+        }
+        return kunden;
+    }
+
+    /**
+     * Erzeuge reproduzierbar {@code size} Rechnungswerte zwischen 1 und 10.000
+     */
+    static double[] werte(int size, long seed) {
+        var random = new SplittableRandom(seed);
+        var werte = new double[size];
+        for (int i = 0; i < size; i++) {
+            werte[i] = random.nextDouble(1d, 10_000d);
+        }
+        return werte;
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.mboegers.dop.invoice;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Vergleicht den Speicherbedarf von Rechnungen mit eigenen Kunden-Records mit {@linkplain KompakteRechnungen} über
+ * ein {@linkplain KundenRegister}.
+ * <p>
+ * Kein JMH Benchmark, gemessen wird der belegte Heap nach einer GC und der Speicher außerhalb des Heaps. Die Records
+ * werden an einer Stichprobe gemessen und auf alle Rechnungen hochgerechnet, die kompakten Rechnungen vollständig
+ * angelegt. Der Heap muss daher für {@code 12 * rechnungen} Bytes reichen.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -Xmx2g -cp target/benchmarks.jar io.github.mboegers.dop.invoice.KundenSpeicherBenchmark \
+ *       1000000 50000000 1000000
+ *}
+ */
+class KundenSpeicherBenchmark {
+
+    /**
+     * @param args Anzahl Kunden, Anzahl Rechnungen und Größe der Stichprobe für die Records
+     */
+    public static void main(String[] args) {
+        int kunden = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rechnungen = args.length > 1 ? Integer.parseInt(args[1]) : 50_000_000;
+        int stichprobe = args.length > 2 ? Integer.parseInt(args[2]) : Math.min(rechnungen, 1_000_000);
+
+        // Records, jede Rechnung trägt einen eigenen Kunden mit eigenen Strings wie nach dem Parsen
+        long vorher = belegterHeap();
+        var records = new ArrayList<Rechnung>(stichprobe);
+        var random = new SplittableRandom(42L);
+        for (int i = 0; i < stichprobe; i++) {
+            records.add(new ExternVersandt(kunde(random.nextInt(kunden)), random.nextDouble(1d, 10_000d)));
+        }
+        long recordBytes = (belegterHeap() - vorher) * rechnungen / stichprobe;
+        Reference.reachabilityFence(records);
+        records = null;
+
+        // Register und kompakte Rechnungen
+        vorher = belegterHeap();
+        try (var register = new KundenRegister(kunden, 64L * kunden)) {
+            for (int i = 0; i < kunden; i++) register.intern(kunde(i));
+            var kompakt = new KompakteRechnungen(register, rechnungen);
+            random = new SplittableRandom(42L);
+            for (int i = 0; i < rechnungen; i++) kompakt.add(random.nextInt(kunden), random.nextDouble(1d, 10_000d));
+            long heapBytes = belegterHeap() - vorher;
+            long offHeapBytes = register.offHeapBytes();
+            Reference.reachabilityFence(kompakt);
+
+            System.out.printf("%,d Kunden, %,d Rechnungen%n", kunden, rechnungen);
+            System.out.printf("Records (hochgerechnet aus %,d): %,d MiB Heap, %.1f B/Rechnung%n",
+                    stichprobe, recordBytes >> 20, (double) recordBytes / rechnungen);
+            System.out.printf("Register + kompakt: %,d MiB Heap + %,d MiB off-heap, %.1f B/Rechnung%n",
+                    heapBytes >> 20, offHeapBytes >> 20, (double) (heapBytes + offHeapBytes) / rechnungen);
+        }
+    }
+
+    /**
+     * Kunde {@code i} mit neuen Strings, jeder dritte ist ein Businesskunde
+     */
+    private static Kunde kunde(int i) {
+        var name = "Kunde " + i;
+        var mail = "kunde" + i + "@dummy.de";
+        return switch (i % 3) {
+            case 0 -> new Privatkunde(name, mail);
+            case 1 -> new Businesskunde(name, mail, false);
+            default -> new Businesskunde(name, mail, true);
+        };
+    }
+
+    private static long belegterHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skalierung der {@linkplain MwStAuswertung} von einem bis zu allen Kernen. Mehr Threads als Kerne laufen mit, zeigen
+ * aber keine Skalierung mehr, auf größeren Maschinen die Threads passend zu den Kernen angeben.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar MwStAuswertungBenchmark -p threads=1,2,4,8,16
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class MwStAuswertungBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param({"4194304"})
+    int size;
+
+    List<Rechnung> rechnungen;
+    ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        var werte = KundenProfil.werte(size, 4711L);
+        var abteilungen = new String[]{"HR", "IT", "Vertrieb", "Einkauf"};
+        rechnungen = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rechnungen.add(i % 5 == 0
+                    ? new InterneVerechnung(abteilungen[i % abteilungen.length], werte[i])
+                    : new ExternVersandt(kunden[i], werte[i]));
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public MwStAuswertung.Ergebnis forkJoin() {
+        return MwStAuswertung.auswerten(rechnungen, pool);
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche die MwSt Berechnung je Record mit der spaltenorientierten Berechnung über einen
+ * {@linkplain RechnungsBatch}, skalar und mit der Vector API.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar MwStBatchBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class MwStBatchBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    Kunde[] kunden;
+    double[] werte;
+    RechnungsBatch batch;
+    double[] mwst;
+
+    @Setup
+    public void setup() {
+        kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        werte = KundenProfil.werte(size, 4711L);
+        batch = new RechnungsBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(new ExternVersandt(kunden[i], werte[i]));
+        }
+        mwst = new double[size];
+    }
+
+    @Benchmark
+    public double[] perRecord() {
+        for (int i = 0; i < size; i++) {
+            mwst[i] = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunden[i], werte[i]);
+        }
+        return mwst;
+    }
+
+    @Benchmark
+    public double[] batchScalar() {
+        MwStRechner.Batch.calculateMwSt(batch, mwst);
+        return mwst;
+    }
+
+    @Benchmark
+    public double[] batchVectorized() {
+        MwStRechner.Vectorized.calculateMwSt(batch, mwst);
+        return mwst;
+    }
+}
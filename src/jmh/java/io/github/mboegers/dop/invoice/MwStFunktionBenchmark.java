@@ -0,0 +1,102 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.DoubleStream;
+
+/**
+ * Vergleiche den Aufruf über {@code BiFunction<Kunde, Double, Double>} mit der primitiven {@linkplain MwStFunktion} und
+ * ihren Massenberechnungen. Mit {@code -prof gc} zeigt {@code gc.alloc.rate.norm} die Allokation je Rechnung.
+ * Die Funktionen werden nicht eingebettet, wie bei einem Aufruf über ein Interface aus einem anderen Modul, sonst
+ * entfernt die Escape Analyse die Boxen.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar MwStFunktionBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+@OperationsPerInvocation(MwStFunktionBenchmark.SIZE)
+public class MwStFunktionBenchmark {
+    static final int SIZE = 1024;
+
+    Kunde[] kunden;
+    double[] werte;
+    double[] mwst;
+    BiFunction<Kunde, Double, Double> boxed;
+    MwStFunktion primitiv;
+    MwStFunktion strategie;
+
+    @Setup
+    public void setup() {
+        kunden = KundenProfil.MEGAMORPH.kunden(SIZE, 0.5, 42L);
+        werte = KundenProfil.werte(SIZE, 4711L);
+        mwst = new double[SIZE];
+        boxed = MwStFunktionBenchmark::boxed;
+        primitiv = MwStFunktionBenchmark::primitiv;
+        strategie = MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt;
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static Double boxed(Kunde kunde, Double wert) {
+        return MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static double primitiv(Kunde kunde, double wert) {
+        return MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert);
+    }
+
+    @Benchmark
+    public double biFunction() {
+        double summe = 0d;
+        for (int i = 0; i < SIZE; i++) summe += boxed.apply(kunden[i], werte[i]);
+        return summe;
+    }
+
+    @Benchmark
+    public double mwStFunktion() {
+        double summe = 0d;
+        for (int i = 0; i < SIZE; i++) summe += primitiv.calculateMwSt(kunden[i], werte[i]);
+        return summe;
+    }
+
+    @Benchmark
+    public double[] mwStFunktionSpalten() {
+        primitiv.calculateMwSt(kunden, werte, mwst);
+        return mwst;
+    }
+
+    /**
+     * die Strategie direkt als {@linkplain MwStFunktion}, hier darf der JIT sie in die Schleife einbetten
+     */
+    @Benchmark
+    public double[] strategieSpalten() {
+        strategie.calculateMwSt(kunden, werte, mwst);
+        return mwst;
+    }
+
+    /**
+     * alloziert je Aufruf nur die Pipeline, unabhängig von der Anzahl Werte
+     */
+    @Benchmark
+    public double doubleStream() {
+        return strategie.calculateMwSt(kunden[0], DoubleStream.of(werte)).sum();
+    }
+}
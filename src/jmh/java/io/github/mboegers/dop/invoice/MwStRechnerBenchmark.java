@@ -0,0 +1,118 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche die Kosten aller Implementierungen in {@linkplain MwStRechner} auf unterschiedlich verteilten Kunden.
+ * {@snippet lang = "shell":
+ *   mvn -Pjmh package
+ *   java --enable-preview -jar target/benchmarks.jar MwStRechnerBenchmark -prof gc
+ *}
+ *
+ * @see KundenProfil
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class MwStRechnerBenchmark {
+
+    @Param({"1024", "65536"})
+    int size;
+
+    /**
+     * {@linkplain KundenProfil} und Anteil der Privatkunden, z.B. {@code -p verteilung=BIMORPH:0.7}. Ein Anteil nur für
+     * die Profile, die ihn berücksichtigen, sonst liefe {@code MONOMORPH} je Anteil doppelt.
+     */
+    @Param({"MONOMORPH", "BIMORPH:0.5", "BIMORPH:0.9", "MEGAMORPH:0.5", "MEGAMORPH:0.9"})
+    String verteilung;
+
+    Kunde[] kunden;
+    double[] werte;
+
+    @Setup
+    public void setup() {
+        var teile = verteilung.split(":");
+        var profil = KundenProfil.valueOf(teile[0]);
+        double skew = teile.length > 1 ? Double.parseDouble(teile[1]) : 1d;
+        kunden = profil.kunden(size, skew, 42L);
+        werte = KundenProfil.werte(size, 4711L);
+    }
+
+    @Benchmark
+    public double plainOOP() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.PlainOOP.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double instanceOfPattern() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.InstanceOfPattern.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double swichExpression() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.SwichExpression.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double switchExpressionWhenClause() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.SwitchExpressionWhenClause.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double switchExpressionWhenClauseDeconstruct() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.SwitchExpressionWhenClauseDeconstruct.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double switchExpressionWhenClauseDeconstructVar() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.SwitchExpressionWhenClauseDeconstructVar.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double switchExpressionWhenClauseUnnamed() {
+        double sum = 0d;
+        for (int i = 0; i < kunden.length; i++) {
+            sum += MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+}
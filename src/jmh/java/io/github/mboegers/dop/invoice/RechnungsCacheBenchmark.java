@@ -0,0 +1,70 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche MwSt und Rechnungstext mit und ohne {@linkplain RechnungsCache}, wenn sich {@code verschiedene} Rechnungen
+ * ständig wiederholen.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar RechnungsCacheBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class RechnungsCacheBenchmark {
+
+    @Param({"100", "10000"})
+    int verschiedene;
+
+    @Param({"1024"})
+    int size;
+
+    ExternVersandt[] rechnungen;
+    RechnungsCache cache;
+
+    @Setup
+    public void setup() {
+        var kunden = KundenProfil.MEGAMORPH.kunden(verschiedene, 0.5, 42L);
+        var werte = KundenProfil.werte(verschiedene, 4711L);
+        rechnungen = new ExternVersandt[size];
+        for (int i = 0; i < size; i++) {
+            int j = (int) ((i * 2654435761L) % verschiedene);
+            rechnungen[i] = new ExternVersandt(kunden[j], Math.floor(werte[j]));
+        }
+        cache = new RechnungsCache(1_000);
+    }
+
+    @Benchmark
+    public void ohneCache(Blackhole bh) {
+        for (var r : rechnungen) {
+            var mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(r.kunde(), r.wert());
+            bh.consume(Main.produceInvoiceText(r.kunde(), r.wert(), mwst));
+        }
+    }
+
+    @Benchmark
+    public void mitCache(Blackhole bh) {
+        for (var r : rechnungen) {
+            bh.consume(cache.text(r));
+        }
+    }
+}
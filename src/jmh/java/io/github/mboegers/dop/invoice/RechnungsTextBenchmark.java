@@ -0,0 +1,66 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche den Rechnungstext über {@code FMT."..."} mit der vorkompilierten {@linkplain RechnungsText} Vorlage.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar RechnungsTextBenchmark -prof gc
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class RechnungsTextBenchmark {
+    private static final int SIZE = 1024;
+
+    Kunde[] kunden;
+    double[] werte;
+    double[] mwst;
+    StringBuilder puffer;
+    int i;
+
+    @Setup
+    public void setup() {
+        kunden = KundenProfil.MEGAMORPH.kunden(SIZE, 0.5, 42L);
+        werte = KundenProfil.werte(SIZE, 4711L);
+        mwst = new double[SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            mwst[j] = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunden[j], werte[j]);
+        }
+        puffer = new StringBuilder(256);
+    }
+
+    @Benchmark
+    public String fmt() {
+        int j = i++ & (SIZE - 1);
+        return Main.produceInvoiceText(kunden[j], werte[j], mwst[j]);
+    }
+
+    @Benchmark
+    public String vorlage() {
+        int j = i++ & (SIZE - 1);
+        return RechnungsText.STANDARD.render(kunden[j], werte[j], mwst[j]);
+    }
+
+    @Benchmark
+    public StringBuilder vorlageInPuffer() {
+        int j = i++ & (SIZE - 1);
+        puffer.setLength(0);
+        return RechnungsText.STANDARD.render(puffer, "Merlin", werte[j], mwst[j]);
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Durchsatz, Latenz und Allokation des gesamten Ablaufs je Rechnung über {@link Main#sendInvoiceFor} und
+ * {@link Main#sendInvoiceFor2}, mit Rechnungen aus dem {@linkplain Lastgenerator} und Senken ohne eigene Kosten.
+ * <p>
+ * {@code durchsatz} misst Rechnungen je Sekunde, {@code latenz} die Verteilung der Zeit je Rechnung. Die Main-Methode
+ * führt beide mit {@code -prof gc} aus und schreibt je Kombination der Parameter Rechnungen/s, p50, p99 und p999 in
+ * Nanosekunden sowie die Allokation in Byte je Rechnung als JSON, standardmäßig nach
+ * {@code target/rechnungsfluss.json}:
+ * {@snippet lang = "shell":
+ *   java --enable-preview -cp target/benchmarks.jar io.github.mboegers.dop.invoice.RechnungsflussBenchmark [datei] [jmh]
+ *}
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class RechnungsflussBenchmark {
+
+    /**
+     * Zweierpotenz, damit der Index mit einer Maske umläuft
+     */
+    private static final int ANZAHL = 1 << 16;
+    /**
+     * Zahl nach JSON Grammatik, anders als {@linkplain Double#parseDouble} ohne {@code NaN}, {@code 1f} oder
+     * {@code 0x1p3}
+     */
+    private static final Pattern JSON_ZAHL = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    @Param({"sendInvoiceFor", "sendInvoiceFor2"})
+    String stil;
+
+    @Param({"0.0", "1.1"})
+    double zipf;
+
+    @Param({"10000"})
+    int kunden;
+
+    @Param({"LOGNORMAL"})
+    String betraege;
+
+    Rechnung[] rechnungen;
+    boolean zwei;
+    int index;
+    Senke senke;
+
+    /**
+     * Merkt sich nur, was sie bekommt, damit der JIT den Versand nicht entfernt
+     */
+    static final class Senke implements MailSenke, DbSenke {
+        int zeichen;
+        double summe;
+
+        @Override
+        public void sendViaMail(String empf, String txt) {
+            zeichen += txt.length();
+        }
+
+        @Override
+        public void storeInDB(String abt, double value) {
+            summe += value;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        var konfiguration = new Lastgenerator.Konfiguration(Lastgenerator.Mischung.STANDARD, kunden, zipf,
+                Lastgenerator.Betraege.valueOf(betraege), 42L);
+        rechnungen = new Lastgenerator(konfiguration).erzeuge(ANZAHL).toArray(Rechnung[]::new);
+        zwei = switch (stil) {
+            case "sendInvoiceFor" -> false;
+            case "sendInvoiceFor2" -> true;
+            default -> throw new IllegalArgumentException("Unbekannter Stil " + stil);
+        };
+        senke = new Senke();
+    }
+
+    private int versende() {
+        var rechnung = rechnungen[index++ & (ANZAHL - 1)];
+        if (zwei) Main.sendInvoiceFor2(rechnung, senke, senke);
+        else Main.sendInvoiceFor(rechnung, senke, senke);
+        return senke.zeichen;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int durchsatz() {
+        return versende();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int latenz() {
+        return versende();
+    }
+
+    /**
+     * @param args optional die Zieldatei, danach weitere JMH Optionen wie {@code -f 1 -wi 1 -i 3}
+     */
+    public static void main(String[] args) throws RunnerException, IOException, CommandLineOptionException {
+        boolean mitDatei = args.length > 0 && !args[0].startsWith("-");
+        var datei = Path.of(mitDatei ? args[0] : "target/rechnungsfluss.json");
+        var optionen = new OptionsBuilder()
+                .parent(new CommandLineOptions(Arrays.copyOfRange(args, mitDatei ? 1 : 0, args.length)))
+                .include(RechnungsflussBenchmark.class.getName() + "\\.")
+                .addProfiler(GCProfiler.class)
+                .build();
+        var json = json(new Runner(optionen).run());
+        if (datei.getParent() != null) Files.createDirectories(datei.getParent());
+        Files.writeString(datei, json);
+        System.out.println(json);
+    }
+
+    /**
+     * Ein Objekt je Kombination der Parameter, Latenzen aus {@code latenz}, alles andere aus {@code durchsatz}
+     */
+    static String json(Collection<RunResult> ergebnisse) {
+        var zeilen = new LinkedHashMap<String, Map<String, String>>();
+        for (var ergebnis : ergebnisse) {
+            var parameter = ergebnis.getParams();
+            var schluessel = parameter.getParamsKeys().stream()
+                    .map(name -> "\"%s\": %s".formatted(name, wert(parameter.getParam(name))))
+                    .toList();
+            var felder = zeilen.computeIfAbsent(String.join(", ", schluessel), _ -> new LinkedHashMap<>());
+            var primaer = ergebnis.getPrimaryResult();
+            switch (parameter.getMode()) {
+                case Throughput -> {
+                    felder.put("rechnungenProSekunde", zahl(primaer.getScore()));
+                    ergebnis.getSecondaryResults().forEach((name, sekundaer) -> {
+                        if (name.endsWith("gc.alloc.rate.norm")) {
+                            felder.put("bytesProRechnung", zahl(sekundaer.getScore()));
+                        }
+                    });
+                }
+                case SampleTime -> {
+                    var statistik = primaer.getStatistics();
+                    felder.put("p50Nanos", zahl(statistik.getPercentile(50d)));
+                    felder.put("p99Nanos", zahl(statistik.getPercentile(99d)));
+                    felder.put("p999Nanos", zahl(statistik.getPercentile(99.9d)));
+                }
+                default -> {
+                }
+            }
+        }
+
+        var json = new StringBuilder("{\n  \"benchmark\": \"RechnungsflussBenchmark\",\n  \"ergebnisse\": [");
+        var trenner = "\n";
+        for (var zeile : zeilen.entrySet()) {
+            json.append(trenner).append("    {").append(zeile.getKey());
+            zeile.getValue().forEach((name, wert) -> json.append(", \"").append(name).append("\": ").append(wert));
+            json.append('}');
+            trenner = ",\n";
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static String wert(String parameter) {
+        if (JSON_ZAHL.matcher(parameter).matches()) return parameter;
+        return '"' + parameter.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String zahl(double wert) {
+        return Double.isFinite(wert) ? String.format(Locale.ROOT, "%.1f", wert) : "null";
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche den Versand je Rechnung über eine eigene Verbindung mit der {@linkplain SmtpSenke}, einmal nur mit
+ * Pool und Pipelining und einmal zusätzlich mit Sammelmails für Businesskunden. Die {@linkplain SmtpAttrappe} wartet
+ * vor jeder Antwort {@code umlaufMillis}, wie ein entfernter Server.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar SmtpSenkeBenchmark
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class SmtpSenkeBenchmark {
+
+    @Param({"200"})
+    int size;
+
+    @Param({"0", "1"})
+    int umlaufMillis;
+
+    List<Rechnung> rechnungen;
+    SmtpAttrappe server;
+    MailSenke einzeln;
+    SmtpSenke gepoolt;
+    SmtpSenke sammelnd;
+
+    @Setup
+    public void setup() throws IOException {
+        var kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        var werte = KundenProfil.werte(size, 4711L);
+        rechnungen = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) rechnungen.add(new ExternVersandt(kunden[i], werte[i]));
+
+        server = new SmtpAttrappe();
+        server.antwortZeit(Duration.ofMillis(umlaufMillis));
+        var konfiguration = SmtpSenke.Konfiguration.lokal(server.port());
+        einzeln = SmtpSenke.einzeln(konfiguration);
+        gepoolt = new SmtpSenke(konfiguration, _ -> false);
+        var business = new HashSet<String>();
+        for (var kunde : kunden) if (kunde instanceof Businesskunde b) business.add(b.mail());
+        sammelnd = new SmtpSenke(konfiguration, business::contains);
+    }
+
+    @TearDown(Level.Iteration)
+    public void leeren() {
+        server.leeren();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        gepoolt.close();
+        sammelnd.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int einzeln() {
+        rechnungen.forEach(r -> Main.sendInvoiceFor2(r, einzeln, (_, _) -> {
+        }));
+        return rechnungen.size();
+    }
+
+    @Benchmark
+    public long gepoolt() {
+        rechnungen.forEach(r -> Main.sendInvoiceFor2(r, gepoolt, (_, _) -> {
+        }));
+        gepoolt.flush();
+        return gepoolt.statistik().mails();
+    }
+
+    @Benchmark
+    public long sammelmails() {
+        rechnungen.forEach(r -> Main.sendInvoiceFor2(r, sammelnd, (_, _) -> {
+        }));
+        sammelnd.flush();
+        return sammelnd.statistik().mails();
+    }
+}
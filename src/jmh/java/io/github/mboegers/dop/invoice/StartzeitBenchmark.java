@@ -0,0 +1,109 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Misst die Zeit vom Start der JVM bis zur ersten behandelten Rechnung und bis zum Ende eines kurzen Laufs über die
+ * Beispielrechnungen, für {@link Main#main} und den {@linkplain Schnellstart} ohne und mit AppCDS Archiv.
+ * <p>
+ * Kein JMH Benchmark, jeder Lauf ist eine neue JVM mit dem Klassenpfad dieser JVM. Die erste Rechnung ist die erste
+ * Zeile der {@linkplain Dummy} Ausgabe. Das Archiv wird vorher mit dem Trainingslauf des Schnellstarts in einem
+ * temporären Verzeichnis angelegt. Die Varianten laufen abwechselnd, ausgegeben werden Median und Minimum.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -cp target/benchmarks.jar io.github.mboegers.dop.invoice.StartzeitBenchmark 20
+ *}
+ */
+class StartzeitBenchmark {
+
+    private record Variante(String name, List<String> jvmArgumente, String klasse) {
+    }
+
+    /**
+     * @param args Anzahl Läufe je Variante
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int laeufe = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        var verzeichnis = Files.createTempDirectory("startzeit");
+        var archiv = verzeichnis.resolve("rechnungen.jsa");
+        try {
+            starte(List.of("-XX:ArchiveClassesAtExit=" + archiv), Schnellstart.class.getName(), "--trainieren");
+            var mitArchiv = "-XX:SharedArchiveFile=" + archiv;
+            var varianten = List.of(
+                    new Variante("Main", List.of(), Main.class.getName()),
+                    new Variante("Schnellstart", List.of(), Schnellstart.class.getName()),
+                    new Variante("Schnellstart + AppCDS", List.of(mitArchiv), Schnellstart.class.getName()),
+                    new Variante("Schnellstart + AppCDS + C1", List.of(mitArchiv, "-XX:TieredStopAtLevel=1"),
+                            Schnellstart.class.getName()));
+
+            var ersteRechnung = new long[varianten.size()][laeufe];
+            var gesamt = new long[varianten.size()][laeufe];
+            for (int lauf = 0; lauf < laeufe; lauf++) {
+                for (int v = 0; v < varianten.size(); v++) {
+                    var variante = varianten.get(v);
+                    var zeiten = starte(variante.jvmArgumente(), variante.klasse());
+                    ersteRechnung[v][lauf] = zeiten[0];
+                    gesamt[v][lauf] = zeiten[1];
+                }
+            }
+
+            System.out.printf("%d Läufe je Variante, Millisekunden%n", laeufe);
+            System.out.printf("%-28s %21s %21s%n", "", "erste Rechnung", "gesamt");
+            System.out.printf("%-28s %10s %10s %10s %10s%n", "Variante", "Median", "Min", "Median", "Min");
+            for (int v = 0; v < varianten.size(); v++) {
+                System.out.printf("%-28s %10.1f %10.1f %10.1f %10.1f%n", varianten.get(v).name(),
+                        median(ersteRechnung[v]), min(ersteRechnung[v]), median(gesamt[v]), min(gesamt[v]));
+            }
+        } finally {
+            Files.deleteIfExists(archiv);
+            Files.delete(verzeichnis);
+        }
+    }
+
+    /**
+     * @return Nanosekunden bis zur ersten Rechnung und bis zum Ende der JVM
+     */
+    private static long[] starte(List<String> jvmArgumente, String klasse, String... argumente)
+            throws IOException, InterruptedException {
+        var befehl = new ArrayList<String>();
+        befehl.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        befehl.add("--enable-preview");
+        befehl.addAll(jvmArgumente);
+        befehl.add("-cp");
+        befehl.add(System.getProperty("java.class.path"));
+        befehl.add(klasse);
+        befehl.addAll(Arrays.asList(argumente));
+
+        long start = System.nanoTime();
+        var prozess = new ProcessBuilder(befehl).redirectErrorStream(true).start();
+        long ersteRechnung = -1;
+        try (var ausgabe = new BufferedReader(new InputStreamReader(prozess.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String zeile; (zeile = ausgabe.readLine()) != null; ) {
+                if (ersteRechnung < 0 && (zeile.startsWith("Sende E-Mail") || zeile.startsWith("Speicher"))) {
+                    ersteRechnung = System.nanoTime() - start;
+                }
+            }
+        }
+        int code = prozess.waitFor();
+        long ende = System.nanoTime() - start;
+        if (code != 0) throw new IllegalStateException("%s endete mit %d".formatted(befehl, code));
+        return new long[]{ersteRechnung, ende};
+    }
+
+    private static double median(long[] nanos) {
+        var sortiert = nanos.clone();
+        Arrays.sort(sortiert);
+        return sortiert[sortiert.length / 2] / 1e6d;
+    }
+
+    private static double min(long[] nanos) {
+        return Arrays.stream(nanos).min().orElseThrow() / 1e6d;
+    }
+}
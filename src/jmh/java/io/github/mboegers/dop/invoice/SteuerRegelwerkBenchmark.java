@@ -0,0 +1,78 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche den fest programmierten {@code switch} mit dem kompilierten {@linkplain SteuerRegelwerk.Tarif}.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar SteuerRegelwerkBenchmark
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class SteuerRegelwerkBenchmark {
+
+    @Param({"65536"})
+    int size;
+
+    Kunde[] kunden;
+    double[] werte;
+    SteuerRegelwerk regelwerk;
+    SteuerRegelwerk.Tarif tarif;
+
+    @Setup
+    public void setup() {
+        kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        werte = KundenProfil.werte(size, 4711L);
+        regelwerk = new SteuerRegelwerk(SteuerRegelwerk.STANDARD);
+        tarif = regelwerk.tarif("DE", LocalDate.now());
+    }
+
+    @Benchmark
+    public double switchExpression() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double tarif() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += tarif.calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * mit Nachschlagen des Tarifs je Rechnung, z.B. wenn Land oder Datum je Rechnung wechseln
+     */
+    @Benchmark
+    public double tarifJeRechnung() {
+        var heute = LocalDate.now();
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += regelwerk.tarif("DE", heute).calculateMwSt(kunden[i], werte[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.mboegers.dop.invoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleiche den sequenziellen Versand mit {@linkplain VirtuellerVersand} gegen eine {@linkplain LatenzSenke}.
+ * {@snippet lang = "shell":
+ *   java --enable-preview -jar target/benchmarks.jar VirtuellerVersandBenchmark
+ *}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class VirtuellerVersandBenchmark {
+
+    @Param({"1000"})
+    int size;
+
+    @Param({"1"})
+    int latenzMillis;
+
+    @Param({"64", "256"})
+    int limit;
+
+    List<Rechnung> rechnungen;
+    LatenzSenke senke;
+    VirtuellerVersand virtuell;
+
+    @Setup
+    public void setup() {
+        var kunden = KundenProfil.MEGAMORPH.kunden(size, 0.5, 42L);
+        var werte = KundenProfil.werte(size, 4711L);
+        rechnungen = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rechnungen.add(i % 10 == 0 ? new InterneVerechnung("HR", werte[i]) : new ExternVersandt(kunden[i], werte[i]));
+        }
+        senke = new LatenzSenke(Duration.ofMillis(latenzMillis));
+        virtuell = new VirtuellerVersand(VirtuellerVersand.Stil.DELEGATE, senke, limit, senke, limit);
+    }
+
+    @Benchmark
+    public long sequenziell() {
+        rechnungen.forEach(r -> Main.sendInvoiceFor2(r, senke, senke));
+        return senke.aufrufe();
+    }
+
+    @Benchmark
+    public VirtuellerVersand.Ergebnis virtuelleThreads() throws InterruptedException {
+        return virtuell.versende(rechnungen);
+    }
+}
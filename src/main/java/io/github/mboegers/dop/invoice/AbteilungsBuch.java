@@ -0,0 +1,203 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Summiert {@linkplain InterneVerechnung interne Verrechnungen} je Abteilung im Speicher, während viele Threads
+ * gleichzeitig buchen.
+ * <p>
+ * Gebucht wird ohne Sperre in eine {@linkplain DoubleAdder} und {@linkplain LongAdder} je Abteilung, die intern auf
+ * mehrere Zellen verteilt sind. Für konsistente Schnappschüsse gehören alle Buchungen zu einer Epoche. Ein
+ * {@linkplain #schnappschuss()} beginnt eine neue Epoche und wartet, bis keine Buchung mehr in der alten läuft. Die
+ * laufenden Buchungen werden dazu in Streifen je Thread gezählt, jeder auf einer eigenen Cache-Line. Danach ändert
+ * sich die alte Epoche nicht mehr und wird zum Stand addiert: jede Buchung ist entweder vollständig im Schnappschuss
+ * oder gar nicht, für alle Abteilungen zum selben Zeitpunkt.
+ * {@snippet :
+ *   var buch = new AbteilungsBuch();
+ *   rechnungen.parallelStream().forEach(r -> Main.sendInvoiceFor(r, Dummy::sendViaMail, buch));
+ *   zeitgeber.scheduleAtFixedRate(() -> Dummy.storeAllInDB(buch.schnappschuss().eintraege()), 1, 1, SECONDS);
+ *}
+ */
+final class AbteilungsBuch implements DbSenke {
+
+    /**
+     * 16 longs, eine Cache-Line von 128 Byte, verhindert False Sharing zwischen den Streifen
+     */
+    private static final int ABSTAND = 16;
+
+    record Konto(long anzahl, double summe) {
+        static final Konto LEER = new Konto(0, 0d);
+
+        Konto plus(Konto anderes) {
+            return new Konto(anzahl + anderes.anzahl, summe + anderes.summe);
+        }
+    }
+
+    /**
+     * @param nummer      fortlaufende Nummer, beginnend bei 1
+     * @param konten      Stand je Abteilung seit Beginn
+     * @param seitVorigem Buchungen je Abteilung seit dem vorigen Schnappschuss
+     */
+    record Schnappschuss(long nummer, Map<String, Konto> konten, Map<String, Konto> seitVorigem) {
+        Konto gesamt() {
+            return konten.values().stream().reduce(Konto.LEER, Konto::plus);
+        }
+
+        /**
+         * Die Buchungen seit dem vorigen Schnappschuss für {@link Dummy#storeAllInDB(List)}
+         */
+        List<BatchDbSenke.Eintrag> eintraege() {
+            var eintraege = new ArrayList<BatchDbSenke.Eintrag>(seitVorigem.size());
+            seitVorigem.forEach((abteilung, konto) ->
+                    eintraege.add(new BatchDbSenke.Eintrag(abteilung, konto.summe())));
+            return eintraege;
+        }
+    }
+
+    private final int maske;
+    private volatile Epoche aktuell;
+
+    // geschützt durch this
+    private long nummer;
+    private final Map<String, Konto> konten = new HashMap<>();
+
+    /**
+     * Vier Streifen je Kern
+     */
+    AbteilungsBuch() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param streifen Anzahl Zähler laufender Buchungen, wird auf eine Zweierpotenz aufgerundet
+     */
+    AbteilungsBuch(int streifen) {
+        if (streifen < 1) throw new IllegalArgumentException("streifen muss positiv sein");
+        int anzahl = Integer.highestOneBit(streifen) == streifen ? streifen : Integer.highestOneBit(streifen) << 1;
+        this.maske = anzahl - 1;
+        this.aktuell = new Epoche(anzahl);
+    }
+
+    @Override
+    public void storeInDB(String abt, double value) {
+        buche(abt, value);
+    }
+
+    void buche(InterneVerechnung verrechnung) {
+        buche(verrechnung.abteilung(), verrechnung.wert());
+    }
+
+    void buche(String abteilung, double wert) {
+        requireNonNull(abteilung);
+        int streifen = streifen();
+        while (true) {
+            var epoche = aktuell;
+            epoche.betreten(streifen);
+            try {
+                // ein Schnappschuss hat die Epoche inzwischen beendet und wartet eventuell schon nicht mehr
+                if (epoche != aktuell) continue;
+                epoche.konto(abteilung).buche(wert);
+                return;
+            } finally {
+                epoche.verlassen(streifen);
+            }
+        }
+    }
+
+    /**
+     * Laufender Stand einer Abteilung, nicht konsistent zu gleichzeitigen Buchungen
+     */
+    Konto konto(String abteilung) {
+        Konto gebucht;
+        synchronized (this) {
+            gebucht = konten.getOrDefault(abteilung, Konto.LEER);
+        }
+        var laufend = aktuell.konten.get(abteilung);
+        return laufend == null ? gebucht : gebucht.plus(laufend.konto());
+    }
+
+    /**
+     * Konsistenter Stand aller Abteilungen, blockiert bis die laufenden Buchungen abgeschlossen sind.
+     */
+    synchronized Schnappschuss schnappschuss() {
+        var alt = aktuell;
+        aktuell = new Epoche(maske + 1);
+        alt.abwarten();
+
+        var seitVorigem = new HashMap<String, Konto>(alt.konten.size() * 2);
+        alt.konten.forEach((abteilung, konto) -> {
+            var buchungen = konto.konto();
+            seitVorigem.put(abteilung, buchungen);
+            konten.merge(abteilung, buchungen, Konto::plus);
+        });
+        return new Schnappschuss(++nummer, Collections.unmodifiableMap(new HashMap<>(konten)),
+                Collections.unmodifiableMap(seitVorigem));
+    }
+
+    /**
+     * fester Streifen je Thread, Betreten und Verlassen treffen so immer denselben Zähler
+     */
+    private int streifen() {
+        long id = Thread.currentThread().threadId();
+        return Long.hashCode(id * 0x9E3779B97F4A7C15L) & maske;
+    }
+
+    private static final class Epoche {
+        private final ConcurrentHashMap<String, Zelle> konten = new ConcurrentHashMap<>();
+        private final AtomicLongArray laufend;
+
+        Epoche(int streifen) {
+            this.laufend = new AtomicLongArray(streifen * ABSTAND);
+        }
+
+        void betreten(int streifen) {
+            laufend.getAndIncrement(streifen * ABSTAND);
+        }
+
+        void verlassen(int streifen) {
+            laufend.getAndDecrement(streifen * ABSTAND);
+        }
+
+        Zelle konto(String abteilung) {
+            var zelle = konten.get(abteilung);
+            return zelle != null ? zelle : konten.computeIfAbsent(abteilung, _ -> new Zelle());
+        }
+
+        /**
+         * Nach dem Wechsel der Epoche betritt ein Thread die alte höchstens noch kurz und verlässt sie sofort wieder,
+         * ein Streifen, der einmal 0 war, bucht daher nichts mehr in dieser Epoche.
+         */
+        void abwarten() {
+            for (int i = 0; i < laufend.length(); i += ABSTAND) {
+                for (int versuch = 0; laufend.get(i) != 0; versuch++) {
+                    if (versuch < 100) Thread.onSpinWait();
+                    else Thread.yield();
+                }
+            }
+        }
+    }
+
+    private static final class Zelle {
+        private final LongAdder anzahl = new LongAdder();
+        private final DoubleAdder summe = new DoubleAdder();
+
+        void buche(double wert) {
+            summe.add(wert);
+            anzahl.increment();
+        }
+
+        Konto konto() {
+            return new Konto(anzahl.sum(), summe.sum());
+        }
+    }
+}
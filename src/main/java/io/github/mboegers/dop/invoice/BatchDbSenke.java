@@ -0,0 +1,240 @@
+package io.github.mboegers.dop.invoice;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sammelt interne Verrechnungen je Abteilung und schreibt sie gebündelt in einem Aufruf in die Datenbank.
+ * Geschrieben wird, sobald {@link Konfiguration#maxEintraege()} Verrechnungen gesammelt sind, spätestens aber nach
+ * {@link Konfiguration#maxAlter()}, sowie bei {@link #flush()} und {@link #close()}.
+ * Mit {@link Konfiguration#vorsummieren()} wird je Abteilung nur die Summe geschrieben.
+ * Schlägt das Schreiben fehl, bleiben die Verrechnungen gepuffert und werden beim nächsten Flush erneut geschrieben.
+ * {@link #storeInDB(String, double)} nimmt eine Verrechnung daher immer an und wirft keine Fehler des Schreibens, sonst
+ * würde der Aufrufer eine gepufferte Verrechnung als fehlgeschlagen werten und eventuell doppelt speichern. Fehler
+ * stehen in der {@linkplain Statistik} und werden von {@link #flush()} und {@link #close()} geworfen. Nach einem
+ * Fehler schreibt erst wieder der Zeitgeber nach {@link Konfiguration#maxAlter()} oder ein expliziter Flush, damit
+ * nicht jede weitere Verrechnung auf die Datenbank wartet.
+ * {@snippet :
+ *   try (var db = new BatchDbSenke(new Konfiguration(500, Duration.ofSeconds(1), true), Dummy::storeAllInDB)) {
+ *       rechnungen.forEach(r -> Main.sendInvoiceFor(r, Dummy::sendViaMail, db));
+ *   }
+ *}
+ */
+final class BatchDbSenke implements DbSenke, AutoCloseable {
+
+    /**
+     * Ziel für einen gebündelten Datenbankaufruf, z.B. {@code Dummy::storeAllInDB}
+     */
+    @FunctionalInterface
+    interface Ziel {
+        void storeAllInDB(List<Eintrag> eintraege);
+    }
+
+    record Eintrag(String abteilung, double wert) {
+    }
+
+    /**
+     * @param maxEintraege Anzahl gesammelter Verrechnungen, ab der geschrieben wird
+     * @param maxAlter     maximale Wartezeit einer Verrechnung bis sie geschrieben wird
+     * @param vorsummieren je Abteilung nur die Summe schreiben
+     */
+    record Konfiguration(int maxEintraege, Duration maxAlter, boolean vorsummieren) {
+        Konfiguration {
+            if (maxEintraege < 1) throw new IllegalArgumentException("maxEintraege muss positiv sein");
+            if (maxAlter.isNegative() || maxAlter.isZero()) {
+                throw new IllegalArgumentException("maxAlter muss positiv sein");
+            }
+        }
+    }
+
+    /**
+     * @param flushes       Anzahl Datenbankaufrufe
+     * @param verrechnungen Anzahl angenommener Verrechnungen, die bereits geschrieben wurden
+     * @param geschrieben   Anzahl geschriebener Einträge, kleiner als verrechnungen beim Vorsummieren
+     * @param maxBatch      größter geschriebener Batch
+     * @param fehlschlaege  Anzahl fehlgeschlagener Datenbankaufrufe
+     * @param letzterFehler Exception des letzten fehlgeschlagenen Aufrufs, {@code null} ohne Fehler
+     */
+    record Statistik(long flushes, long verrechnungen, long geschrieben, int maxBatch,
+                     Duration flushDauerGesamt, Duration flushDauerMax, long fehlschlaege,
+                     RuntimeException letzterFehler) {
+        double mittlereBatchGroesse() {
+            return flushes == 0 ? 0d : (double) geschrieben / flushes;
+        }
+
+        Duration mittlereFlushDauer() {
+            return flushes == 0 ? Duration.ZERO : flushDauerGesamt.dividedBy(flushes);
+        }
+    }
+
+    private final Konfiguration konfiguration;
+    private final Ziel ziel;
+    private final ScheduledExecutorService zeitgeber;
+    private final Object schreibLock = new Object();
+
+    // geschützt durch this
+    private Map<String, Werte> puffer = new LinkedHashMap<>();
+    private int gepuffert;
+    private boolean geschlossen;
+    private long pauseBis = System.nanoTime();
+
+    // geschützt durch schreibLock
+    private long flushes;
+    private long verrechnungen;
+    private long geschrieben;
+    private int maxBatch;
+    private long flushNanosGesamt;
+    private long flushNanosMax;
+    private long fehlschlaege;
+    private RuntimeException letzterFehler;
+
+    BatchDbSenke(Konfiguration konfiguration, Ziel ziel) {
+        this.konfiguration = requireNonNull(konfiguration);
+        this.ziel = requireNonNull(ziel);
+        this.zeitgeber = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("batch-db-flush").factory());
+        long periode = konfiguration.maxAlter().toNanos();
+        zeitgeber.scheduleWithFixedDelay(this::versuche, periode, periode, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Nimmt die Verrechnung an, auch wenn das dadurch ausgelöste Schreiben fehlschlägt.
+     *
+     * @throws IllegalStateException nur wenn die Senke geschlossen ist
+     */
+    @Override
+    public void storeInDB(String abt, double value) {
+        requireNonNull(abt);
+        boolean voll;
+        synchronized (this) {
+            if (geschlossen) throw new IllegalStateException("Senke ist geschlossen");
+            puffer.computeIfAbsent(abt, _ -> new Werte()).add(value);
+            voll = ++gepuffert >= konfiguration.maxEintraege() && System.nanoTime() - pauseBis >= 0;
+        }
+        if (voll) versuche();
+    }
+
+    /**
+     * Flush, dessen Fehler nur in der Statistik landet
+     */
+    private void versuche() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // bleibt gepuffert, nächster Versuch beim nächsten Flush
+        }
+    }
+
+    /**
+     * Schreibe alle gesammelten Verrechnungen in einem Aufruf.
+     *
+     * @throws RuntimeException des Ziels, die Verrechnungen bleiben dann gepuffert
+     */
+    void flush() {
+        synchronized (schreibLock) {
+            Map<String, Werte> batch;
+            int anzahl;
+            synchronized (this) {
+                if (gepuffert == 0) return;
+                batch = puffer;
+                anzahl = gepuffert;
+                puffer = new LinkedHashMap<>();
+                gepuffert = 0;
+            }
+
+            var eintraege = new ArrayList<Eintrag>(konfiguration.vorsummieren() ? batch.size() : anzahl);
+            batch.forEach((abt, werte) -> {
+                if (konfiguration.vorsummieren()) {
+                    double summe = 0d;
+                    for (int i = 0; i < werte.anzahl; i++) summe += werte.werte[i];
+                    eintraege.add(new Eintrag(abt, summe));
+                } else {
+                    for (int i = 0; i < werte.anzahl; i++) eintraege.add(new Eintrag(abt, werte.werte[i]));
+                }
+            });
+
+            long start = System.nanoTime();
+            try {
+                ziel.storeAllInDB(List.copyOf(eintraege));
+            } catch (RuntimeException e) {
+                zuruecklegen(batch, anzahl);
+                fehlschlaege++;
+                letzterFehler = e;
+                throw e;
+            }
+            long dauer = System.nanoTime() - start;
+            synchronized (this) {
+                pauseBis = start;
+            }
+
+            flushes++;
+            verrechnungen += anzahl;
+            geschrieben += eintraege.size();
+            maxBatch = Math.max(maxBatch, eintraege.size());
+            flushNanosGesamt += dauer;
+            flushNanosMax = Math.max(flushNanosMax, dauer);
+        }
+    }
+
+    /**
+     * Lege einen nicht geschriebenen Batch vor die seitdem gesammelten Verrechnungen zurück.
+     */
+    private synchronized void zuruecklegen(Map<String, Werte> batch, int anzahl) {
+        puffer.forEach((abt, werte) -> batch.computeIfAbsent(abt, _ -> new Werte()).addAll(werte));
+        puffer = batch;
+        gepuffert += anzahl;
+        pauseBis = System.nanoTime() + konfiguration.maxAlter().toNanos();
+    }
+
+    Statistik statistik() {
+        synchronized (schreibLock) {
+            return new Statistik(flushes, verrechnungen, geschrieben, maxBatch,
+                    Duration.ofNanos(flushNanosGesamt), Duration.ofNanos(flushNanosMax), fehlschlaege, letzterFehler);
+        }
+    }
+
+    /**
+     * Schreibt die restlichen Verrechnungen, danach werden keine weiteren angenommen. Schlägt das Schreiben fehl,
+     * bleiben sie gepuffert und der Zeitgeber läuft weiter, ein erneutes {@code close()} oder {@link #flush()}
+     * schreibt sie.
+     *
+     * @throws RuntimeException des Ziels
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            geschlossen = true;
+        }
+        flush();
+        zeitgeber.shutdown();
+    }
+
+    /**
+     * Wachsendes {@code double[]} der Verrechnungen einer Abteilung, ohne einen {@code Double} je Verrechnung
+     */
+    private static final class Werte {
+        private double[] werte = new double[8];
+        private int anzahl;
+
+        void add(double wert) {
+            if (anzahl == werte.length) werte = Arrays.copyOf(werte, anzahl * 2);
+            werte[anzahl++] = wert;
+        }
+
+        void addAll(Werte andere) {
+            int neu = anzahl + andere.anzahl;
+            if (neu > werte.length) werte = Arrays.copyOf(werte, Math.max(neu, werte.length * 2));
+            System.arraycopy(andere.werte, 0, werte, anzahl, andere.anzahl);
+            anzahl = neu;
+        }
+    }
+}
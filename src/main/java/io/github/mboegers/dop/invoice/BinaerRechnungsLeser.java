@@ -0,0 +1,181 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Flyweight über Rechnungen im Binärformat des {@linkplain BinaerRechnungsSchreiber}.
+ * Der Leser steht immer auf einer Rechnung und liest deren Felder direkt aus dem {@linkplain MemorySegment}, ein
+ * Record wird erst mit {@link #rechnung()} erzeugt.
+ * Verwendet
+ * JEP 442: Foreign Function & Memory API (Third Preview) https://openjdk.org/jeps/442
+ * <p>
+ * Layout, alle Zahlen little-endian:
+ * <pre>
+ * Datei    := MAGIC:int VERSION:byte Rechnung*
+ * Rechnung := typ:byte flags:byte wert:double Text{1 bei INTERN, sonst 2}
+ * Text     := laenge:int (-1 für null) utf8:byte[laenge]
+ * </pre>
+ * {@code typ} ist {@link RechnungsBatch#INTERN}, {@link RechnungsBatch#PRIVATKUNDE} oder
+ * {@link RechnungsBatch#BUSINESSKUNDE}, Bit 0 von {@code flags} ist
+ * {@linkplain Businesskunde#isVorsteuerAbzugsberechtigt()}. Die Texte sind Abteilung bzw. Name und Mail.
+ * {@snippet :
+ *   try (var leser = BinaerRechnungsLeser.oeffne(datei)) {
+ *       while (leser.naechste()) {
+ *           summe += leser.wert();
+ *       }
+ *   }
+ *}
+ */
+final class BinaerRechnungsLeser implements AutoCloseable {
+    static final int MAGIC = 0x48434552; // "RECH"
+    static final byte VERSION = 1;
+    static final int KOPF = Integer.BYTES + Byte.BYTES;
+    static final byte VORSTEUER_ABZUG = 1;
+
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final int OFFSET_FLAGS = 1;
+    private static final int OFFSET_WERT = 2;
+    private static final int OFFSET_TEXT = 10;
+
+    private final Arena arena;
+    private final MemorySegment daten;
+    private long naechste = KOPF;
+    private long aktuell = -1;
+    private long text2;
+
+    BinaerRechnungsLeser(MemorySegment daten) {
+        this(null, daten);
+    }
+
+    private BinaerRechnungsLeser(Arena arena, MemorySegment daten) {
+        this.arena = arena;
+        this.daten = requireNonNull(daten);
+        if (daten.byteSize() < KOPF || daten.get(INT, 0) != MAGIC) {
+            throw new IllegalArgumentException("Kein Rechnungsformat");
+        }
+        if (daten.get(ValueLayout.JAVA_BYTE, Integer.BYTES) != VERSION) {
+            throw new IllegalArgumentException("Version %d nicht implementiert"
+                    .formatted(daten.get(ValueLayout.JAVA_BYTE, Integer.BYTES)));
+        }
+    }
+
+    /**
+     * Blende eine Datei ein, {@link #close()} hebt die Einblendung wieder auf.
+     */
+    static BinaerRechnungsLeser oeffne(Path datei) throws IOException {
+        var arena = Arena.ofConfined();
+        try (var channel = FileChannel.open(datei, StandardOpenOption.READ)) {
+            return new BinaerRechnungsLeser(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gehe zur nächsten Rechnung.
+     *
+     * @return false am Ende der Daten
+     */
+    boolean naechste() {
+        if (naechste >= daten.byteSize()) return false;
+        aktuell = naechste;
+        text2 = textEnde(aktuell + OFFSET_TEXT);
+        naechste = typ() == RechnungsBatch.INTERN ? text2 : textEnde(text2);
+        return true;
+    }
+
+    //region Felder der aktuellen Rechnung
+    byte typ() {
+        return daten.get(ValueLayout.JAVA_BYTE, position());
+    }
+
+    double wert() {
+        return daten.get(DOUBLE, position() + OFFSET_WERT);
+    }
+
+    boolean isVorsteuerAbzugsberechtigt() {
+        return (daten.get(ValueLayout.JAVA_BYTE, position() + OFFSET_FLAGS) & VORSTEUER_ABZUG) != 0;
+    }
+
+    /**
+     * Abteilung einer internen Verrechnung bzw. Name des Kunden
+     */
+    String text1() {
+        return text(position() + OFFSET_TEXT);
+    }
+
+    /**
+     * Mail des Kunden
+     */
+    String text2() {
+        if (typ() == RechnungsBatch.INTERN) throw new IllegalStateException("Interne Verrechnung hat keine Mail");
+        return text(text2);
+    }
+
+    /**
+     * UTF-8 Bytes von {@link #text1()} ohne Kopie, leer bei null
+     */
+    MemorySegment text1Bytes() {
+        return textBytes(position() + OFFSET_TEXT);
+    }
+
+    /**
+     * UTF-8 Bytes von {@link #text2()} ohne Kopie, leer bei null
+     */
+    MemorySegment text2Bytes() {
+        if (typ() == RechnungsBatch.INTERN) throw new IllegalStateException("Interne Verrechnung hat keine Mail");
+        return textBytes(text2);
+    }
+
+    /**
+     * Erzeuge die aktuelle Rechnung als Record.
+     */
+    Rechnung rechnung() {
+        return switch (typ()) {
+            case RechnungsBatch.INTERN -> new InterneVerechnung(text1(), wert());
+            case RechnungsBatch.PRIVATKUNDE -> new ExternVersandt(new Privatkunde(text1(), text2()), wert());
+            case RechnungsBatch.BUSINESSKUNDE ->
+                    new ExternVersandt(new Businesskunde(text1(), text2(), isVorsteuerAbzugsberechtigt()), wert());
+            default -> throw new IllegalStateException("Typ %d nicht implementiert".formatted(typ()));
+        };
+    }
+    //endregion
+
+    @Override
+    public void close() {
+        if (arena != null && arena.scope().isAlive()) arena.close();
+    }
+
+    private long position() {
+        if (aktuell < 0) throw new IllegalStateException("naechste() wurde noch nicht aufgerufen");
+        return aktuell;
+    }
+
+    private long textEnde(long start) {
+        return start + Integer.BYTES + Math.max(0, daten.get(INT, start));
+    }
+
+    private String text(long start) {
+        int laenge = daten.get(INT, start);
+        if (laenge < 0) return null;
+        var bytes = daten.asSlice(start + Integer.BYTES, laenge).toArray(ValueLayout.JAVA_BYTE);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MemorySegment textBytes(long start) {
+        return daten.asSlice(start + Integer.BYTES, Math.max(0, daten.get(INT, start)));
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Schreibt Rechnungen im kompakten Binärformat, Layout siehe {@linkplain BinaerRechnungsLeser}.
+ * {@snippet :
+ *   try (var channel = FileChannel.open(datei, CREATE, WRITE);
+ *        var schreiber = new BinaerRechnungsSchreiber(channel)) {
+ *       rechnungen.forEach(schreiber::schreibe);
+ *   }
+ *}
+ */
+final class BinaerRechnungsSchreiber implements AutoCloseable {
+    private final WritableByteChannel ziel;
+    private final ByteBuffer puffer;
+
+    BinaerRechnungsSchreiber(WritableByteChannel ziel) {
+        this(ziel, 64 * 1024);
+    }
+
+    BinaerRechnungsSchreiber(WritableByteChannel ziel, int puffergroesse) {
+        this.ziel = requireNonNull(ziel);
+        this.puffer = ByteBuffer.allocateDirect(puffergroesse).order(ByteOrder.LITTLE_ENDIAN);
+        puffer.putInt(BinaerRechnungsLeser.MAGIC).put(BinaerRechnungsLeser.VERSION);
+    }
+
+    void schreibe(Rechnung rechnung) {
+        requireNonNull(rechnung);
+        switch (rechnung) {
+            case InterneVerechnung(var abt, var wert) -> schreibe(RechnungsBatch.INTERN, false, wert, utf8(abt), null);
+            case ExternVersandt(Privatkunde(var name, var mail), var wert) ->
+                    schreibe(RechnungsBatch.PRIVATKUNDE, false, wert, utf8(name), utf8(mail));
+            case ExternVersandt(Businesskunde(var name, var mail, var abzug), var wert) ->
+                    schreibe(RechnungsBatch.BUSINESSKUNDE, abzug, wert, utf8(name), utf8(mail));
+            case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+        }
+    }
+
+    /**
+     * @return Anzahl Bytes, die {@link #schreibe(Rechnung)} für diese Rechnung schreibt
+     */
+    static int groesse(Rechnung rechnung) {
+        return 2 + Double.BYTES + switch (rechnung) {
+            case InterneVerechnung(var abt, _) -> laenge(utf8(abt));
+            case ExternVersandt(Privatkunde(var name, var mail), _) -> laenge(utf8(name)) + laenge(utf8(mail));
+            case ExternVersandt(Businesskunde(var name, var mail, _), _) -> laenge(utf8(name)) + laenge(utf8(mail));
+            case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+        };
+    }
+
+    private void schreibe(byte typ, boolean abzug, double wert, byte[] text1, byte[] text2) {
+        boolean intern = typ == RechnungsBatch.INTERN;
+        int groesse = 2 + Double.BYTES + laenge(text1) + (intern ? 0 : laenge(text2));
+        if (puffer.remaining() < groesse) leeren();
+        // Rechnungen größer als der Puffer werden direkt geschrieben
+        var buffer = puffer.capacity() < groesse ? ByteBuffer.allocate(groesse).order(ByteOrder.LITTLE_ENDIAN) : puffer;
+
+        buffer.put(typ).put(abzug ? BinaerRechnungsLeser.VORSTEUER_ABZUG : 0).putDouble(wert);
+        text(buffer, text1);
+        if (!intern) text(buffer, text2);
+
+        if (buffer != puffer) schreibeAlles(buffer.flip());
+    }
+
+    /**
+     * Schreibe alle gepufferten Rechnungen in das Ziel.
+     */
+    void leeren() {
+        schreibeAlles(puffer.flip());
+        puffer.clear();
+    }
+
+    @Override
+    public void close() {
+        leeren();
+    }
+
+    private void schreibeAlles(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) ziel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int laenge(byte[] text) {
+        return Integer.BYTES + (text == null ? 0 : text.length);
+    }
+
+    private static void text(ByteBuffer buffer, byte[] text) {
+        if (text == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(text.length).put(text);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.mboegers.dop.invoice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Exakte Geldbeträge als {@code long} in Cent.
+ * <p>
+ * Alle Rechnungen arbeiten auf primitiven {@code long} Werten und erzeugen keine Objekte, anders als
+ * {@linkplain BigDecimal}. Überläufe werfen eine {@linkplain ArithmeticException}, Rundungen erfolgen nur dort, wo
+ * ein {@linkplain RoundingMode} übergeben wird. Nur die Umrechnung von und nach {@code double} an den Rändern nutzt
+ * {@linkplain BigDecimal}.
+ * {@snippet :
+ *   long wert = Cent.von(1055.25d, RoundingMode.HALF_UP);                 // 105525
+ *   long mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert, RoundingMode.HALF_EVEN);
+ *   var text = Cent.append(new StringBuilder(), mwst);                  // 105.52
+ *}
+ */
+final class Cent {
+    /**
+     * Steuersatz aller steuerpflichtigen Rechnungen
+     */
+    static final int MWST_PROZENT = 10;
+
+    private Cent() {
+    }
+
+    /**
+     * Runde einen Betrag in Euro auf ganze Cent, ausgehend von der kürzesten Dezimaldarstellung des {@code double}
+     * wie bei {@linkplain Double#toString(double)}.
+     *
+     * @throws ArithmeticException bei NaN, unendlichen Werten oder Überlauf
+     */
+    static long von(double euro, RoundingMode rundung) {
+        requireNonNull(rundung);
+        if (!Double.isFinite(euro)) throw new ArithmeticException("Kein Betrag: %s".formatted(euro));
+        return BigDecimal.valueOf(euro).movePointRight(2).setScale(0, rundung).longValueExact();
+    }
+
+    static double euro(long cent) {
+        return cent / 100d;
+    }
+
+    static BigDecimal alsBigDecimal(long cent) {
+        return BigDecimal.valueOf(cent, 2);
+    }
+
+    static long plus(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    static long minus(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * {@code prozent} Prozent des Betrags, gerundet auf ganze Cent
+     */
+    static long prozent(long cent, int prozent, RoundingMode rundung) {
+        return anteil(cent, prozent, 100, rundung);
+    }
+
+    /**
+     * {@code cent * zaehler / nenner}, gerundet auf ganze Cent
+     */
+    static long anteil(long cent, long zaehler, long nenner, RoundingMode rundung) {
+        return teile(Math.multiplyExact(cent, zaehler), nenner, rundung);
+    }
+
+    /**
+     * Ganzzahlige Division mit Rundung wie {@linkplain BigDecimal#divide(BigDecimal, RoundingMode)}.
+     *
+     * @throws ArithmeticException bei Division durch 0 oder Überlauf, z.B. {@code Long.MIN_VALUE / -1}
+     */
+    static long teile(long dividend, long divisor, RoundingMode rundung) {
+        requireNonNull(rundung);
+        if (divisor == Long.MIN_VALUE) throw new ArithmeticException("Divisor außerhalb des Wertebereichs");
+        long quotient = Math.divideExact(dividend, divisor);
+        long rest = dividend % divisor;
+        if (rest == 0) return quotient;
+
+        long vorzeichen = ((dividend ^ divisor) >> 63) | 1;
+        long vergleich = Long.compare(Math.abs(rest), Math.abs(divisor) - Math.abs(rest));
+        boolean wegVonNull = switch (rundung) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> vorzeichen > 0;
+            case FLOOR -> vorzeichen < 0;
+            case HALF_UP -> vergleich >= 0;
+            case HALF_DOWN -> vergleich > 0;
+            case HALF_EVEN -> vergleich > 0 || vergleich == 0 && (quotient & 1) != 0;
+            case UNNECESSARY -> throw new ArithmeticException("Rundung notwendig");
+        };
+        return wegVonNull ? quotient + vorzeichen : quotient;
+    }
+
+    /**
+     * Hänge den Betrag in Euro mit zwei Nachkommastellen an, z.B. {@code -0.05}.
+     */
+    static StringBuilder append(StringBuilder sb, long cent) {
+        if (cent < 0) sb.append('-');
+        long euro = Math.abs(cent / 100);
+        int rest = (int) Math.abs(cent % 100);
+        return sb.append(euro).append('.').append((char) ('0' + rest / 10)).append((char) ('0' + rest % 10));
+    }
+}
@@ -0,0 +1,269 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Liest Rechnungen aus einer CSV Datei, die per {@linkplain FileChannel#map} in den Speicher eingeblendet wird.
+ * Verwendet
+ * JEP 442: Foreign Function & Memory API (Third Preview) https://openjdk.org/jeps/442
+ * <p>
+ * Eine Zeile pro Rechnung, Felder getrennt durch {@code ;}, leere Zeilen und Zeilen mit {@code #} werden übersprungen:
+ * <pre>
+ * I;abteilung;wert
+ * P;name;mail;wert
+ * B;name;mail;isVorsteuerAbzugsberechtigt;wert
+ * </pre>
+ * Die Datei liegt außerhalb des Heaps und wird zeilenweise gelesen, der Speicherbedarf ist daher unabhängig von der
+ * Dateigröße. Zahlen und Wahrheitswerte werden direkt aus den Bytes gelesen, wiederkehrende Namen, Mails und
+ * Abteilungen aus einem kleinen Cache wiederverwendet. Mit {@link #naechsterBatch(RechnungsBatch, int)} werden die
+ * Spalten eines {@linkplain RechnungsBatch} ohne Records und Strings befüllt.
+ * {@snippet :
+ *   try (var leser = CsvRechnungsLeser.oeffne(datei)) {
+ *       leser.stream().forEach(Main::sendInvoiceFor);
+ *   }
+ *}
+ */
+final class CsvRechnungsLeser implements AutoCloseable {
+    private static final int MAX_FELDER = 5;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXAKT = 1L << 53;
+    private static final MemorySegment TRUE = MemorySegment.ofArray("true".getBytes(StandardCharsets.US_ASCII));
+    private static final MemorySegment FALSE = MemorySegment.ofArray("false".getBytes(StandardCharsets.US_ASCII));
+
+    private final Arena arena;
+    private final MemorySegment daten;
+    private final TextCache texte = new TextCache(4096);
+    private final long[] feldStart = new long[MAX_FELDER];
+    private final long[] feldEnde = new long[MAX_FELDER];
+    private long pos;
+    private long zeile;
+
+    private CsvRechnungsLeser(Arena arena, MemorySegment daten) {
+        this.arena = arena;
+        this.daten = daten;
+    }
+
+    static CsvRechnungsLeser oeffne(Path datei) throws IOException {
+        var arena = Arena.ofConfined();
+        try (var channel = FileChannel.open(datei, StandardOpenOption.READ)) {
+            return new CsvRechnungsLeser(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lese die nächste Rechnung.
+     *
+     * @return false am Dateiende
+     */
+    boolean naechste(Consumer<? super Rechnung> aktion) {
+        int felder = naechsteZeile();
+        if (felder < 0) return false;
+        aktion.accept(switch (typ(felder)) {
+            case RechnungsBatch.INTERN -> new InterneVerechnung(text(1), zahl(2));
+            case RechnungsBatch.PRIVATKUNDE -> new ExternVersandt(new Privatkunde(text(1), text(2)), zahl(3));
+            default -> new ExternVersandt(new Businesskunde(text(1), text(2), wahrheitswert(3)), zahl(4));
+        });
+        return true;
+    }
+
+    /**
+     * Hänge bis zu {@code max} Rechnungen an die Spalten des Batches an, ohne Records oder Strings anzulegen.
+     *
+     * @return Anzahl gelesener Rechnungen, 0 am Dateiende
+     */
+    int naechsterBatch(RechnungsBatch batch, int max) {
+        int gelesen = 0;
+        for (int felder; gelesen < max && (felder = naechsteZeile()) >= 0; gelesen++) {
+            var art = typ(felder);
+            switch (art) {
+                case RechnungsBatch.INTERN -> batch.add(art, zahl(2), false);
+                case RechnungsBatch.PRIVATKUNDE -> batch.add(art, zahl(3), false);
+                default -> batch.add(art, zahl(4), wahrheitswert(3));
+            }
+        }
+        return gelesen;
+    }
+
+    /**
+     * Alle restlichen Rechnungen als sequenzieller Stream, schließen des Streams schließt den Leser.
+     */
+    Stream<Rechnung> stream() {
+        var spliterator = new Spliterators.AbstractSpliterator<Rechnung>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Rechnung> action) {
+                return naechste(action);
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    /**
+     * Hebt die Einblendung der Datei auf.
+     */
+    @Override
+    public void close() {
+        if (arena.scope().isAlive()) arena.close();
+    }
+
+    //region Parser
+    /**
+     * Suche die nächste nicht leere Zeile und merke die Feldgrenzen.
+     *
+     * @return Anzahl Felder oder -1 am Dateiende
+     */
+    private int naechsteZeile() {
+        long groesse = daten.byteSize();
+        while (pos < groesse) {
+            zeile++;
+            long start = pos;
+            long ende = start;
+            while (ende < groesse && daten.get(ValueLayout.JAVA_BYTE, ende) != '\n') ende++;
+            pos = ende + 1;
+            if (ende > start && daten.get(ValueLayout.JAVA_BYTE, ende - 1) == '\r') ende--;
+            if (ende == start || daten.get(ValueLayout.JAVA_BYTE, start) == '#') continue;
+
+            int felder = 0;
+            feldStart[0] = start;
+            for (long i = start; i < ende; i++) {
+                if (daten.get(ValueLayout.JAVA_BYTE, i) == ';') {
+                    if (felder + 1 == MAX_FELDER) throw fehler("zu viele Felder");
+                    feldEnde[felder++] = i;
+                    feldStart[felder] = i + 1;
+                }
+            }
+            feldEnde[felder++] = ende;
+            return felder;
+        }
+        return -1;
+    }
+
+    private byte typ(int felder) {
+        if (feldEnde[0] - feldStart[0] != 1) throw fehler("unbekannter Rechnungstyp");
+        var art = switch (daten.get(ValueLayout.JAVA_BYTE, feldStart[0])) {
+            case 'I' -> RechnungsBatch.INTERN;
+            case 'P' -> RechnungsBatch.PRIVATKUNDE;
+            case 'B' -> RechnungsBatch.BUSINESSKUNDE;
+            default -> throw fehler("unbekannter Rechnungstyp");
+        };
+        int erwartet = switch (art) {
+            case RechnungsBatch.INTERN -> 3;
+            case RechnungsBatch.PRIVATKUNDE -> 4;
+            default -> 5;
+        };
+        if (felder != erwartet) throw fehler("%d statt %d Felder".formatted(felder, erwartet));
+        return art;
+    }
+
+    private String text(int feld) {
+        return texte.get(daten, feldStart[feld], feldEnde[feld]);
+    }
+
+    private boolean wahrheitswert(int feld) {
+        if (gleich(feld, TRUE)) return true;
+        if (gleich(feld, FALSE)) return false;
+        throw fehler("kein Wahrheitswert in Feld %d".formatted(feld));
+    }
+
+    private boolean gleich(int feld, MemorySegment text) {
+        return MemorySegment.mismatch(daten, feldStart[feld], feldEnde[feld], text, 0, text.byteSize()) == -1;
+    }
+
+    /**
+     * Lies einfache Dezimalzahlen ({@code -123.45}) exakt wie {@linkplain Double#parseDouble(String)}, alles andere
+     * wird an {@code parseDouble} übergeben.
+     */
+    private double zahl(int feld) {
+        long start = feldStart[feld];
+        long ende = feldEnde[feld];
+        boolean negativ = start < ende && daten.get(ValueLayout.JAVA_BYTE, start) == '-';
+        long mantisse = 0;
+        int stellen = 0;
+        int nachkomma = -1;
+        for (long i = negativ ? start + 1 : start; i < ende; i++) {
+            byte b = daten.get(ValueLayout.JAVA_BYTE, i);
+            if (b >= '0' && b <= '9' && mantisse <= (MAX_EXAKT - 10) / 10) {
+                mantisse = mantisse * 10 + (b - '0');
+                stellen++;
+                if (nachkomma >= 0) nachkomma++;
+            } else if (b == '.' && nachkomma < 0) {
+                nachkomma = 0;
+            } else {
+                return zahlLangsam(start, ende);
+            }
+        }
+        if (stellen == 0 || nachkomma >= POW10.length) return zahlLangsam(start, ende);
+        // mantisse und 10^n sind exakte doubles, die Division rundet daher korrekt
+        double wert = nachkomma > 0 ? mantisse / POW10[nachkomma] : mantisse;
+        return negativ ? -wert : wert;
+    }
+
+    private double zahlLangsam(long start, long ende) {
+        var bytes = daten.asSlice(start, ende - start).toArray(ValueLayout.JAVA_BYTE);
+        var text = new String(bytes, StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw fehler("keine Zahl '%s'".formatted(text));
+        }
+    }
+
+    private IllegalArgumentException fehler(String grund) {
+        return new IllegalArgumentException("Zeile %d: %s".formatted(zeile, grund));
+    }
+    //endregion
+
+    /**
+     * Cache für wiederkehrende Texte, verdrängt bei Kollision den alten Eintrag
+     */
+    static final class TextCache {
+        private final byte[][] bytes;
+        private final String[] texte;
+
+        TextCache(int groesse) {
+            if (Integer.bitCount(groesse) != 1) throw new IllegalArgumentException("Größe muss eine Zweierpotenz sein");
+            this.bytes = new byte[groesse][];
+            this.texte = new String[groesse];
+        }
+
+        String get(MemorySegment daten, long start, long ende) {
+            int laenge = (int) (ende - start);
+            int hash = 1;
+            for (long i = start; i < ende; i++) hash = 31 * hash + daten.get(ValueLayout.JAVA_BYTE, i);
+            int slot = (hash ^ (hash >>> 16)) & (bytes.length - 1);
+
+            var kandidat = bytes[slot];
+            if (kandidat != null && kandidat.length == laenge && gleich(kandidat, daten, start)) return texte[slot];
+
+            var neu = daten.asSlice(start, laenge).toArray(ValueLayout.JAVA_BYTE);
+            var text = new String(neu, StandardCharsets.UTF_8);
+            bytes[slot] = neu;
+            texte[slot] = text;
+            return text;
+        }
+
+        private static boolean gleich(byte[] kandidat, MemorySegment daten, long start) {
+            for (int i = 0; i < kandidat.length; i++) {
+                if (kandidat[i] != daten.get(ValueLayout.JAVA_BYTE, start + i)) return false;
+            }
+            return true;
+        }
+    }
+}
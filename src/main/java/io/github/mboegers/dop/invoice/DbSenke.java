@@ -0,0 +1,9 @@
+package io.github.mboegers.dop.invoice;
+
+/**
+ * Ziel für das Speichern einer internen Verrechnung, z.B. {@code Dummy::storeInDB}
+ */
+@FunctionalInterface
+interface DbSenke {
+    void storeInDB(String abt, double value);
+}
@@ -0,0 +1,53 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.Locale;
+
+/**
+ * Schreibt Beträge wie {@code %.2f} ohne Zwischenobjekte in einen {@linkplain StringBuilder}.
+ * <p>
+ * {@code %.2f} rundet die Dezimaldarstellung des doubles kaufmännisch (HALF_UP), z.B. wird 1.005 zu 1.01 obwohl der
+ * double knapp darunter liegt. Liegt ein Betrag auf der Hälfte zwischen zwei Cent-Beträgen, entscheidet deshalb der
+ * Vergleich mit dem double des Dezimalwerts {@code n,nn5}. NaN, unendliche und sehr große Beträge werden über
+ * {@linkplain String#format(Locale, String, Object...)} geschrieben.
+ */
+final class DezimalSchreiber {
+    /**
+     * Bis hierher ist {@code betrag * 100} genau genug, um die Rundungsrichtung sicher zu bestimmen
+     */
+    private static final double MAX_SCHNELL = 1e7d;
+    private static final double HALB_TOLERANZ = 1e-6d;
+
+    private DezimalSchreiber() {
+    }
+
+    /**
+     * Hänge {@code betrag} mit zwei Nachkommastellen an, identisch zu {@code FMT."%.2f\{betrag}"}.
+     */
+    static StringBuilder appendZweiStellen(StringBuilder sb, double betrag) {
+        double a = Math.abs(betrag);
+        if (!(a < MAX_SCHNELL)) { // auch NaN
+            return sb.append(String.format(Locale.ROOT, "%.2f", betrag));
+        }
+        if (Double.doubleToRawLongBits(betrag) < 0) sb.append('-');
+
+        long cent = rundeCent(a);
+        sb.append(cent / 100).append('.');
+        int rest = (int) (cent % 100);
+        return sb.append((char) ('0' + rest / 10)).append((char) ('0' + rest % 10));
+    }
+
+    /**
+     * Runde einen nicht negativen Betrag kaufmännisch auf ganze Cent.
+     */
+    static long rundeCent(double a) {
+        double x = a * 100d;
+        long n = (long) x;
+        double anteil = x - n;
+        if (Math.abs(anteil - 0.5d) > HALB_TOLERANZ) {
+            return anteil > 0.5d ? n + 1 : n;
+        }
+        // auf der Hälfte: liegt der double auf, über oder unter dem Dezimalwert n,5 Cent?
+        double haelfte = (n * 10 + 5) / 1000d;
+        return a >= haelfte ? n + 1 : n;
+    }
+}
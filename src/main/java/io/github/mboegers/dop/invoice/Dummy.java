@@ -1,5 +1,7 @@
 package io.github.mboegers.dop.invoice;
 
+import java.util.List;
+
 final class Dummy {
     /**
      * Simuliert einen Versand per Mail.
@@ -14,4 +16,12 @@ final class Dummy {
     static void storeInDB(String abt, double value) {
         System.out.printf("Speicher %s€ zur Verrechnung mit Abteilung %s%n", value, abt);
     }
+
+    /**
+     * Simuliert ein Abspeichern mehrerer Verrechnungen in einem Datenbankaufruf
+     */
+    static void storeAllInDB(List<BatchDbSenke.Eintrag> eintraege) {
+        System.out.printf("Speicher %d Verrechnungen in einem Aufruf%n", eintraege.size());
+        eintraege.forEach(e -> System.out.printf("  %s€ zur Verrechnung mit Abteilung %s%n", e.wert(), e.abteilung()));
+    }
 }
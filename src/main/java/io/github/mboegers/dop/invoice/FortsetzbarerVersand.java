@@ -0,0 +1,366 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Versendet Rechnungen aus einer unbegrenzten Quelle mit {@linkplain Main#sendInvoiceFor(Rechnung, MailSenke, DbSenke)}
+ * und setzt nach einem Absturz dort fort, wo er aufgehört hat.
+ * <p>
+ * Schlüssel einer Rechnung ist ihre Position in der Quelle, die Quelle muss daher nach einem Neustart dieselben
+ * Rechnungen in derselben Reihenfolge liefern, z.B. der {@linkplain CsvRechnungsLeser} über dieselbe Datei.
+ * Der Fortschritt steht in einem Log, an das nur angehängt wird:
+ * <ul>
+ *     <li>vor dem Versand von bis zu {@link Konfiguration#gruppe()} Rechnungen deren Positionen, das Log wird dann
+ *     einmal für die ganze Gruppe mit {@linkplain FileChannel#force(boolean)} auf die Platte geschrieben</li>
+ *     <li>nach jeder zugestellten Rechnung ihre Position, ohne {@code force}</li>
+ *     <li>nach einer Ausnahme der Senke die Position, diese Rechnung wird beim nächsten Start erneut versendet</li>
+ *     <li>nach einem Neustart die Position der Rechnung, die beim Absturz eventuell im Versand war</li>
+ *     <li>alle {@link Konfiguration#checkpointAlle()} Rechnungen ein Checkpoint mit der Position und den laufenden
+ *     {@linkplain MwStAuswertung.Summen Summen}, ältere Einträge werden danach nicht mehr gebraucht</li>
+ * </ul>
+ * Beim Neustart werden die Rechnungen bis zum letzten Checkpoint überlesen, danach bereits zugestellte nur noch
+ * summiert. Da nacheinander versendet und bestätigt wird, war nur die erste unbestätigte Rechnung der letzten Gruppe
+ * eventuell im Versand. Sie wird <em>nicht</em> erneut versendet, sondern als {@linkplain Stand#unsicher() unsicher}
+ * vermerkt und gemeldet: eine Mail lässt sich nicht zurückholen, eine doppelte ist schlimmer als eine zu prüfende.
+ * Die Bestätigungen ohne {@code force} liegen im Cache des Betriebssystems und überstehen einen Absturz der JVM. Stürzt
+ * das Betriebssystem ab, können die Bestätigungen der letzten Gruppe verloren gehen und deren Rechnungen erneut
+ * versendet werden, eine kleinere {@link Konfiguration#gruppe()} verkleinert dieses Fenster.
+ * Die Senken müssen beim Rückkehren fertig sein, eine {@linkplain BatchDbSenke} also nicht verwenden.
+ * <p>
+ * Layout des Logs, alle Zahlen little-endian, ein unvollständiger oder beschädigter Eintrag am Ende wird abgeschnitten:
+ * <pre>
+ * Eintrag    := laenge:int typ:byte daten:byte[laenge - 1] crc32c:int
+ * VERSUCH    := von:long bis:long
+ * ZUGESTELLT := position:long
+ * FEHLER     := position:long
+ * UNSICHER   := position:long
+ * CHECKPOINT := position:long Summe{3} abteilungen:int (Text Summe)*
+ * Summe      := anzahl:long netto:double mwst:double
+ * Text       := laenge:int utf8:byte[laenge], laenge -1 für {@code null}
+ * </pre>
+ * Nicht threadsicher.
+ * {@snippet :
+ *   var konfiguration = new FortsetzbarerVersand.Konfiguration(64, 10_000, 1 << 20);
+ *   try (var versand = FortsetzbarerVersand.oeffne(log, konfiguration, Dummy::sendViaMail, Dummy::storeInDB);
+ *        var leser = CsvRechnungsLeser.oeffne(datei)) {
+ *       var stand = versand.verarbeite(leser.stream().iterator());
+ *       stand.unsicher().forEach(position -> System.out.println("prüfen: " + position));
+ *   }
+ *}
+ */
+final class FortsetzbarerVersand implements AutoCloseable {
+    static final byte VERSUCH = 'V';
+    static final byte ZUGESTELLT = 'Z';
+    static final byte FEHLER = 'F';
+    static final byte UNSICHER = 'U';
+    static final byte CHECKPOINT = 'C';
+
+    /**
+     * @param gruppe         Anzahl Rechnungen je {@linkplain FileChannel#force(boolean) fsync}
+     * @param checkpointAlle Anzahl Rechnungen zwischen zwei Checkpoints, mindestens eine Gruppe
+     * @param maxLogBytes    Größe, ab der das Log beim Checkpoint durch den Checkpoint allein ersetzt wird
+     */
+    record Konfiguration(int gruppe, int checkpointAlle, long maxLogBytes) {
+        static final Konfiguration STANDARD = new Konfiguration(64, 10_000, 1 << 20);
+
+        Konfiguration {
+            if (gruppe < 1) throw new IllegalArgumentException("gruppe muss positiv sein");
+            if (checkpointAlle < gruppe) {
+                throw new IllegalArgumentException("checkpointAlle %d kleiner als gruppe %d"
+                        .formatted(checkpointAlle, gruppe));
+            }
+            if (maxLogBytes < 1) throw new IllegalArgumentException("maxLogBytes muss positiv sein");
+        }
+    }
+
+    /**
+     * @param position Anzahl verarbeiteter Rechnungen der Quelle, auch über Neustarts
+     * @param summen   Summen aller zugestellten und unsicheren Rechnungen
+     * @param unsicher Positionen, deren Versand begonnen, aber nicht bestätigt wurde
+     */
+    record Stand(long position, MwStAuswertung.Ergebnis summen, List<Long> unsicher) {
+    }
+
+    private final Path datei;
+    private final Konfiguration konfiguration;
+    private final MailSenke mail;
+    private final DbSenke db;
+    private FileChannel log;
+
+    // aus dem Log wiederhergestellt
+    private long checkpoint;
+    private final MwStAuswertung.Summen summen = new MwStAuswertung.Summen();
+    private final Set<Long> zugestellt = new HashSet<>();
+    private final Set<Long> zweifelhaft = new HashSet<>();
+    private final List<Long> unsicher = new ArrayList<>();
+
+    private long position;
+    private long seitCheckpoint;
+
+    private FortsetzbarerVersand(Path datei, Konfiguration konfiguration, MailSenke mail, DbSenke db) {
+        this.datei = datei;
+        this.konfiguration = konfiguration;
+        this.mail = mail;
+        this.db = db;
+    }
+
+    /**
+     * Öffne oder erzeuge das Log und stelle den letzten Stand wieder her.
+     */
+    static FortsetzbarerVersand oeffne(Path log, Konfiguration konfiguration, MailSenke mail, DbSenke db)
+            throws IOException {
+        var versand = new FortsetzbarerVersand(requireNonNull(log), requireNonNull(konfiguration),
+                requireNonNull(mail), requireNonNull(db));
+        versand.wiederherstellen();
+        return versand;
+    }
+
+    Stand stand() {
+        return new Stand(position, summen.ergebnis(), List.copyOf(unsicher));
+    }
+
+    /**
+     * Verarbeite die Quelle bis zu ihrem Ende, die bereits verarbeiteten Rechnungen werden überlesen.
+     * Wirft die Senke eine Ausnahme, wird die Rechnung als fehlgeschlagen vermerkt und die Ausnahme weitergereicht,
+     * ein erneuter Aufruf versendet sie noch einmal.
+     *
+     * @param quelle von Anfang an, nach einem Neustart mit denselben Rechnungen
+     */
+    Stand verarbeite(Iterator<? extends Rechnung> quelle) {
+        requireNonNull(quelle);
+        for (long p = 0; p < position; p++) {
+            if (!quelle.hasNext()) {
+                throw new IllegalStateException("Quelle endet bei %d vor der Position %d".formatted(p, position));
+            }
+            quelle.next();
+        }
+
+        var gruppe = new ArrayList<Rechnung>(konfiguration.gruppe());
+        while (quelle.hasNext()) {
+            gruppe.clear();
+            while (gruppe.size() < konfiguration.gruppe() && quelle.hasNext()) gruppe.add(quelle.next());
+            versende(gruppe);
+            if (seitCheckpoint >= konfiguration.checkpointAlle()) checkpoint();
+        }
+        if (seitCheckpoint > 0) checkpoint();
+        return stand();
+    }
+
+    private void versende(List<Rechnung> gruppe) {
+        long von = position;
+        schreibe(eintrag(VERSUCH, 2 * Long.BYTES).putLong(von).putLong(von + gruppe.size()), true);
+        for (var rechnung : gruppe) {
+            requireNonNull(rechnung, "Rechnung an Position %d".formatted(position));
+            if (zugestellt.remove(position)) {
+                summen.add(rechnung);
+            } else if (zweifelhaft.remove(position)) {
+                // sofort auf die Platte, sonst würde sie nach einem weiteren Absturz eventuell doch versendet
+                schreibe(eintrag(UNSICHER, Long.BYTES).putLong(position), true);
+                unsicher.add(position);
+                summen.add(rechnung);
+            } else {
+                try {
+                    Main.sendInvoiceFor(rechnung, mail, db);
+                } catch (RuntimeException e) {
+                    schreibe(eintrag(FEHLER, Long.BYTES).putLong(position), true);
+                    throw e;
+                }
+                summen.add(rechnung);
+                schreibe(eintrag(ZUGESTELLT, Long.BYTES).putLong(position), false);
+            }
+            position++;
+            seitCheckpoint++;
+        }
+    }
+
+    private void checkpoint() {
+        var ergebnis = summen.ergebnis();
+        var abteilungen = List.copyOf(ergebnis.abteilungen().entrySet());
+        var namen = new byte[abteilungen.size()][];
+        int groesse = Long.BYTES + 3 * SUMME + Integer.BYTES;
+        for (int i = 0; i < namen.length; i++) {
+            var name = abteilungen.get(i).getKey();
+            namen[i] = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            groesse += Integer.BYTES + (name == null ? 0 : namen[i].length) + SUMME;
+        }
+
+        var eintrag = eintrag(CHECKPOINT, groesse).putLong(position);
+        summe(eintrag, ergebnis.privatkunden());
+        summe(eintrag, ergebnis.businesskunden());
+        summe(eintrag, ergebnis.steuerfreieBusinesskunden());
+        eintrag.putInt(namen.length);
+        for (int i = 0; i < namen.length; i++) {
+            summe(text(eintrag, namen[i]), abteilungen.get(i).getValue());
+        }
+
+        try {
+            if (log.size() + eintrag.position() > konfiguration.maxLogBytes()) {
+                ersetzen(abschliessen(eintrag));
+            } else {
+                schreibe(eintrag, true);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkpoint = position;
+        seitCheckpoint = 0;
+    }
+
+    /**
+     * Ersetze das Log atomar durch ein neues, das nur den Checkpoint enthält.
+     */
+    private void ersetzen(ByteBuffer checkpoint) throws IOException {
+        var neu = datei.resolveSibling(datei.getFileName() + ".neu");
+        try (var channel = FileChannel.open(neu, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (checkpoint.hasRemaining()) channel.write(checkpoint);
+            channel.force(false);
+        }
+        log.close();
+        Files.move(neu, datei, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log = FileChannel.open(datei, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    //region Log
+    private static final int SUMME = Long.BYTES + 2 * Double.BYTES;
+    private static final int KOPF = Integer.BYTES + Byte.BYTES;
+
+    private static ByteBuffer eintrag(byte typ, int groesse) {
+        return ByteBuffer.allocate(KOPF + groesse + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(groesse + Byte.BYTES).put(typ);
+    }
+
+    private static void summe(ByteBuffer eintrag, MwStAuswertung.Summe summe) {
+        eintrag.putLong(summe.anzahl()).putDouble(summe.netto()).putDouble(summe.mwst());
+    }
+
+    private static ByteBuffer abschliessen(ByteBuffer eintrag) {
+        var crc = new CRC32C();
+        crc.update(eintrag.array(), Integer.BYTES, eintrag.position() - Integer.BYTES);
+        return eintrag.putInt((int) crc.getValue()).flip();
+    }
+
+    private void schreibe(ByteBuffer eintrag, boolean force) {
+        abschliessen(eintrag);
+        try {
+            while (eintrag.hasRemaining()) log.write(eintrag);
+            if (force) log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void wiederherstellen() throws IOException {
+        Files.deleteIfExists(datei.resolveSibling(datei.getFileName() + ".neu"));
+        var daten = Files.exists(datei)
+                ? ByteBuffer.wrap(Files.readAllBytes(datei)).order(ByteOrder.LITTLE_ENDIAN)
+                : ByteBuffer.allocate(0);
+        MwStAuswertung.Ergebnis gespeichert = null;
+        // die zuletzt begonnene Gruppe, bis zu einem Fehler
+        long offenVon = 0;
+        long offenBis = 0;
+        int gueltig = 0;
+        while (daten.remaining() >= KOPF + Integer.BYTES) {
+            int laenge = daten.getInt(gueltig);
+            if (laenge < 1 || laenge > daten.limit() - gueltig - 2 * Integer.BYTES) break;
+            var crc = new CRC32C();
+            crc.update(daten.array(), gueltig + Integer.BYTES, laenge);
+            if ((int) crc.getValue() != daten.getInt(gueltig + Integer.BYTES + laenge)) break;
+
+            var eintrag = daten.slice(gueltig + KOPF, laenge - 1).order(ByteOrder.LITTLE_ENDIAN);
+            switch (daten.get(gueltig + Integer.BYTES)) {
+                case VERSUCH -> {
+                    offenVon = eintrag.getLong();
+                    offenBis = eintrag.getLong();
+                }
+                case ZUGESTELLT -> zugestellt.add(eintrag.getLong());
+                case UNSICHER -> zweifelhaft.add(eintrag.getLong());
+                // diese und die folgenden Rechnungen der Gruppe wurden nicht versendet
+                case FEHLER -> offenBis = eintrag.getLong();
+                case CHECKPOINT -> {
+                    gespeichert = lese(eintrag);
+                    offenVon = offenBis = 0;
+                }
+                default -> throw new IOException("unbekannter Eintrag an Byte %d in %s".formatted(gueltig, datei));
+            }
+            gueltig += Integer.BYTES + laenge + Integer.BYTES;
+            daten.position(gueltig);
+        }
+
+        log = FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // abgebrochener Eintrag am Ende, z.B. durch einen Absturz beim Schreiben
+        if (log.size() > gueltig) {
+            log.truncate(gueltig);
+            log.force(false);
+        }
+        log.position(gueltig);
+        if (gespeichert != null) summen.add(gespeichert);
+        position = checkpoint;
+
+        // Rechnungen werden nacheinander versendet und bestätigt, nur die erste unbestätigte war eventuell im Versand
+        for (long p = offenVon; p < offenBis; p++) {
+            if (!zugestellt.contains(p) && !zweifelhaft.contains(p)) {
+                zweifelhaft.add(p);
+                break;
+            }
+        }
+    }
+
+    private MwStAuswertung.Ergebnis lese(ByteBuffer eintrag) {
+        checkpoint = eintrag.getLong();
+        var privat = summe(eintrag);
+        var business = summe(eintrag);
+        var steuerfrei = summe(eintrag);
+        int anzahl = eintrag.getInt();
+        var abteilungen = new HashMap<String, MwStAuswertung.Summe>(anzahl * 2);
+        for (int i = 0; i < anzahl; i++) abteilungen.put(text(eintrag), summe(eintrag));
+        zugestellt.removeIf(p -> p < checkpoint);
+        zweifelhaft.removeIf(p -> p < checkpoint);
+        // eine Abteilung darf null sein, Map.copyOf lehnt das ab
+        return new MwStAuswertung.Ergebnis(privat, business, steuerfrei, Collections.unmodifiableMap(abteilungen));
+    }
+
+    private static ByteBuffer text(ByteBuffer eintrag, byte[] utf8) {
+        return utf8 == null ? eintrag.putInt(-1) : eintrag.putInt(utf8.length).put(utf8);
+    }
+
+    private static String text(ByteBuffer eintrag) {
+        int laenge = eintrag.getInt();
+        if (laenge == -1) return null;
+        var utf8 = new byte[laenge];
+        eintrag.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static MwStAuswertung.Summe summe(ByteBuffer eintrag) {
+        long anzahl = eintrag.getLong();
+        double netto = eintrag.getDouble();
+        double mwst = eintrag.getDouble();
+        return anzahl == 0 ? MwStAuswertung.Summe.LEER : new MwStAuswertung.Summe(anzahl, netto, mwst);
+    }
+    //endregion
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.mboegers.dop.invoice;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Misst die Dauer der Stufen beim Versand einer Rechnung je {@linkplain Art} in {@linkplain LatenzHistogramm
+ * Histogrammen} und meldet sie als JFR Ereignis {@value StufenEreignis#NAME}.
+ * <p>
+ * Die Messpunkte liefern die Startzeit der nächsten Stufe, sodass je Stufe nur ein {@linkplain System#nanoTime()}
+ * anfällt. Mit {@link #AUS} wird keine Uhr gelesen und nichts aufgezeichnet, die Kosten sind dann ein Feldzugriff je
+ * Messpunkt. JFR Ereignisse werden nur geschrieben, wenn sie in der laufenden Aufzeichnung aktiviert sind.
+ * {@snippet :
+ *   var messung = new Instrumentierung(true, true);
+ *   rechnungen.forEach(r -> Main.sendInvoiceFor2(r, Dummy::sendViaMail, Dummy::storeInDB, messung));
+ *   var p99 = messung.schnappschuss(Instrumentierung.Stufe.MAIL, Instrumentierung.Art.PRIVAT).p99();
+ *}
+ * {@snippet lang = "shell":
+ *   java --enable-preview -XX:StartFlightRecording:filename=rechnungen.jfr ...
+ *   jfr print --events io.github.mboegers.dop.invoice.Stufe rechnungen.jfr
+ *}
+ */
+final class Instrumentierung {
+
+    enum Art {
+        INTERN, PRIVAT, BUSINESS, BUSINESS_STEUERFREI;
+
+        static Art von(Rechnung rechnung) {
+            return switch (rechnung) {
+                case InterneVerechnung _ -> INTERN;
+                case ExternVersandt(Privatkunde _, _) -> PRIVAT;
+                case ExternVersandt(Businesskunde(String _, _, var isVorsteuerAbzugsberechtigt), _)
+                        when isVorsteuerAbzugsberechtigt -> BUSINESS_STEUERFREI;
+                case ExternVersandt(Businesskunde _, _) -> BUSINESS;
+                case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+            };
+        }
+    }
+
+    enum Stufe {
+        MWST, TEXT, MAIL, DB,
+        /**
+         * die ganze Rechnung vom ersten bis zum letzten Messpunkt
+         */
+        GESAMT
+    }
+
+    /**
+     * Misst nichts
+     */
+    static final Instrumentierung AUS = new Instrumentierung(false, false);
+
+    private final boolean histogramme;
+    private final boolean jfr;
+    private final boolean aktiv;
+    /**
+     * je {@code [stufe][art]}
+     */
+    private final LatenzHistogramm[][] latenzen = new LatenzHistogramm[Stufe.values().length][Art.values().length];
+
+    /**
+     * @param histogramme Latenzen in Histogrammen aufzeichnen
+     * @param jfr         Latenzen als JFR Ereignis melden
+     */
+    Instrumentierung(boolean histogramme, boolean jfr) {
+        this.histogramme = histogramme;
+        this.jfr = jfr;
+        this.aktiv = histogramme || jfr;
+        for (var jeArt : latenzen) {
+            for (int art = 0; art < jeArt.length; art++) jeArt[art] = new LatenzHistogramm();
+        }
+    }
+
+    /**
+     * @return Startzeit der ersten Stufe, 0 wenn nicht gemessen wird
+     */
+    long start() {
+        return aktiv ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Art der Rechnung für die Messpunkte, ohne Fallunterscheidung wenn nicht gemessen wird
+     *
+     * @return {@code null} wenn nicht gemessen wird
+     */
+    Art art(Rechnung rechnung) {
+        return aktiv ? Art.von(rechnung) : null;
+    }
+
+    /**
+     * Beende eine Stufe.
+     *
+     * @return Startzeit der nächsten Stufe
+     */
+    long stufe(Stufe stufe, Art art, long start) {
+        if (!aktiv) return 0L;
+        long jetzt = System.nanoTime();
+        aufzeichnen(stufe, art, jetzt - start);
+        return jetzt;
+    }
+
+    /**
+     * Beende die letzte Stufe und die ganze Rechnung.
+     */
+    void ende(Stufe stufe, Art art, long start, long rechnungStart) {
+        if (!aktiv) return;
+        long jetzt = System.nanoTime();
+        aufzeichnen(stufe, art, jetzt - start);
+        aufzeichnen(Stufe.GESAMT, art, jetzt - rechnungStart);
+    }
+
+    //region Metriken
+    LatenzHistogramm.Schnappschuss schnappschuss(Stufe stufe, Art art) {
+        return latenzen[stufe.ordinal()][art.ordinal()].schnappschuss();
+    }
+
+    /**
+     * Anzahl gemessener Rechnungen der Art
+     */
+    long anzahl(Art art) {
+        return latenzen[Stufe.GESAMT.ordinal()][art.ordinal()].anzahl();
+    }
+
+    /**
+     * Schnappschüsse aller Stufen und Arten mit mindestens einer Messung
+     */
+    Map<Stufe, Map<Art, LatenzHistogramm.Schnappschuss>> bericht() {
+        var bericht = new EnumMap<Stufe, Map<Art, LatenzHistogramm.Schnappschuss>>(Stufe.class);
+        for (var stufe : Stufe.values()) {
+            for (var art : Art.values()) {
+                var schnappschuss = schnappschuss(stufe, art);
+                if (schnappschuss.anzahl() > 0) {
+                    bericht.computeIfAbsent(stufe, _ -> new EnumMap<>(Art.class)).put(art, schnappschuss);
+                }
+            }
+        }
+        return bericht;
+    }
+
+    void zuruecksetzen() {
+        for (var jeArt : latenzen) {
+            for (var histogramm : jeArt) histogramm.zuruecksetzen();
+        }
+    }
+    //endregion
+
+    private void aufzeichnen(Stufe stufe, Art art, long dauer) {
+        if (histogramme) latenzen[stufe.ordinal()][art.ordinal()].aufzeichnen(dauer);
+        if (jfr) StufenEreignis.melden(stufe, art, dauer);
+    }
+
+    @Name(StufenEreignis.NAME)
+    @Label("Rechnungsstufe")
+    @Description("Dauer einer Stufe beim Versand einer Rechnung")
+    @Category({"Rechnungen"})
+    @StackTrace(false)
+    static final class StufenEreignis extends Event {
+        static final String NAME = "io.github.mboegers.dop.invoice.Stufe";
+
+        @Label("Stufe")
+        String stufe;
+
+        @Label("Art")
+        String art;
+
+        @Label("Dauer")
+        @Timespan(Timespan.NANOSECONDS)
+        long dauer;
+
+        static void melden(Stufe stufe, Art art, long dauer) {
+            var ereignis = new StufenEreignis();
+            if (ereignis.shouldCommit()) {
+                ereignis.stufe = stufe.name();
+                ereignis.art = art.name();
+                ereignis.dauer = dauer;
+                ereignis.commit();
+            }
+        }
+    }
+}
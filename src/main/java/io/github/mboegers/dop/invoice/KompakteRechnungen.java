@@ -0,0 +1,70 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.Arrays;
+
+import static java.util.Objects.checkIndex;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Externe Rechnungen, die ihren Kunden nur über die Id im {@linkplain KundenRegister} referenzieren.
+ * Je Rechnung werden 12 Bytes in zwei primitiven Spalten belegt, statt eines {@linkplain ExternVersandt} mit
+ * eigenem Kunden-Record und eigenen Strings.
+ */
+final class KompakteRechnungen {
+    private final KundenRegister register;
+    private int[] kundeId;
+    private double[] wert;
+    private int size;
+
+    KompakteRechnungen(KundenRegister register, int capacity) {
+        this.register = requireNonNull(register);
+        this.kundeId = new int[capacity];
+        this.wert = new double[capacity];
+    }
+
+    void add(ExternVersandt rechnung) {
+        add(register.intern(rechnung.kunde()), rechnung.wert());
+    }
+
+    void add(int id, double w) {
+        if (size == wert.length) {
+            int newCapacity = Math.max(16, size * 2);
+            kundeId = Arrays.copyOf(kundeId, newCapacity);
+            wert = Arrays.copyOf(wert, newCapacity);
+        }
+        kundeId[size] = id;
+        wert[size] = w;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int kundeId(int i) {
+        return kundeId[checkIndex(i, size)];
+    }
+
+    double wert(int i) {
+        return wert[checkIndex(i, size)];
+    }
+
+    /**
+     * Erzeuge die Rechnung mit ihrem Kunden als Records.
+     */
+    ExternVersandt rechnung(int i) {
+        return new ExternVersandt(register.kunde(kundeId(i)), wert(i));
+    }
+
+    /**
+     * Schreibe die MwSt jeder Rechnung in {@code mwst}, ohne Kunden zu erzeugen.
+     */
+    void calculateMwSt(double[] mwst) {
+        if (mwst.length < size) {
+            throw new IllegalArgumentException("Ergebnisspalte zu klein: %d < %d".formatted(mwst.length, size));
+        }
+        for (int i = 0; i < size; i++) {
+            mwst[i] = register.calculateMwSt(kundeId[i], wert[i]);
+        }
+    }
+}
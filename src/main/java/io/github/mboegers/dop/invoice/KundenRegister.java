@@ -0,0 +1,266 @@
+package io.github.mboegers.dop.invoice;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+import static java.util.Objects.checkIndex;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Dedupliziert {@linkplain Kunde Kunden} in eine Tabelle außerhalb des Heaps und vergibt je Kunde eine kompakte
+ * {@code int} Id. Rechnungen können so statt eines Kunden-Records nur die Id halten, siehe
+ * {@linkplain KompakteRechnungen}.
+ * Verwendet
+ * JEP 442: Foreign Function & Memory API (Third Preview) https://openjdk.org/jeps/442
+ * <p>
+ * Da {@linkplain Kunde} nur die beiden Records erlaubt, liefert das Register statt eines Flyweight-Kunden eine
+ * {@linkplain Ansicht} auf den Eintrag. Ein Record wird erst mit {@link #kunde(int)} erzeugt.
+ * <p>
+ * Die Kapazität wird beim Erzeugen festgelegt, damit gelesene Einträge nie umkopiert werden. {@link #intern(Kunde)}
+ * ist synchronisiert, Lesen ist ohne Sperre möglich, sobald die Id an den lesenden Thread übergeben wurde.
+ * {@snippet :
+ *   try (var register = new KundenRegister(1_000_000, 64L * 1_000_000)) {
+ *       int id = register.intern(kunde);
+ *       var mwst = register.calculateMwSt(id, wert);
+ *   }
+ *}
+ */
+final class KundenRegister implements AutoCloseable {
+    //region Layout eines Eintrags
+    private static final long EINTRAG = 24;
+    private static final long TEXT_OFFSET = 0;
+    private static final long NAME_LAENGE = 8;
+    private static final long MAIL_LAENGE = 12;
+    private static final long TYP = 16;
+    private static final long FLAGS = 17;
+    //endregion
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment eintraege;
+    private final MemorySegment texte;
+    /**
+     * offene Adressierung, 0 ist frei, sonst Id + 1
+     */
+    private final MemorySegment index;
+    private final int maxKunden;
+    private final int indexMaske;
+    private volatile int anzahl;
+    private long textEnde;
+
+    /**
+     * @param maxKunden maximale Anzahl verschiedener Kunden
+     * @param maxTexte  maximale Summe der UTF-8 Bytes aller Namen und Mails
+     */
+    KundenRegister(int maxKunden, long maxTexte) {
+        if (maxKunden < 1 || maxKunden > 1 << 29) {
+            throw new IllegalArgumentException("maxKunden %d außerhalb 1..2^29".formatted(maxKunden));
+        }
+        this.maxKunden = maxKunden;
+        int slots = Integer.highestOneBit(maxKunden - 1 | 1) << 2; // Füllgrad höchstens 50%
+        this.indexMaske = slots - 1;
+        this.eintraege = arena.allocate(EINTRAG * maxKunden, Long.BYTES);
+        this.texte = arena.allocate(Math.max(1, maxTexte));
+        this.index = arena.allocate(ValueLayout.JAVA_INT.byteSize() * slots, Integer.BYTES);
+    }
+
+    /**
+     * Liefere die Id des Kunden, ein gleicher Kunde erhält dieselbe Id. Ist der Kunde schon registriert, wird nichts
+     * alloziert, Name und Mail werden nur für neue Kunden kodiert.
+     */
+    synchronized int intern(Kunde kunde) {
+        return switch (requireNonNull(kunde)) {
+            case Privatkunde(var name, var mail) -> intern(RechnungsBatch.PRIVATKUNDE, (byte) 0, name, mail);
+            case Businesskunde(var name, var mail, var abzug) ->
+                    intern(RechnungsBatch.BUSINESSKUNDE, (byte) (abzug ? 1 : 0), name, mail);
+        };
+    }
+
+    private int intern(byte typ, byte flags, String name, String mail) {
+        int slot = hash(typ, flags, name, mail) & indexMaske;
+        for (int belegt; (belegt = index.getAtIndex(ValueLayout.JAVA_INT, slot)) != 0; slot = (slot + 1) & indexMaske) {
+            if (gleich(belegt - 1, typ, flags, name, mail)) return belegt - 1;
+        }
+
+        int id = anzahl;
+        if (id == maxKunden) throw new IllegalStateException("Register voll, maximal %d Kunden".formatted(maxKunden));
+        var nameBytes = utf8(name);
+        var mailBytes = utf8(mail);
+        long benoetigt = laenge(nameBytes) + laenge(mailBytes);
+        if (textEnde + benoetigt > texte.byteSize()) throw new IllegalStateException("Textspeicher voll");
+
+        long e = id * EINTRAG;
+        eintraege.set(ValueLayout.JAVA_LONG, e + TEXT_OFFSET, textEnde);
+        eintraege.set(ValueLayout.JAVA_INT, e + NAME_LAENGE, nameBytes == null ? -1 : nameBytes.length);
+        eintraege.set(ValueLayout.JAVA_INT, e + MAIL_LAENGE, mailBytes == null ? -1 : mailBytes.length);
+        eintraege.set(ValueLayout.JAVA_BYTE, e + TYP, typ);
+        eintraege.set(ValueLayout.JAVA_BYTE, e + FLAGS, flags);
+        textEnde = kopiere(nameBytes, textEnde);
+        textEnde = kopiere(mailBytes, textEnde);
+
+        index.setAtIndex(ValueLayout.JAVA_INT, slot, id + 1);
+        anzahl = id + 1; // volatile, veröffentlicht den Eintrag
+        return id;
+    }
+
+    int anzahl() {
+        return anzahl;
+    }
+
+    byte typ(int id) {
+        return eintraege.get(ValueLayout.JAVA_BYTE, eintrag(id) + TYP);
+    }
+
+    boolean isVorsteuerAbzugsberechtigt(int id) {
+        return eintraege.get(ValueLayout.JAVA_BYTE, eintrag(id) + FLAGS) != 0;
+    }
+
+    /**
+     * MwSt wie {@linkplain MwStRechner.SwitchExpressionWhenClauseUnnamed} ohne den Kunden zu erzeugen
+     */
+    double calculateMwSt(int id, double wert) {
+        long e = eintrag(id);
+        boolean frei = eintraege.get(ValueLayout.JAVA_BYTE, e + TYP) == RechnungsBatch.BUSINESSKUNDE
+                && eintraege.get(ValueLayout.JAVA_BYTE, e + FLAGS) != 0;
+        return MwStRechner.mwst(wert, frei);
+    }
+
+    /**
+     * Erzeuge den Kunden als Record.
+     */
+    Kunde kunde(int id) {
+        var ansicht = new Ansicht().zeige(id);
+        return typ(id) == RechnungsBatch.PRIVATKUNDE
+                ? new Privatkunde(ansicht.name(), ansicht.mail())
+                : new Businesskunde(ansicht.name(), ansicht.mail(), isVorsteuerAbzugsberechtigt(id));
+    }
+
+    /**
+     * Belegter Speicher außerhalb des Heaps in Bytes
+     */
+    long offHeapBytes() {
+        return eintraege.byteSize() + texte.byteSize() + index.byteSize();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Wiederverwendbare Sicht auf einen Eintrag, liest die Felder direkt aus dem Register.
+     */
+    final class Ansicht {
+        private long eintrag;
+
+        Ansicht zeige(int id) {
+            eintrag = eintrag(id);
+            return this;
+        }
+
+        byte typ() {
+            return eintraege.get(ValueLayout.JAVA_BYTE, eintrag + TYP);
+        }
+
+        boolean isVorsteuerAbzugsberechtigt() {
+            return eintraege.get(ValueLayout.JAVA_BYTE, eintrag + FLAGS) != 0;
+        }
+
+        /**
+         * UTF-8 Bytes des Namens ohne Kopie, leer bei null
+         */
+        MemorySegment nameBytes() {
+            return texte.asSlice(textOffset(), Math.max(0, nameLaenge()));
+        }
+
+        String name() {
+            return text(textOffset(), nameLaenge());
+        }
+
+        String mail() {
+            int mailLaenge = eintraege.get(ValueLayout.JAVA_INT, eintrag + MAIL_LAENGE);
+            return text(textOffset() + Math.max(0, nameLaenge()), mailLaenge);
+        }
+
+        private long textOffset() {
+            return eintraege.get(ValueLayout.JAVA_LONG, eintrag + TEXT_OFFSET);
+        }
+
+        private int nameLaenge() {
+            return eintraege.get(ValueLayout.JAVA_INT, eintrag + NAME_LAENGE);
+        }
+    }
+
+    /**
+     * über die im String gespeicherten Hashes, damit ein Treffer ohne Kodieren auskommt
+     */
+    private static int hash(byte typ, byte flags, String name, String mail) {
+        int h = typ * 31 + flags;
+        h = h * 31 + (name == null ? -1 : name.hashCode());
+        h = h * 31 + (mail == null ? -1 : mail.hashCode());
+        return h ^ (h >>> 16);
+    }
+
+    private boolean gleich(int id, byte typ, byte flags, String name, String mail) {
+        long e = id * EINTRAG;
+        if (eintraege.get(ValueLayout.JAVA_BYTE, e + TYP) != typ
+                || eintraege.get(ValueLayout.JAVA_BYTE, e + FLAGS) != flags) {
+            return false;
+        }
+        long offset = eintraege.get(ValueLayout.JAVA_LONG, e + TEXT_OFFSET);
+        int nameLaenge = eintraege.get(ValueLayout.JAVA_INT, e + NAME_LAENGE);
+        int mailLaenge = eintraege.get(ValueLayout.JAVA_INT, e + MAIL_LAENGE);
+        return gleich(offset, nameLaenge, name) && gleich(offset + Math.max(0, nameLaenge), mailLaenge, mail);
+    }
+
+    /**
+     * Vergleiche die gespeicherten UTF-8 Bytes mit dem Text, der dabei Zeichen für Zeichen kodiert wird wie von
+     * {@linkplain String#getBytes(java.nio.charset.Charset)}, einzelne Surrogate also als {@code ?}.
+     */
+    private boolean gleich(long offset, int laenge, String text) {
+        if (text == null) return laenge < 0;
+        if (laenge < text.length()) return false; // mindestens ein Byte je char
+        long pos = offset;
+        long ende = offset + laenge;
+        for (int i = 0; i < text.length(); i++) {
+            int zeichen = text.codePointAt(i);
+            if (Character.isSupplementaryCodePoint(zeichen)) {
+                i++;
+            } else if (Character.isSurrogate((char) zeichen)) {
+                zeichen = '?';
+            }
+            int bytes = zeichen < 0x80 ? 1 : zeichen < 0x800 ? 2 : zeichen < 0x10000 ? 3 : 4;
+            if (ende - pos < bytes) return false;
+            int erstes = bytes == 1 ? zeichen : (0xF00 >> bytes) & 0xFF | zeichen >>> 6 * (bytes - 1);
+            if (texte.get(ValueLayout.JAVA_BYTE, pos++) != (byte) erstes) return false;
+            for (int k = bytes - 2; k >= 0; k--) {
+                if (texte.get(ValueLayout.JAVA_BYTE, pos++) != (byte) (0x80 | (zeichen >>> 6 * k) & 0x3F)) return false;
+            }
+        }
+        return pos == ende;
+    }
+
+    private long eintrag(int id) {
+        return checkIndex(id, anzahl) * EINTRAG;
+    }
+
+    private long kopiere(byte[] bytes, long offset) {
+        if (bytes == null) return offset;
+        MemorySegment.copy(bytes, 0, texte, ValueLayout.JAVA_BYTE, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private String text(long offset, int laenge) {
+        if (laenge < 0) return null;
+        return new String(texte.asSlice(offset, laenge).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long laenge(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
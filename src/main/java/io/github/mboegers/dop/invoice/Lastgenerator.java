@@ -0,0 +1,210 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Erzeugt reproduzierbar beliebig viele synthetische Rechnungen für Last- und Durchsatzmessungen.
+ * <p>
+ * Die Art jeder Rechnung wird nach der {@linkplain Mischung} gezogen, der Betrag nach den {@linkplain Betraege}.
+ * Kunden und Abteilungen wiederholen sich Zipf-verteilt: der Kunde auf Rang {@code k} wird mit einer
+ * Wahrscheinlichkeit proportional zu {@code 1 / k^zipf} gezogen, wenige Stammkunden erhalten also die meisten
+ * Rechnungen. Mit {@code zipf = 0} sind alle Kunden gleich häufig. Ein wiederholter Kunde ist dieselbe Instanz.
+ * {@snippet :
+ *   var last = new Lastgenerator(Lastgenerator.Konfiguration.STANDARD);
+ *   last.erzeuge(1_000_000).forEach(r -> Main.sendInvoiceFor(r, mail, db));
+ *}
+ */
+final class Lastgenerator implements Iterator<Rechnung> {
+
+    /**
+     * Anteile der Rechnungsarten, müssen sich nicht zu 1 summieren
+     *
+     * @param business      Businesskunden ohne Vorsteuerabzug, zahlen MwSt
+     * @param businessAbzug Businesskunden mit Vorsteuerabzug, von der MwSt befreit
+     */
+    record Mischung(double intern, double privat, double business, double businessAbzug) {
+        static final Mischung STANDARD = new Mischung(0.1d, 0.5d, 0.2d, 0.2d);
+
+        Mischung {
+            for (double anteil : new double[]{intern, privat, business, businessAbzug}) {
+                if (!(anteil >= 0d) || Double.isInfinite(anteil)) {
+                    throw new IllegalArgumentException("Anteil %s ungültig".formatted(anteil));
+                }
+            }
+            if (intern + privat + business + businessAbzug == 0d) {
+                throw new IllegalArgumentException("Mindestens ein Anteil muss positiv sein");
+            }
+        }
+    }
+
+    /**
+     * Verteilung der Rechnungsbeträge, jeweils auf Cent gerundet
+     */
+    enum Betraege {
+        /**
+         * gleich verteilt zwischen 1 und 10.000
+         */
+        GLEICHVERTEILT {
+            @Override
+            double ziehe(SplittableRandom random) {
+                return random.nextDouble(1d, 10_000d);
+            }
+        },
+        /**
+         * log-normal mit Median 250, viele kleine und wenige sehr große Beträge, von 0,01 bis 1.000.000
+         */
+        LOGNORMAL {
+            @Override
+            double ziehe(SplittableRandom random) {
+                return Math.clamp(250d * Math.exp(1.2d * normal(random)), 0.01d, 1_000_000d);
+            }
+        },
+        /**
+         * immer 100
+         */
+        FEST {
+            @Override
+            double ziehe(SplittableRandom random) {
+                return 100d;
+            }
+        };
+
+        abstract double ziehe(SplittableRandom random);
+
+        /**
+         * Standardnormalverteilt nach Box-Muller
+         */
+        private static double normal(SplittableRandom random) {
+            return Math.sqrt(-2d * Math.log(1d - random.nextDouble())) * Math.cos(2d * Math.PI * random.nextDouble());
+        }
+    }
+
+    /**
+     * @param kunden Anzahl verschiedener Kunden je Kundenart
+     * @param zipf   Exponent der Zipf-Verteilung, 0 für gleich häufige Kunden
+     */
+    record Konfiguration(Mischung mischung, int kunden, double zipf, Betraege betraege, long seed) {
+        static final Konfiguration STANDARD = new Konfiguration(Mischung.STANDARD, 10_000, 1.1d, Betraege.LOGNORMAL,
+                42L);
+
+        Konfiguration {
+            requireNonNull(mischung);
+            requireNonNull(betraege);
+            if (kunden < 1) throw new IllegalArgumentException("kunden muss positiv sein");
+            if (!(zipf >= 0d) || Double.isInfinite(zipf)) {
+                throw new IllegalArgumentException("zipf %s ungültig".formatted(zipf));
+            }
+        }
+    }
+
+    private static final String[] ABTEILUNGEN = {"HR", "IT", "Vertrieb", "Einkauf", "Marketing", "Recht", "Lager",
+            "Kantine"};
+
+    private final Konfiguration konfiguration;
+    private final SplittableRandom random;
+    private final double[] arten;
+    private final double[] kundenRang;
+    private final double[] abteilungsRang;
+    private final Privatkunde[] privatkunden;
+    private final Businesskunde[] businesskunden;
+    private final Businesskunde[] abzugskunden;
+
+    Lastgenerator(Konfiguration konfiguration) {
+        this.konfiguration = requireNonNull(konfiguration);
+        this.random = new SplittableRandom(konfiguration.seed());
+        var mischung = konfiguration.mischung();
+        this.arten = summiert(new double[]{mischung.intern(), mischung.privat(), mischung.business(),
+                mischung.businessAbzug()});
+        this.kundenRang = zipf(konfiguration.kunden(), konfiguration.zipf());
+        this.abteilungsRang = zipf(ABTEILUNGEN.length, konfiguration.zipf());
+        // Kunden entstehen erst beim ersten Ziehen, bei starker Wiederholung werden die meisten nie gebraucht
+        this.privatkunden = new Privatkunde[konfiguration.kunden()];
+        this.businesskunden = new Businesskunde[konfiguration.kunden()];
+        this.abzugskunden = new Businesskunde[konfiguration.kunden()];
+    }
+
+    /**
+     * Verteilungsfunktion über die Ränge 1 bis {@code n}
+     */
+    private static double[] zipf(int n, double exponent) {
+        var gewichte = new double[n];
+        for (int i = 0; i < n; i++) gewichte[i] = 1d / Math.pow(i + 1, exponent);
+        return summiert(gewichte);
+    }
+
+    /**
+     * Kumulierte, auf 1 normierte Anteile
+     */
+    private static double[] summiert(double[] anteile) {
+        var summe = new double[anteile.length];
+        double laufend = 0d;
+        for (int i = 0; i < anteile.length; i++) summe[i] = laufend += anteile[i];
+        for (int i = 0; i < summe.length; i++) summe[i] /= laufend;
+        summe[summe.length - 1] = 1d;
+        return summe;
+    }
+
+    /**
+     * Erster Rang, dessen kumulierter Anteil über einer Zufallszahl aus [0, 1) liegt
+     */
+    private int ziehe(double[] verteilung) {
+        double zufall = random.nextDouble();
+        int index = Arrays.binarySearch(verteilung, zufall);
+        if (index < 0) return -index - 1;
+        // genau getroffen, Ränge mit Anteil 0 haben dieselbe Grenze und werden übersprungen
+        while (verteilung[index] <= zufall) index++;
+        return index;
+    }
+
+    Konfiguration konfiguration() {
+        return konfiguration;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true;
+    }
+
+    @Override
+    public Rechnung next() {
+        int art = ziehe(arten);
+        double wert = Math.round(konfiguration.betraege().ziehe(random) * 100d) / 100d;
+        if (art == 0) return new InterneVerechnung(ABTEILUNGEN[ziehe(abteilungsRang)], wert);
+
+        int rang = ziehe(kundenRang);
+        Kunde kunde = switch (art) {
+            case 1 -> {
+                var k = privatkunden[rang];
+                yield k != null ? k : (privatkunden[rang] =
+                        new Privatkunde("Privatkunde %d".formatted(rang), "privat%d@kunde.example".formatted(rang)));
+            }
+            case 2 -> {
+                var k = businesskunden[rang];
+                yield k != null ? k : (businesskunden[rang] =
+                        new Businesskunde("Firma %d".formatted(rang), "firma%d@kunde.example".formatted(rang), false));
+            }
+            default -> {
+                var k = abzugskunden[rang];
+                yield k != null ? k : (abzugskunden[rang] =
+                        new Businesskunde("Firma %d AG".formatted(rang), "ag%d@kunde.example".formatted(rang), true));
+            }
+        };
+        return new ExternVersandt(kunde, wert);
+    }
+
+    /**
+     * Die nächsten {@code anzahl} Rechnungen
+     */
+    List<Rechnung> erzeuge(int anzahl) {
+        if (anzahl < 0) throw new IllegalArgumentException("anzahl %d ist negativ".formatted(anzahl));
+        var rechnungen = new ArrayList<Rechnung>(anzahl);
+        for (int i = 0; i < anzahl; i++) rechnungen.add(next());
+        return rechnungen;
+    }
+}
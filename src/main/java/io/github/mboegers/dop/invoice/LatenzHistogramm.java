@@ -0,0 +1,120 @@
+package io.github.mboegers.dop.invoice;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sperrfreies Histogramm für Latenzen in Nanosekunden nach dem Vorbild von HdrHistogram.
+ * <p>
+ * Jede Zweierpotenz ist in {@value #UNTERTEILUNG} gleich breite Eimer geteilt, ein Quantil ist daher auf etwa 3%
+ * genau. Werte bis {@value #UNTERTEILUNG} ns werden exakt gezählt. Aufzeichnen kostet einen
+ * {@linkplain Long#numberOfLeadingZeros(long)}, ein Inkrement im {@linkplain AtomicLongArray}, eine Summe und das
+ * Maximum.
+ * {@snippet :
+ *   var histogramm = new LatenzHistogramm();
+ *   long start = System.nanoTime();
+ *   // ...
+ *   histogramm.aufzeichnen(System.nanoTime() - start);
+ *   var p99 = histogramm.schnappschuss().p99();
+ *}
+ */
+final class LatenzHistogramm {
+    static final int UNTERTEILUNG_BITS = 5;
+    static final int UNTERTEILUNG = 1 << UNTERTEILUNG_BITS;
+    private static final int EIMER = (Long.SIZE - UNTERTEILUNG_BITS) * UNTERTEILUNG;
+
+    private final AtomicLongArray eimer = new AtomicLongArray(EIMER);
+    private final LongAdder summe = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Quantile in Nanosekunden, jeweils die obere Grenze des Eimers
+     */
+    record Schnappschuss(long anzahl, long summe, long max, long p50, long p90, long p99, long p999) {
+        static final Schnappschuss LEER = new Schnappschuss(0, 0, 0, 0, 0, 0, 0);
+
+        Duration mittel() {
+            return anzahl == 0 ? Duration.ZERO : Duration.ofNanos(summe / anzahl);
+        }
+    }
+
+    /**
+     * @param nanos negative Werte, z.B. durch ungenaue Uhren, zählen als 0
+     */
+    void aufzeichnen(long nanos) {
+        long wert = Math.max(0, nanos);
+        eimer.incrementAndGet(index(wert));
+        summe.add(wert);
+        max.accumulate(wert);
+    }
+
+    long anzahl() {
+        long anzahl = 0;
+        for (int i = 0; i < EIMER; i++) anzahl += eimer.get(i);
+        return anzahl;
+    }
+
+    /**
+     * Kleinster Wert, unter dem mindestens der Anteil {@code quantil} aller Werte liegt, auf den Eimer genau
+     */
+    long wertBeiQuantil(double quantil) {
+        if (quantil < 0d || quantil > 1d) {
+            throw new IllegalArgumentException("Quantil %s außerhalb 0..1".formatted(quantil));
+        }
+        long gesamt = 0;
+        var kopie = new long[EIMER];
+        for (int i = 0; i < EIMER; i++) gesamt += kopie[i] = eimer.get(i);
+        return wertBeiQuantil(kopie, gesamt, quantil);
+    }
+
+    /**
+     * Die Felder werden einzeln gelesen, bei gleichzeitigem Aufzeichnen können sie sich um wenige Werte unterscheiden.
+     */
+    Schnappschuss schnappschuss() {
+        long gesamt = 0;
+        var kopie = new long[EIMER];
+        for (int i = 0; i < EIMER; i++) gesamt += kopie[i] = eimer.get(i);
+        if (gesamt == 0) return Schnappschuss.LEER;
+        return new Schnappschuss(gesamt, summe.sum(), max.get(),
+                wertBeiQuantil(kopie, gesamt, 0.5d), wertBeiQuantil(kopie, gesamt, 0.9d),
+                wertBeiQuantil(kopie, gesamt, 0.99d), wertBeiQuantil(kopie, gesamt, 0.999d));
+    }
+
+    void zuruecksetzen() {
+        for (int i = 0; i < EIMER; i++) eimer.set(i, 0);
+        summe.reset();
+        max.reset();
+    }
+
+    static int index(long wert) {
+        if (wert < UNTERTEILUNG) return (int) wert;
+        int exponent = 63 - Long.numberOfLeadingZeros(wert);
+        int unter = (int) (wert >>> (exponent - UNTERTEILUNG_BITS)) & (UNTERTEILUNG - 1);
+        return (exponent - UNTERTEILUNG_BITS + 1) * UNTERTEILUNG + unter;
+    }
+
+    /**
+     * größter Wert, der in den Eimer {@code index} fällt
+     */
+    static long obereGrenze(int index) {
+        if (index < UNTERTEILUNG) return index;
+        int exponent = index / UNTERTEILUNG + UNTERTEILUNG_BITS - 1;
+        long unter = index % UNTERTEILUNG;
+        int verschiebung = exponent - UNTERTEILUNG_BITS;
+        long untereGrenze = (UNTERTEILUNG + unter) << verschiebung;
+        return untereGrenze + (1L << verschiebung) - 1;
+    }
+
+    private static long wertBeiQuantil(long[] eimer, long gesamt, double quantil) {
+        if (gesamt == 0) return 0;
+        long ziel = Math.max(1, (long) Math.ceil(quantil * gesamt));
+        long kumuliert = 0;
+        for (int i = 0; i < eimer.length; i++) {
+            kumuliert += eimer[i];
+            if (kumuliert >= ziel) return obereGrenze(i);
+        }
+        return obereGrenze(eimer.length - 1);
+    }
+}
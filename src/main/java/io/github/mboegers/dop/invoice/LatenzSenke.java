@@ -0,0 +1,42 @@
+package io.github.mboegers.dop.invoice;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simuliert eine blockierende Mail- bzw. Datenbank-Senke mit fester Latenz ohne Ausgabe,
+ * um die Versandarten lokal messen zu können.
+ */
+final class LatenzSenke implements MailSenke, DbSenke {
+    private final Duration latenz;
+    private final LongAdder aufrufe = new LongAdder();
+
+    LatenzSenke(Duration latenz) {
+        if (latenz.isNegative()) throw new IllegalArgumentException("Latenz %s ist negativ".formatted(latenz));
+        this.latenz = latenz;
+    }
+
+    @Override
+    public void sendViaMail(String empf, String txt) {
+        warte();
+    }
+
+    @Override
+    public void storeInDB(String abt, double value) {
+        warte();
+    }
+
+    long aufrufe() {
+        return aufrufe.sum();
+    }
+
+    private void warte() {
+        try {
+            Thread.sleep(latenz);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Unterbrochen während simulierter I/O", e);
+        }
+        aufrufe.increment();
+    }
+}
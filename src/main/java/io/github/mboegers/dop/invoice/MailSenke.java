@@ -0,0 +1,9 @@
+package io.github.mboegers.dop.invoice;
+
+/**
+ * Ziel für den Versand einer Rechnung per Mail, z.B. {@code Dummy::sendViaMail}
+ */
+@FunctionalInterface
+interface MailSenke {
+    void sendViaMail(String empf, String txt);
+}
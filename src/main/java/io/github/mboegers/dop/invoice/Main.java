@@ -1,9 +1,14 @@
 package io.github.mboegers.dop.invoice;
 
+import io.github.mboegers.dop.invoice.Instrumentierung.Art;
+import io.github.mboegers.dop.invoice.Instrumentierung.Stufe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.function.Consumer;
 
-import static io.github.mboegers.dop.invoice.Dummy.sendViaMail;
-import static io.github.mboegers.dop.invoice.Dummy.storeInDB;
 import static java.util.FormatProcessor.FMT;
 
 class Main {
@@ -18,17 +23,51 @@ class Main {
      * JEP 430: String Templates https://openjdk.org/jeps/430
      */
     static void sendInvoiceFor(Rechnung rechnung) {
+        sendInvoiceFor(rechnung, Dummy::sendViaMail, Dummy::storeInDB);
+    }
+
+    static void sendInvoiceFor(Rechnung rechnung, MailSenke mail, DbSenke db) {
         switch (rechnung) {
-            case InterneVerechnung(var abt, double wert) -> storeInDB(abt, wert);
+            case InterneVerechnung(var abt, double wert) -> db.storeInDB(abt, wert);
             case ExternVersandt(Privatkunde(var name, var address), var wert) -> {
-                var mwst = wert * 0.1;
+                var mwst = wert * MwStRechner.SATZ;
                 var text = formatInvoiceText(name, wert, mwst);
-                sendViaMail(address, text);
+                mail.sendViaMail(address, text);
             }
             case ExternVersandt(Businesskunde(var name, var address, var isAbzugBerechtigt), double wert)
-                    when isAbzugBerechtigt -> sendViaMail(address, formatInvoiceText(name, wert, 0d));
+                    when isAbzugBerechtigt -> mail.sendViaMail(address, formatInvoiceText(name, wert, 0d));
             case ExternVersandt(Businesskunde(var name, var address, _), double wert) ->
-                    sendViaMail(address, formatInvoiceText(name, wert, wert * 0.1));
+                    mail.sendViaMail(address, formatInvoiceText(name, wert, wert * MwStRechner.SATZ));
+        }
+    }
+
+    /**
+     * Wie {@link #sendInvoiceFor(Rechnung, MailSenke, DbSenke)}, misst zusätzlich die Dauer jeder Stufe.
+     */
+    static void sendInvoiceFor(Rechnung rechnung, MailSenke mail, DbSenke db, Instrumentierung messung) {
+        var art = messung.art(rechnung);
+        long start = messung.start();
+        switch (rechnung) {
+            case InterneVerechnung(var abt, double wert) -> {
+                db.storeInDB(abt, wert);
+                messung.ende(Stufe.DB, art, start, start);
+            }
+            case ExternVersandt(Privatkunde(var name, var address), var wert) -> {
+                var mwst = wert * MwStRechner.SATZ;
+                long t = messung.stufe(Stufe.MWST, art, start);
+                var text = formatInvoiceText(name, wert, mwst);
+                t = messung.stufe(Stufe.TEXT, art, t);
+                mail.sendViaMail(address, text);
+                messung.ende(Stufe.MAIL, art, t, start);
+            }
+            case ExternVersandt(Businesskunde(var name, var address, var isAbzugBerechtigt), double wert) -> {
+                var mwst = isAbzugBerechtigt ? 0d : wert * MwStRechner.SATZ;
+                long t = messung.stufe(Stufe.MWST, art, start);
+                var text = formatInvoiceText(name, wert, mwst);
+                t = messung.stufe(Stufe.TEXT, art, t);
+                mail.sendViaMail(address, text);
+                messung.ende(Stufe.MAIL, art, t, start);
+            }
         }
     }
 
@@ -47,22 +86,58 @@ class Main {
 
     //region Delegate Style
     static void sendInvoiceFor2(Rechnung rechnung) {
+        sendInvoiceFor2(rechnung, Dummy::sendViaMail, Dummy::storeInDB);
+    }
+
+    static void sendInvoiceFor2(Rechnung rechnung, MailSenke mail, DbSenke db) {
+        sendInvoiceFor2(rechnung, mail, db, Instrumentierung.AUS);
+    }
+
+    /**
+     * Wie {@link #sendInvoiceFor2(Rechnung, MailSenke, DbSenke)}, MwSt und Text kommen aus dem Cache.
+     */
+    static void sendInvoiceFor2(Rechnung rechnung, MailSenke mail, DbSenke db, RechnungsCache cache) {
         switch (rechnung) {
-            case InterneVerechnung(var abt, double wert) -> storeInDB(abt, wert);
+            case InterneVerechnung(var abt, double wert) -> db.storeInDB(abt, wert);
+            case ExternVersandt extern -> {
+                var text = cache.text(extern);
+
+                switch (extern.kunde()) {
+                    case Privatkunde(_, var address) -> mail.sendViaMail(address, text);
+                    case Businesskunde(_, var address, _) -> mail.sendViaMail(address, text);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wie {@link #sendInvoiceFor2(Rechnung, MailSenke, DbSenke)}, misst zusätzlich die Dauer jeder Stufe.
+     */
+    static void sendInvoiceFor2(Rechnung rechnung, MailSenke mail, DbSenke db, Instrumentierung messung) {
+        long start = messung.start();
+        switch (rechnung) {
+            case InterneVerechnung(var abt, double wert) -> {
+                db.storeInDB(abt, wert);
+                messung.ende(Stufe.DB, Art.INTERN, start, start);
+            }
             case ExternVersandt(Kunde kunde, var wert) -> {
+                var art = messung.art(rechnung);
                 var mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert);
+                long t = messung.stufe(Stufe.MWST, art, start);
 
                 var text = produceInvoiceText(kunde, wert, mwst);
+                t = messung.stufe(Stufe.TEXT, art, t);
 
                 switch (kunde) {
-                    case Privatkunde(_, var address) -> sendViaMail(address, text);
-                    case Businesskunde(_, var address, _) -> sendViaMail(address, text);
+                    case Privatkunde(_, var address) -> mail.sendViaMail(address, text);
+                    case Businesskunde(_, var address, _) -> mail.sendViaMail(address, text);
                 }
+                messung.ende(Stufe.MAIL, art, t, start);
             }
         }
     }
 
-    private static String produceInvoiceText(Kunde kunde, double wert, double mwst) {
+    static String produceInvoiceText(Kunde kunde, double wert, double mwst) {
         var kundeName = switch (kunde) {
             case Privatkunde(String name, var _) -> name;
             case Businesskunde(var name, _, _) -> name;
@@ -78,9 +153,41 @@ class Main {
     }
     //endregion
 
-    public static void main(String[] args) {
+    /**
+     * Behandle die Beispielrechnungen oder, falls angegeben, alle Rechnungen aus einer CSV Datei nacheinander. Mit
+     * {@code --pipeline} als erstem Argument laufen sie stattdessen parallel durch die {@linkplain RechnungsPipeline}
+     * und Verrechnungen gebündelt in die {@linkplain BatchDbSenke}, die Reihenfolge der Ausgabe ist dann nicht fest.
+     *
+     * @see CsvRechnungsLeser
+     */
+    public static void main(String[] args) throws IOException {
         System.out.println("Behandle Rechnung");
-        var rechnungen = List.of(
+        boolean mitPipeline = args.length > 0 && args[0].equals("--pipeline");
+        int datei = mitPipeline ? 1 : 0;
+        if (!mitPipeline) {
+            behandle(args, datei, Main::sendInvoiceFor);
+            return;
+        }
+        try (var db = new BatchDbSenke(
+                new BatchDbSenke.Konfiguration(100, Duration.ofSeconds(1), true), Dummy::storeAllInDB);
+             var pipeline = new RechnungsPipeline(
+                     RechnungsPipeline.Konfiguration.einheitlich(16, 2), Dummy::sendViaMail, db)) {
+            behandle(args, datei, pipeline::submit);
+        }
+    }
+
+    private static void behandle(String[] args, int datei, Consumer<Rechnung> verarbeitung) throws IOException {
+        if (args.length > datei) {
+            try (var rechnungen = CsvRechnungsLeser.oeffne(Path.of(args[datei])).stream()) {
+                rechnungen.forEach(verarbeitung);
+            }
+        } else {
+            beispielRechnungen().forEach(verarbeitung);
+        }
+    }
+
+    private static List<Rechnung> beispielRechnungen() {
+        return List.of(
                 new InterneVerechnung(
                         "HR",
                         10),
@@ -93,7 +200,5 @@ class Main {
                 new ExternVersandt(
                         new Privatkunde("Merlin", ""),
                         10));
-
-        rechnungen.forEach(Main::sendInvoiceFor);
     }
 }
@@ -0,0 +1,207 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.Serial;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Summiert Netto, MwSt und Anzahl großer Rechnungsmengen je Kundenart und je Abteilung parallel mit einem
+ * {@linkplain RecursiveTask} im {@linkplain ForkJoinPool}.
+ * <p>
+ * Die Liste wird unabhängig von der Anzahl Threads immer an denselben Stellen geteilt und die Teilsummen in derselben
+ * Reihenfolge zusammengeführt. Zusammen mit der kompensierten Summation nach Kahan ist das Ergebnis daher bitgleich,
+ * egal ob mit einem oder allen Kernen gerechnet wird.
+ * {@snippet :
+ *   var ergebnis = MwStAuswertung.auswerten(rechnungen);
+ *   var mwst = ergebnis.gesamt().mwst();
+ *}
+ */
+final class MwStAuswertung {
+    /**
+     * Teillisten bis zu dieser Größe werden sequenziell summiert
+     */
+    static final int SCHWELLE = 8192;
+
+    private MwStAuswertung() {
+    }
+
+    record Summe(long anzahl, double netto, double mwst) {
+        static final Summe LEER = new Summe(0, 0d, 0d);
+
+        double brutto() {
+            return netto + mwst;
+        }
+    }
+
+    /**
+     * @param abteilungen Summen der {@linkplain InterneVerechnung internen Verrechnungen} je Abteilung
+     */
+    record Ergebnis(Summe privatkunden, Summe businesskunden, Summe steuerfreieBusinesskunden,
+                    Map<String, Summe> abteilungen) {
+
+        /**
+         * Summe über alle Kundenarten und Abteilungen
+         */
+        Summe gesamt() {
+            var gesamt = new Teilsumme();
+            gesamt.add(privatkunden);
+            gesamt.add(businesskunden);
+            gesamt.add(steuerfreieBusinesskunden);
+            abteilungen.values().forEach(gesamt::add);
+            return gesamt.summe();
+        }
+    }
+
+    /**
+     * Werte im {@linkplain ForkJoinPool#commonPool()} aus.
+     */
+    static Ergebnis auswerten(List<? extends Rechnung> rechnungen) {
+        return auswerten(rechnungen, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Listen ohne schnellen Zugriff per Index, z.B. eine {@linkplain java.util.LinkedList}, werden vorher kopiert.
+     */
+    static Ergebnis auswerten(List<? extends Rechnung> rechnungen, ForkJoinPool pool) {
+        var liste = requireNonNull(rechnungen) instanceof RandomAccess ? rechnungen : List.copyOf(rechnungen);
+        return pool.invoke(new Aufgabe(liste, 0, liste.size())).ergebnis();
+    }
+
+    /**
+     * wird nie serialisiert, {@linkplain RecursiveTask} ist nur formal {@linkplain java.io.Serializable}
+     */
+    private static final class Aufgabe extends RecursiveTask<Summen> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<? extends Rechnung> rechnungen;
+        private final int von;
+        private final int bis;
+
+        Aufgabe(List<? extends Rechnung> rechnungen, int von, int bis) {
+            this.rechnungen = rechnungen;
+            this.von = von;
+            this.bis = bis;
+        }
+
+        @Override
+        protected Summen compute() {
+            if (bis - von <= SCHWELLE) {
+                var summen = new Summen();
+                for (int i = von; i < bis; i++) summen.add(rechnungen.get(i));
+                return summen;
+            }
+            int mitte = (von + bis) >>> 1;
+            var links = new Aufgabe(rechnungen, von, mitte);
+            links.fork();
+            var rechts = new Aufgabe(rechnungen, mitte, bis).compute();
+            return links.join().add(rechts);
+        }
+    }
+
+    /**
+     * veränderliche Summen einer Teilliste, auch als laufende Summe z.B. im {@linkplain FortsetzbarerVersand}
+     */
+    static final class Summen {
+        private final Teilsumme privat = new Teilsumme();
+        private final Teilsumme business = new Teilsumme();
+        private final Teilsumme steuerfrei = new Teilsumme();
+        private final Map<String, Teilsumme> abteilungen = new HashMap<>();
+
+        void add(Rechnung rechnung) {
+            switch (rechnung) {
+                case InterneVerechnung(var abteilung, var wert) ->
+                        abteilungen.computeIfAbsent(abteilung, _ -> new Teilsumme()).add(wert, 0d);
+                case ExternVersandt(Privatkunde _, var wert) -> privat.add(wert, MwStRechner.mwst(wert, false));
+                case ExternVersandt(Businesskunde b, var wert) when b.isVorsteuerAbzugsberechtigt() ->
+                        steuerfrei.add(wert, MwStRechner.mwst(wert, true));
+                case ExternVersandt(Businesskunde _, var wert) -> business.add(wert, MwStRechner.mwst(wert, false));
+                case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+            }
+        }
+
+        Summen add(Summen andere) {
+            privat.add(andere.privat);
+            business.add(andere.business);
+            steuerfrei.add(andere.steuerfrei);
+            andere.abteilungen.forEach((abteilung, summe) ->
+                    abteilungen.computeIfAbsent(abteilung, _ -> new Teilsumme()).add(summe));
+            return this;
+        }
+
+        /**
+         * Setze auf einem gespeicherten Ergebnis auf, die Fehlerterme der Kahan Summation beginnen wieder bei 0.
+         */
+        Summen add(Ergebnis ergebnis) {
+            privat.add(ergebnis.privatkunden());
+            business.add(ergebnis.businesskunden());
+            steuerfrei.add(ergebnis.steuerfreieBusinesskunden());
+            ergebnis.abteilungen().forEach((abteilung, summe) ->
+                    abteilungen.computeIfAbsent(abteilung, _ -> new Teilsumme()).add(summe));
+            return this;
+        }
+
+        Ergebnis ergebnis() {
+            var summen = new HashMap<String, Summe>();
+            abteilungen.forEach((abteilung, summe) -> summen.put(abteilung, summe.summe()));
+            return new Ergebnis(privat.summe(), business.summe(), steuerfrei.summe(),
+                    Collections.unmodifiableMap(summen));
+        }
+    }
+
+    /**
+     * Kahan Summation von Netto und MwSt, {@code *Fehler} hält den bei der letzten Addition verlorenen Anteil
+     */
+    private static final class Teilsumme {
+        private long anzahl;
+        private double netto;
+        private double nettoFehler;
+        private double mwst;
+        private double mwstFehler;
+
+        void add(double wert, double steuer) {
+            anzahl++;
+            addNetto(wert);
+            addMwSt(steuer);
+        }
+
+        void add(Teilsumme andere) {
+            anzahl += andere.anzahl;
+            addNetto(andere.netto);
+            addNetto(-andere.nettoFehler);
+            addMwSt(andere.mwst);
+            addMwSt(-andere.mwstFehler);
+        }
+
+        void add(Summe summe) {
+            anzahl += summe.anzahl();
+            addNetto(summe.netto());
+            addMwSt(summe.mwst());
+        }
+
+        Summe summe() {
+            return anzahl == 0 ? Summe.LEER : new Summe(anzahl, netto - nettoFehler, mwst - mwstFehler);
+        }
+
+        private void addNetto(double wert) {
+            double y = wert - nettoFehler;
+            double t = netto + y;
+            nettoFehler = (t - netto) - y;
+            netto = t;
+        }
+
+        private void addMwSt(double wert) {
+            double y = wert - mwstFehler;
+            double t = mwst + y;
+            mwstFehler = (t - mwst) - y;
+            mwst = t;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.stream.DoubleStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Berechnung der MwSt mit primitiven {@code double}, z.B.
+ * {@code MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt}.
+ * <p>
+ * Anders als über {@code BiFunction<Kunde, Double, Double>} werden Wert und MwSt nicht in {@linkplain Double} verpackt,
+ * ein Aufruf alloziert daher nichts. Die Massenberechnungen rufen die Funktion je Wert auf, ist sie eine Strategie
+ * aus {@linkplain MwStRechner}, bettet der JIT die Berechnung in die Schleife ein.
+ * {@snippet :
+ *   MwStFunktion mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt;
+ *   var ergebnis = new double[kunden.length];
+ *   mwst.calculateMwSt(kunden, werte, ergebnis);
+ *}
+ */
+@FunctionalInterface
+interface MwStFunktion {
+
+    double calculateMwSt(Kunde kunde, double wert);
+
+    /**
+     * Schreibe die MwSt jeder Rechnung {@code (kunden[i], werte[i])} in {@code mwst}, es wird nichts alloziert.
+     *
+     * @param werte mindestens {@code kunden.length} groß
+     * @param mwst  Ergebnisspalte, mindestens {@code kunden.length} groß
+     */
+    default void calculateMwSt(Kunde[] kunden, double[] werte, double[] mwst) {
+        pruefeSpalten(kunden.length, werte, mwst);
+        for (int i = 0; i < kunden.length; i++) mwst[i] = calculateMwSt(kunden[i], werte[i]);
+    }
+
+    /**
+     * MwSt mehrerer Werte desselben Kunden, z.B. der Positionen einer Rechnung
+     */
+    default DoubleStream calculateMwSt(Kunde kunde, DoubleStream werte) {
+        requireNonNull(werte);
+        return werte.map(wert -> calculateMwSt(kunde, wert));
+    }
+
+    static void pruefeSpalten(int size, double[] werte, double[] mwst) {
+        if (werte.length < size) {
+            throw new IllegalArgumentException("Wertespalte zu klein: %d < %d".formatted(werte.length, size));
+        }
+        if (mwst.length < size) {
+            throw new IllegalArgumentException("Ergebnisspalte zu klein: %d < %d".formatted(mwst.length, size));
+        }
+    }
+}
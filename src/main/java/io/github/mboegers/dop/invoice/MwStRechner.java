@@ -1,14 +1,33 @@
 package io.github.mboegers.dop.invoice;
 
+import java.math.RoundingMode;
+
 import static java.util.Objects.requireNonNull;
 
 /**
  * Berechne MwSt für verschiedene Arten von Kunden
+ * <p>
+ * Die Strategien berechnen eine einzelne Rechnung, Spalten und Ströme berechnen sie als {@linkplain MwStFunktion},
+ * z.B. {@code MwStFunktion f = PlainOOP::calculateMwSt; f.calculateMwSt(kunden, werte, mwst)}.
  */
 public final class MwStRechner {
+    /**
+     * MwSt Satz aller Einstiege, derselbe wie {@link Cent#MWST_PROZENT} für exakte Beträge
+     */
+    static final double SATZ = Cent.MWST_PROZENT / 100d;
+
     private MwStRechner() {
     }
 
+    /**
+     * Die Regel, die {@linkplain Main}, {@linkplain Schnellstart} und die Auswertungen teilen: {@link #SATZ} auf den
+     * Wert, Businesskunden mit Vorsteuerabzug zahlen keine MwSt. Die Varianten unten zeigen dieselbe Regel mit
+     * unterschiedlichen Sprachmitteln.
+     */
+    static double mwst(double wert, boolean vorsteuerAbzug) {
+        return vorsteuerAbzug ? 0d : wert * SATZ;
+    }
+
     /**
      * Verwende Plain OOP Mittel
      * Berechnung der MwSt für einen Privatkunden beim Einkauf in Höhe von 1055
@@ -34,6 +53,17 @@ public final class MwStRechner {
             }
         }
 
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            if (kunde instanceof Privatkunde) {
+                return calculateMwSt((Privatkunde) kunde, wertCent, rundung);
+            } else if (kunde instanceof Businesskunde) {
+                return calculateMwSt((Businesskunde) kunde, wertCent, rundung);
+            } else {
+                throw new IllegalArgumentException(String.format("Typ %s nicht implementiert", kunde));
+            }
+        }
+
         /**
          * immer 10% des Kaufwertes für Privatkunden
          */
@@ -41,12 +71,20 @@ public final class MwStRechner {
             return wert * 0.1d;
         }
 
+        private static long calculateMwSt(Privatkunde p, long wertCent, RoundingMode rundung) {
+            return Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+        }
+
         /**
          * 0% wenn Vorsteuerabzugsberechtigt, sonst 10%
          */
         private static double calculateMwSt(Businesskunde b, double wert) {
             return b.isVorsteuerAbzugsberechtigt() ? 0d : wert * 0.1d;
         }
+
+        private static long calculateMwSt(Businesskunde b, long wertCent, RoundingMode rundung) {
+            return b.isVorsteuerAbzugsberechtigt() ? 0L : Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+        }
     }
 
     /**
@@ -69,6 +107,18 @@ public final class MwStRechner {
                 throw new IllegalArgumentException("Typ %s nicht implementiert".formatted(kunde));
             }
         }
+
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            if (kunde instanceof Businesskunde b) { // abhängig von dem Vorsteuerabzug
+                if (b.isVorsteuerAbzugsberechtigt()) return 0L;
+                else return Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            } else if (kunde instanceof Privatkunde) { // immer 10% des Kaufwertes
+                return Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            } else { // behandle fehlende Implementierung
+                throw new IllegalArgumentException("Typ %s nicht implementiert".formatted(kunde));
+            }
+        }
     }
 
     /**
@@ -90,6 +140,17 @@ public final class MwStRechner {
                 case Privatkunde p -> wert * 0.1d;
             };
         }
+
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            return switch (kunde) {
+                case Businesskunde b -> {
+                    if (b.isVorsteuerAbzugsberechtigt()) yield 0L;
+                    else yield Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                } // alternativ b.vorsteuerAbzug() ? 0L : Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                case Privatkunde p -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            };
+        }
     }
 
     /**
@@ -109,6 +170,15 @@ public final class MwStRechner {
             };
         }
 
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            return switch (kunde) {
+                case Businesskunde b when b.isVorsteuerAbzugsberechtigt() -> 0L;
+                case Businesskunde b -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                case Privatkunde p -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            };
+        }
+
     }
 
     /**
@@ -129,6 +199,16 @@ public final class MwStRechner {
             };
         }
 
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            return switch (kunde) {
+                case Businesskunde(String name, String mail, boolean isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> 0L;
+                case Businesskunde b -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                case Privatkunde p -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            };
+        }
+
     }
 
     /**
@@ -149,6 +229,16 @@ public final class MwStRechner {
             };
         }
 
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            requireNonNull(kunde);
+            return switch (kunde) {
+                case Businesskunde(var name, var mail, var isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> 0L;
+                case Businesskunde b -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                case Privatkunde p -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            };
+        }
+
     }
 
     /**
@@ -168,6 +258,78 @@ public final class MwStRechner {
             };
         }
 
+        public static long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung) {
+            return switch (kunde) {
+                case Businesskunde(String _, _, var isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> 0L;
+                case Businesskunde _ -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+                case Privatkunde _ -> Cent.prozent(wertCent, Cent.MWST_PROZENT, rundung);
+            };
+        }
+
     }
-}
 
+    /**
+     * Berechnung der MwSt für einen ganzen {@linkplain RechnungsBatch} in einer Schleife über primitive Spalten.
+     * Liefert für externe Rechnungen dieselben Werte wie {@linkplain SwitchExpressionWhenClauseUnnamed}, interne
+     * Verrechnungen sind MwSt frei.
+     * {@snippet :
+     *   var batch = RechnungsBatch.of(rechnungen);
+     *   var mwst = new double[batch.size()];
+     *   MwStRechner.Batch.calculateMwSt(batch, mwst);
+     *}
+     */
+    final class Batch {
+        private Batch() {
+        }
+
+        /**
+         * Schreibe die MwSt jeder Zeile des Batches in {@code mwst}, es wird nichts alloziert.
+         *
+         * @param mwst Ergebnisspalte, mindestens {@code batch.size()} groß
+         */
+        public static void calculateMwSt(RechnungsBatch batch, double[] mwst) {
+            int size = batch.size();
+            if (mwst.length < size) {
+                throw new IllegalArgumentException("Ergebnisspalte zu klein: %d < %d".formatted(mwst.length, size));
+            }
+            var wert = batch.wertSpalte();
+            var frei = batch.steuerfreiSpalte();
+            for (int i = 0; i < size; i++) {
+                // ohne Verzweigung: steuerfreie Zeilen werden über die Bitmaske auf 0.0 gesetzt
+                long maske = ((frei[i >>> 6] >>> i) & 1L) - 1L;
+                mwst[i] = Double.longBitsToDouble(Double.doubleToRawLongBits(wert[i] * SATZ) & maske);
+            }
+        }
+    }
+
+    /**
+     * Berechnung der MwSt für einen ganzen {@linkplain RechnungsBatch} mit der Vector API
+     * JEP 448: Vector API (Sixth Incubator) https://openjdk.org/jeps/448
+     * Java 21 Incubator, benötigt {@code --add-modules jdk.incubator.vector}. Fehlt das Modul, wird auf
+     * {@linkplain Batch} zurückgefallen.
+     */
+    final class Vectorized {
+        static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+        private Vectorized() {
+        }
+
+        /**
+         * Schreibe die MwSt jeder Zeile des Batches in {@code mwst}, es wird nichts alloziert.
+         *
+         * @param mwst Ergebnisspalte, mindestens {@code batch.size()} groß
+         */
+        public static void calculateMwSt(RechnungsBatch batch, double[] mwst) {
+            if (!VECTOR_API) {
+                Batch.calculateMwSt(batch, mwst);
+                return;
+            }
+            int size = batch.size();
+            if (mwst.length < size) {
+                throw new IllegalArgumentException("Ergebnisspalte zu klein: %d < %d".formatted(mwst.length, size));
+            }
+            MwStVektorKernel.calculateMwSt(batch.wertSpalte(), batch.steuerfreiSpalte(), size, mwst);
+        }
+    }
+}
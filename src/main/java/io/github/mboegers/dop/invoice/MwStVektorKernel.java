@@ -0,0 +1,45 @@
+package io.github.mboegers.dop.invoice;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD Berechnung der MwSt mit der Vector API (Incubator)
+ * JEP 448: Vector API (Sixth Incubator) https://openjdk.org/jeps/448
+ * <p>
+ * Diese Klasse darf nur geladen werden, wenn das Modul {@code jdk.incubator.vector} vorhanden ist,
+ * siehe {@linkplain MwStRechner.Vectorized}.
+ */
+final class MwStVektorKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private MwStVektorKernel() {
+    }
+
+    /**
+     * Berechne {@code mwst[i] = steuerfrei(i) ? 0 : wert[i] * SATZ} in vollen Vektoren, der Rest wird maskiert.
+     *
+     * @param steuerfrei Bitset, Bit {@code i} gesetzt wenn Zeile {@code i} keine MwSt trägt
+     */
+    static void calculateMwSt(double[] wert, long[] steuerfrei, int size, double[] mwst) {
+        // Vektorlänge teilt 64, daher liegen die Bits eines Vektors immer im selben long
+        int lanes = SPECIES.length();
+        int i = 0;
+        for (int upper = SPECIES.loopBound(size); i < upper; i += lanes) {
+            var frei = VectorMask.fromLong(SPECIES, steuerfrei[i >>> 6] >>> (i & 63));
+            DoubleVector.fromArray(SPECIES, wert, i)
+                    .mul(MwStRechner.SATZ)
+                    .blend(0.0d, frei)
+                    .intoArray(mwst, i);
+        }
+        if (i < size) {
+            var rest = SPECIES.indexInRange(i, size);
+            var frei = VectorMask.fromLong(SPECIES, steuerfrei[i >>> 6] >>> (i & 63));
+            DoubleVector.fromArray(SPECIES, wert, i, rest)
+                    .mul(MwStRechner.SATZ)
+                    .blend(0.0d, frei)
+                    .intoArray(mwst, i, rest);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.checkIndex;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spaltenorientierte (struct-of-arrays) Ablage vieler {@linkplain Rechnung Rechnungen} für die Massenberechnung.
+ * Statt einer Liste von Records hält der Batch je Eigenschaft ein primitives Array:
+ * <ul>
+ *     <li>{@code wert} der Rechnungsbetrag</li>
+ *     <li>{@code kundenArt} {@link #INTERN}, {@link #PRIVATKUNDE} oder {@link #BUSINESSKUNDE}</li>
+ *     <li>{@code vorsteuerAbzug} Bitset für {@linkplain Businesskunde#isVorsteuerAbzugsberechtigt()}</li>
+ *     <li>{@code steuerfrei} abgeleitetes Bitset aller Zeilen ohne MwSt, als Maske für die Vektor-Berechnung</li>
+ * </ul>
+ * Ein Batch kann mit {@link #clear()} für den nächsten Abschnitt wiederverwendet werden.
+ *
+ * @see MwStRechner.Batch
+ */
+final class RechnungsBatch {
+    static final byte INTERN = 0;
+    static final byte PRIVATKUNDE = 1;
+    static final byte BUSINESSKUNDE = 2;
+
+    private double[] wert;
+    private byte[] kundenArt;
+    private long[] vorsteuerAbzug;
+    private long[] steuerfrei;
+    private int size;
+
+    RechnungsBatch(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Kapazität %d ist negativ".formatted(capacity));
+        this.wert = new double[capacity];
+        this.kundenArt = new byte[capacity];
+        this.vorsteuerAbzug = new long[words(capacity)];
+        this.steuerfrei = new long[words(capacity)];
+    }
+
+    /**
+     * Baue einen Batch aus einer Liste von Rechnungen, die Reihenfolge bleibt erhalten.
+     */
+    static RechnungsBatch of(List<? extends Rechnung> rechnungen) {
+        var batch = new RechnungsBatch(rechnungen.size());
+        rechnungen.forEach(batch::add);
+        return batch;
+    }
+
+    /**
+     * Hänge eine Rechnung als neue Zeile an.
+     */
+    void add(Rechnung rechnung) {
+        requireNonNull(rechnung);
+        switch (rechnung) {
+            case InterneVerechnung(_, var w) -> add(INTERN, w, false);
+            case ExternVersandt(Privatkunde _, var w) -> add(PRIVATKUNDE, w, false);
+            case ExternVersandt(Businesskunde(_, _, var abzug), var w) -> add(BUSINESSKUNDE, w, abzug);
+            case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+        }
+    }
+
+    /**
+     * Hänge eine Zeile direkt aus ihren Spaltenwerten an.
+     */
+    void add(byte art, double w, boolean abzug) {
+        if (art < INTERN || art > BUSINESSKUNDE) {
+            throw new IllegalArgumentException("Kundenart %d nicht implementiert".formatted(art));
+        }
+        ensureCapacity(size + 1);
+        wert[size] = w;
+        kundenArt[size] = art;
+        if (abzug) vorsteuerAbzug[size >>> 6] |= 1L << size;
+        if (art == INTERN || (art == BUSINESSKUNDE && abzug)) steuerfrei[size >>> 6] |= 1L << size;
+        size++;
+    }
+
+    /**
+     * Leere den Batch ohne die Arrays freizugeben.
+     */
+    void clear() {
+        Arrays.fill(vorsteuerAbzug, 0, words(size), 0L);
+        Arrays.fill(steuerfrei, 0, words(size), 0L);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double wert(int i) {
+        return wert[checked(i)];
+    }
+
+    byte kundenArt(int i) {
+        return kundenArt[checked(i)];
+    }
+
+    boolean isVorsteuerAbzugsberechtigt(int i) {
+        checked(i);
+        return (vorsteuerAbzug[i >>> 6] & (1L << i)) != 0;
+    }
+
+    //region Spalten für die Batch-Berechnung, nur die ersten size() Einträge sind gültig
+    double[] wertSpalte() {
+        return wert;
+    }
+
+    byte[] kundenArtSpalte() {
+        return kundenArt;
+    }
+
+    long[] vorsteuerAbzugSpalte() {
+        return vorsteuerAbzug;
+    }
+
+    long[] steuerfreiSpalte() {
+        return steuerfrei;
+    }
+    //endregion
+
+    private int checked(int i) {
+        return checkIndex(i, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= wert.length) return;
+        int newCapacity = Math.max(capacity, Math.max(16, wert.length * 2));
+        wert = Arrays.copyOf(wert, newCapacity);
+        kundenArt = Arrays.copyOf(kundenArt, newCapacity);
+        vorsteuerAbzug = Arrays.copyOf(vorsteuerAbzug, words(newCapacity));
+        steuerfrei = Arrays.copyOf(steuerfrei, words(newCapacity));
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Merkt sich MwSt und Rechnungstext wiederkehrender externer Rechnungen, z.B. bei Abonnements.
+ * <p>
+ * Schlüssel ist die {@linkplain ExternVersandt} Rechnung selbst, gleiche Rechnungen sind über die Wertgleichheit der
+ * Records derselbe Eintrag. Der Cache ist in Streifen aufgeteilt, die jeweils als LRU-Liste über eine
+ * {@linkplain LinkedHashMap} in Zugriffsreihenfolge geführt und einzeln gesperrt werden. Berechnet wird außerhalb der
+ * Sperre, bei gleichzeitigen Fehlschlägen derselben Rechnung also eventuell doppelt.
+ * {@snippet :
+ *   var cache = new RechnungsCache(10_000);
+ *   rechnungen.forEach(r -> Main.sendInvoiceFor2(r, Dummy::sendViaMail, Dummy::storeInDB, cache));
+ *   var quote = cache.statistik().trefferquote();
+ *}
+ */
+final class RechnungsCache {
+
+    /**
+     * Erzeugung des Rechnungstextes, z.B. {@code Main::produceInvoiceText}
+     */
+    @FunctionalInterface
+    interface Text {
+        String produceInvoiceText(Kunde kunde, double wert, double mwst);
+    }
+
+    record Eintrag(double mwst, String text) {
+    }
+
+    /**
+     * @param eintraege        aktuell gespeicherte Rechnungen
+     * @param geschaetzteBytes geschätzter Heap-Bedarf der Einträge inklusive Schlüssel
+     */
+    record Statistik(long treffer, long fehlschlaege, long verdraengt, int eintraege, long geschaetzteBytes) {
+        double trefferquote() {
+            long anfragen = treffer + fehlschlaege;
+            return anfragen == 0 ? 0d : (double) treffer / anfragen;
+        }
+    }
+
+    /**
+     * Grobe Schätzung je Eintrag ohne die Texte: Map-Eintrag mit LRU-Zeigern, Schlüssel, Eintrag und String-Hülle.
+     * Kunden werden nicht mitgezählt, da sie meist auch außerhalb des Caches erreichbar sind.
+     */
+    private static final int BYTES_JE_EINTRAG = 40 + 24 + 24 + 24 + 16;
+
+    private final Streifen[] streifen;
+    private final MwStFunktion mwst;
+    private final Text text;
+    private final LongAdder treffer = new LongAdder();
+    private final LongAdder fehlschlaege = new LongAdder();
+    private final LongAdder verdraengt = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Cache mit {@linkplain MwStRechner.SwitchExpressionWhenClauseUnnamed} und {@linkplain Main#produceInvoiceText},
+     * vier Streifen je Kern.
+     */
+    RechnungsCache(int maxEintraege) {
+        this(maxEintraege, Runtime.getRuntime().availableProcessors() * 4,
+                MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt, Main::produceInvoiceText);
+    }
+
+    /**
+     * @param maxEintraege obere Grenze aller Einträge, wird gleichmäßig auf die Streifen verteilt
+     * @param streifen     Anzahl unabhängig gesperrter Teile, wird auf eine Zweierpotenz abgerundet
+     */
+    RechnungsCache(int maxEintraege, int streifen, MwStFunktion mwst, Text text) {
+        if (maxEintraege < 1) throw new IllegalArgumentException("maxEintraege muss positiv sein");
+        if (streifen < 1) throw new IllegalArgumentException("streifen muss positiv sein");
+        int anzahl = Integer.highestOneBit(Math.min(streifen, maxEintraege));
+        this.streifen = new Streifen[anzahl];
+        for (int i = 0; i < anzahl; i++) {
+            this.streifen[i] = new Streifen(maxEintraege / anzahl + (i < maxEintraege % anzahl ? 1 : 0));
+        }
+        this.mwst = requireNonNull(mwst);
+        this.text = requireNonNull(text);
+    }
+
+    double mwst(ExternVersandt rechnung) {
+        return eintrag(rechnung).mwst();
+    }
+
+    String text(ExternVersandt rechnung) {
+        return eintrag(rechnung).text();
+    }
+
+    Eintrag eintrag(ExternVersandt rechnung) {
+        var teil = streifen[streifen(rechnung)];
+        var eintrag = teil.get(rechnung);
+        if (eintrag != null) {
+            treffer.increment();
+            return eintrag;
+        }
+        fehlschlaege.increment();
+        var kunde = requireNonNull(rechnung.kunde(), "Rechnung ohne Kunde");
+        var m = mwst.calculateMwSt(kunde, rechnung.wert());
+        var neu = new Eintrag(m, text.produceInvoiceText(kunde, rechnung.wert(), m));
+        return teil.put(rechnung, neu);
+    }
+
+    Statistik statistik() {
+        int eintraege = 0;
+        for (var teil : streifen) eintraege += teil.size();
+        return new Statistik(treffer.sum(), fehlschlaege.sum(), verdraengt.sum(), eintraege, bytes.sum());
+    }
+
+    void leeren() {
+        for (var teil : streifen) teil.leeren();
+    }
+
+    private int streifen(ExternVersandt rechnung) {
+        int h = rechnung.hashCode();
+        return (h ^ (h >>> 16)) & (streifen.length - 1);
+    }
+
+    private static long groesse(Eintrag eintrag) {
+        // kompakte Strings speichern Latin-1 mit einem Byte je Zeichen, der Rechnungstext enthält aber €
+        return BYTES_JE_EINTRAG + 2L * eintrag.text().length();
+    }
+
+    private final class Streifen {
+        private final Map<ExternVersandt, Eintrag> eintraege;
+
+        Streifen(int max) {
+            this.eintraege = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ExternVersandt, Eintrag> eldest) {
+                    if (size() <= max) return false;
+                    verdraengt.increment();
+                    bytes.add(-groesse(eldest.getValue()));
+                    return true;
+                }
+            };
+        }
+
+        synchronized Eintrag get(ExternVersandt rechnung) {
+            return eintraege.get(rechnung);
+        }
+
+        /**
+         * @return der bereits vorhandene oder der neue Eintrag
+         */
+        synchronized Eintrag put(ExternVersandt rechnung, Eintrag eintrag) {
+            var vorhanden = eintraege.putIfAbsent(rechnung, eintrag);
+            if (vorhanden != null) return vorhanden;
+            bytes.add(groesse(eintrag));
+            return eintrag;
+        }
+
+        synchronized int size() {
+            return eintraege.size();
+        }
+
+        synchronized void leeren() {
+            eintraege.values().forEach(e -> bytes.add(-groesse(e)));
+            eintraege.clear();
+        }
+    }
+}
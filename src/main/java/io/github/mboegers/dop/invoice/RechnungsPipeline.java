@@ -0,0 +1,279 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parallele Verarbeitung von Rechnungen in vier Stufen, jede mit eigener beschränkter Queue und eigenen Threads:
+ * <ol>
+ *     <li>{@link Stufe#KLASSIFIZIEREN} interne Verrechnungen direkt zur Zustellung, externe Rechnungen zur Berechnung</li>
+ *     <li>{@link Stufe#BERECHNEN} MwSt berechnen</li>
+ *     <li>{@link Stufe#RENDERN} Rechnungstext erzeugen</li>
+ *     <li>{@link Stufe#ZUSTELLEN} per Mail versenden bzw. in der Datenbank speichern</li>
+ * </ol>
+ * Ist eine Queue voll, blockiert die vorherige Stufe und zuletzt {@link #submit(Rechnung)} (Backpressure).
+ * Eine langsame Senke kann so keinen unbegrenzten Speicherverbrauch verursachen.
+ * {@link #submit(Rechnung)} und {@link #close()} schließen sich über ein {@linkplain ReadWriteLock} aus: jede
+ * angenommene Rechnung liegt in der ersten Queue, bevor dort das Ende eingereiht wird.
+ * {@snippet :
+ *   try (var pipeline = new RechnungsPipeline(Konfiguration.einheitlich(128, 2), Dummy::sendViaMail, Dummy::storeInDB)) {
+ *       rechnungen.forEach(pipeline::submit);
+ *   } // close() wartet bis alle Rechnungen zugestellt sind
+ *}
+ */
+final class RechnungsPipeline implements AutoCloseable {
+
+    enum Stufe {
+        KLASSIFIZIEREN, BERECHNEN, RENDERN, ZUSTELLEN
+    }
+
+    /**
+     * @param kapazitaet maximale Anzahl wartender Aufträge je Stufe
+     */
+    record Konfiguration(int kapazitaet, int klassifizieren, int berechnen, int rendern, int zustellen) {
+        Konfiguration {
+            if (kapazitaet < 1) throw new IllegalArgumentException("Kapazität muss positiv sein");
+            if (klassifizieren < 1 || berechnen < 1 || rendern < 1 || zustellen < 1) {
+                throw new IllegalArgumentException("Jede Stufe benötigt mindestens einen Thread");
+            }
+        }
+
+        static Konfiguration einheitlich(int kapazitaet, int threads) {
+            return new Konfiguration(kapazitaet, threads, threads, threads, threads);
+        }
+
+        int parallelitaet(Stufe stufe) {
+            return switch (stufe) {
+                case KLASSIFIZIEREN -> klassifizieren;
+                case BERECHNEN -> berechnen;
+                case RENDERN -> rendern;
+                case ZUSTELLEN -> zustellen;
+            };
+        }
+    }
+
+    /**
+     * Momentaufnahme einer Stufe
+     *
+     * @param queueTiefe   aktuell wartende Aufträge
+     * @param verarbeitet  bisher verarbeitete Aufträge
+     * @param fehler       Aufträge, deren Verarbeitung mit einer Exception endete
+     * @param ersterFehler Exception des ersten fehlgeschlagenen Auftrags, {@code null} ohne Fehler
+     */
+    record StufenStatistik(Stufe stufe, int queueTiefe, long verarbeitet, long fehler, RuntimeException ersterFehler) {
+    }
+
+    //region Aufträge zwischen den Stufen
+    private sealed interface Auftrag {
+    }
+
+    private record Klassifizieren(Rechnung rechnung) implements Auftrag {
+    }
+
+    private record Berechnen(Kunde kunde, double wert) implements Auftrag {
+    }
+
+    private record Rendern(Kunde kunde, double wert, double mwst) implements Auftrag {
+    }
+
+    private record Versenden(String empf, String txt) implements Auftrag {
+    }
+
+    private record Speichern(String abt, double wert) implements Auftrag {
+    }
+
+    private record Ende() implements Auftrag {
+    }
+
+    private static final Ende ENDE = new Ende();
+    //endregion
+
+    private final Konfiguration konfiguration;
+    private final MailSenke mail;
+    private final DbSenke db;
+    private final Map<Stufe, BlockingQueue<Auftrag>> queues = new EnumMap<>(Stufe.class);
+    private final Map<Stufe, CountDownLatch> beendet = new EnumMap<>(Stufe.class);
+    private final Map<Stufe, LongAdder> verarbeitet = new EnumMap<>(Stufe.class);
+    private final Map<Stufe, LongAdder> fehler = new EnumMap<>(Stufe.class);
+    private final Map<Stufe, AtomicReference<RuntimeException>> ersterFehler = new EnumMap<>(Stufe.class);
+    private final List<Thread> threads = new ArrayList<>();
+    private final long start = System.nanoTime();
+    /**
+     * {@code submit} hält die Lese-, {@code close} die Schreibsperre
+     */
+    private final ReadWriteLock zulassung = new ReentrantReadWriteLock();
+    private boolean geschlossen; // geschützt durch zulassung
+
+    RechnungsPipeline(Konfiguration konfiguration, MailSenke mail, DbSenke db) {
+        this.konfiguration = requireNonNull(konfiguration);
+        this.mail = requireNonNull(mail);
+        this.db = requireNonNull(db);
+        for (var stufe : Stufe.values()) {
+            queues.put(stufe, new ArrayBlockingQueue<>(konfiguration.kapazitaet()));
+            beendet.put(stufe, new CountDownLatch(konfiguration.parallelitaet(stufe)));
+            verarbeitet.put(stufe, new LongAdder());
+            fehler.put(stufe, new LongAdder());
+            ersterFehler.put(stufe, new AtomicReference<>());
+        }
+        starte(Stufe.KLASSIFIZIEREN, this::klassifizieren);
+        starte(Stufe.BERECHNEN, this::berechnen);
+        starte(Stufe.RENDERN, this::rendern);
+        starte(Stufe.ZUSTELLEN, this::zustellen);
+    }
+
+    /**
+     * Reiche eine Rechnung ein, blockiert solange die erste Stufe voll ist.
+     */
+    void submit(Rechnung rechnung) {
+        requireNonNull(rechnung);
+        zulassung.readLock().lock();
+        try {
+            if (geschlossen) throw new IllegalStateException("Pipeline ist geschlossen");
+            put(Stufe.KLASSIFIZIEREN, new Klassifizieren(rechnung));
+        } finally {
+            zulassung.readLock().unlock();
+        }
+    }
+
+    List<StufenStatistik> statistik() {
+        var statistik = new ArrayList<StufenStatistik>(Stufe.values().length);
+        for (var stufe : Stufe.values()) {
+            statistik.add(new StufenStatistik(stufe, queues.get(stufe).size(),
+                    verarbeitet.get(stufe).sum(), fehler.get(stufe).sum(), ersterFehler.get(stufe).get()));
+        }
+        return statistik;
+    }
+
+    /**
+     * Zugestellte Rechnungen pro Sekunde seit dem Start der Pipeline
+     */
+    double durchsatz() {
+        double sekunden = (System.nanoTime() - start) / 1e9d;
+        return verarbeitet.get(Stufe.ZUSTELLEN).sum() / sekunden;
+    }
+
+    /**
+     * Nimmt keine weiteren Rechnungen an und wartet bis alle eingereichten Rechnungen zugestellt sind.
+     * Ein gleichzeitiges {@link #submit(Rechnung)} wird entweder vorher angenommen oder abgelehnt.
+     *
+     * @throws RuntimeException den ersten Fehler der ersten fehlgeschlagenen Stufe, die ersten Fehler späterer Stufen
+     *                          sind als {@linkplain Throwable#getSuppressed() suppressed} angehängt
+     */
+    @Override
+    public void close() {
+        // wartet auf laufende submit, auch auf solche, die an einer vollen Queue blockieren
+        zulassung.writeLock().lock();
+        try {
+            if (geschlossen) return;
+            geschlossen = true;
+        } finally {
+            zulassung.writeLock().unlock();
+        }
+        try {
+            // Stufen nacheinander beenden, damit keine Stufe mehr in eine bereits beendete Stufe schreibt
+            for (var stufe : Stufe.values()) {
+                for (int i = 0; i < konfiguration.parallelitaet(stufe); i++) {
+                    queues.get(stufe).put(ENDE);
+                }
+                beendet.get(stufe).await();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+        RuntimeException fehler = null;
+        for (var stufe : Stufe.values()) {
+            var erster = ersterFehler.get(stufe).get();
+            if (erster == null) continue;
+            if (fehler == null) {
+                fehler = erster;
+            } else {
+                fehler.addSuppressed(erster);
+            }
+        }
+        if (fehler != null) throw fehler;
+    }
+
+    //region Stufen
+    private void klassifizieren(Auftrag auftrag) {
+        switch (((Klassifizieren) auftrag).rechnung()) {
+            case InterneVerechnung(var abt, var wert) -> put(Stufe.ZUSTELLEN, new Speichern(abt, wert));
+            case ExternVersandt(var kunde, var wert) -> put(Stufe.BERECHNEN, new Berechnen(kunde, wert));
+        }
+    }
+
+    private void berechnen(Auftrag auftrag) {
+        var b = (Berechnen) auftrag;
+        var mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(b.kunde(), b.wert());
+        put(Stufe.RENDERN, new Rendern(b.kunde(), b.wert(), mwst));
+    }
+
+    private void rendern(Auftrag auftrag) {
+        var r = (Rendern) auftrag;
+        var empf = switch (r.kunde()) {
+            case Privatkunde(_, var address) -> address;
+            case Businesskunde(_, var address, _) -> address;
+        };
+        put(Stufe.ZUSTELLEN, new Versenden(empf, RechnungsText.STANDARD.render(r.kunde(), r.wert(), r.mwst())));
+    }
+
+    private void zustellen(Auftrag auftrag) {
+        switch (auftrag) {
+            case Versenden(var empf, var txt) -> mail.sendViaMail(empf, txt);
+            case Speichern(var abt, var wert) -> db.storeInDB(abt, wert);
+            default -> throw new IllegalStateException("Unerwarteter Auftrag %s".formatted(auftrag));
+        }
+    }
+    //endregion
+
+    private void starte(Stufe stufe, Consumer<Auftrag> verarbeitung) {
+        var queue = queues.get(stufe);
+        var latch = beendet.get(stufe);
+        var zaehler = verarbeitet.get(stufe);
+        var fehlerZaehler = fehler.get(stufe);
+        var erster = ersterFehler.get(stufe);
+        var factory = Thread.ofPlatform().daemon().name("pipeline-" + stufe.name().toLowerCase() + "-", 0).factory();
+        for (int i = 0; i < konfiguration.parallelitaet(stufe); i++) {
+            var thread = factory.newThread(() -> {
+                try {
+                    for (var auftrag = queue.take(); auftrag != ENDE; auftrag = queue.take()) {
+                        try {
+                            verarbeitung.accept(auftrag);
+                            zaehler.increment();
+                        } catch (RuntimeException e) {
+                            fehlerZaehler.increment();
+                            erster.compareAndSet(null, e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latch.countDown();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    private void put(Stufe stufe, Auftrag auftrag) {
+        try {
+            queues.get(stufe).put(auftrag);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Unterbrochen beim Einreichen in Stufe %s".formatted(stufe), e);
+        }
+    }
+}
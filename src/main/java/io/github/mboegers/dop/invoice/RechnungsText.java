@@ -0,0 +1,124 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.ArrayList;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Vorkompilierte Vorlage für den Rechnungstext als Alternative zu {@code FMT."..."}.
+ * Die Vorlage wird einmalig in Literale und typisierte Platzhalter zerlegt:
+ * <ul>
+ *     <li>{@code ${name}} Name des Kunden</li>
+ *     <li>{@code ${wert}} Rechnungsbetrag wie {@code %.2f}</li>
+ *     <li>{@code ${mwst}} MwSt wie {@code %.2f}</li>
+ * </ul>
+ * Beim Rendern werden nur die Literale und Werte in einen wiederverwendbaren {@linkplain StringBuilder} geschrieben.
+ * {@snippet :
+ *   var sb = new StringBuilder(256);
+ *   RechnungsText.STANDARD.render(sb, name, wert, mwst);
+ *}
+ *
+ * @see DezimalSchreiber
+ */
+final class RechnungsText {
+    private static final byte NAME = 0;
+    private static final byte WERT = 1;
+    private static final byte MWST = 2;
+
+    /**
+     * Gleicher Text wie {@code Main.produceInvoiceText}
+     */
+    static final RechnungsText STANDARD = compile("""
+                Hallo ${name},
+                Bitte senden Sie uns den Rechnungsbetrag in Höhe von ${wert}€ plus ${mwst}€ MwSt.
+
+                Mit freundlichen Grüßen
+                Merlin Bögershausen
+            """);
+
+    /**
+     * Ohne Lambda und Pattern-Switch in der Initialisierung, damit der {@linkplain Schnellstart} kein
+     * {@code invokedynamic} binden muss
+     */
+    private static final ThreadLocal<StringBuilder> PUFFER = new ThreadLocal<>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * literale[i] steht vor platzhalter[i], das letzte Literal schließt den Text ab
+     */
+    private final String[] literale;
+    private final byte[] platzhalter;
+
+    private RechnungsText(String[] literale, byte[] platzhalter) {
+        this.literale = literale;
+        this.platzhalter = platzhalter;
+    }
+
+    /**
+     * Zerlege eine Vorlage mit den Platzhaltern {@code ${name}}, {@code ${wert}} und {@code ${mwst}}.
+     */
+    static RechnungsText compile(String vorlage) {
+        requireNonNull(vorlage);
+        var literale = new ArrayList<String>();
+        var platzhalter = new ArrayList<Byte>();
+        int pos = 0;
+        for (int start = vorlage.indexOf("${"); start >= 0; start = vorlage.indexOf("${", pos)) {
+            int ende = vorlage.indexOf('}', start);
+            if (ende < 0) throw new IllegalArgumentException("Platzhalter ab Position %d nicht geschlossen".formatted(start));
+            literale.add(vorlage.substring(pos, start));
+            platzhalter.add(switch (vorlage.substring(start + 2, ende)) {
+                case "name" -> NAME;
+                case "wert" -> WERT;
+                case "mwst" -> MWST;
+                default -> throw new IllegalArgumentException("Platzhalter %s nicht implementiert"
+                        .formatted(vorlage.substring(start + 2, ende)));
+            });
+            pos = ende + 1;
+        }
+        literale.add(vorlage.substring(pos));
+
+        var slots = new byte[platzhalter.size()];
+        for (int i = 0; i < slots.length; i++) slots[i] = platzhalter.get(i);
+        return new RechnungsText(literale.toArray(new String[0]), slots);
+    }
+
+    /**
+     * Schreibe den Rechnungstext an das Ende von {@code sb}, ohne weitere Objekte anzulegen.
+     */
+    StringBuilder render(StringBuilder sb, String name, double wert, double mwst) {
+        for (int i = 0; i < platzhalter.length; i++) {
+            sb.append(literale[i]);
+            switch (platzhalter[i]) {
+                case NAME -> sb.append(name);
+                case WERT -> DezimalSchreiber.appendZweiStellen(sb, wert);
+                case MWST -> DezimalSchreiber.appendZweiStellen(sb, mwst);
+                default -> throw new IllegalStateException("Platzhalter %d".formatted(platzhalter[i]));
+            }
+        }
+        return sb.append(literale[platzhalter.length]);
+    }
+
+    /**
+     * Erzeuge den Rechnungstext über einen Thread-lokalen Puffer, alloziert nur den Ergebnis-String.
+     */
+    String render(String name, double wert, double mwst) {
+        var sb = PUFFER.get();
+        sb.setLength(0);
+        return render(sb, name, wert, mwst).toString();
+    }
+
+    /**
+     * Erzeuge den Rechnungstext für einen Kunden, siehe {@code Main.produceInvoiceText}.
+     */
+    String render(Kunde kunde, double wert, double mwst) {
+        var name = switch (kunde) {
+            case Privatkunde(var n, _) -> n;
+            case Businesskunde(var n, _, _) -> n;
+        };
+        return render(name, wert, mwst);
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Startoptimierter Einstieg für viele kurze Batch-Läufe, gleiche Ausgabe wie
+ * {@link Main#sendInvoiceFor(Rechnung, MailSenke, DbSenke)} mit den {@linkplain Dummy} Senken je Rechnung.
+ * <p>
+ * Bei kurzen Läufen dominiert der Start der JVM: Klassen laden und verifizieren, {@code invokedynamic} Aufrufstellen
+ * beim ersten Durchlaufen binden. Jede Aufrufstelle von {@code switch} mit Patterns, String Templates, Lambdas und
+ * {@code +} auf Strings erzeugt dabei über Method Handles eigene Klassen, die {@code FMT} Vorlage parst zusätzlich ihr
+ * Format und lädt {@linkplain java.util.Formatter}. Auf dem Weg bis zur ersten Rechnung vermeidet dieser Einstieg daher
+ * jedes {@code invokedynamic}:
+ * <ul>
+ *     <li>Fallunterscheidung mit {@code instanceof} und Record Patterns statt {@code switch}</li>
+ *     <li>Rechnungstext über die vorkompilierte {@linkplain RechnungsText} Vorlage, die erst mit der ersten externen
+ *     Rechnung geladen wird, statt {@code FMT}</li>
+ *     <li>Senken als Klassen statt Lambdas, Ausgabe über {@linkplain StringBuilder} statt {@code printf}</li>
+ * </ul>
+ * Die übrigen Klassen kommen aus einem AppCDS Archiv. Der Trainingslauf {@code --trainieren} verarbeitet jede
+ * Rechnungsart einmal aus einer CSV Datei und ohne Ausgabe, damit alle Klassen des echten Laufs im Archiv landen. Das
+ * Maven Profil {@code schnellstart} führt ihn aus und legt {@code target/rechnungen.jsa} an:
+ * {@snippet lang = "shell":
+ *   ./mvnw -Pschnellstart package
+ *   java --enable-preview -XX:SharedArchiveFile=target/rechnungen.jsa -XX:TieredStopAtLevel=1 \
+ *        -cp target/data-oriented-java-1.2.0-SNAPSHOT.jar io.github.mboegers.dop.invoice.Schnellstart rechnungen.csv
+ *}
+ * Der Klassenpfad muss dabei derselbe sein wie beim Trainingslauf, sonst ignoriert die JVM das Archiv.
+ */
+final class Schnellstart {
+
+    private Schnellstart() {
+    }
+
+    /**
+     * Behandle die Beispielrechnungen, alle Rechnungen aus einer CSV Datei oder mit {@code --trainieren} den
+     * Trainingslauf.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--trainieren")) {
+            trainieren();
+            return;
+        }
+        var ausgabe = new Ausgabe(System.out);
+        if (args.length > 0) {
+            verarbeite(Path.of(args[0]), ausgabe);
+        } else {
+            versende(new InterneVerechnung("HR", 10), ausgabe, ausgabe);
+            versende(new ExternVersandt(new Businesskunde("adesso SE", "", false), 10), ausgabe, ausgabe);
+            versende(new ExternVersandt(new Businesskunde("Eureg JUG", "", true), 10), ausgabe, ausgabe);
+            versende(new ExternVersandt(new Privatkunde("Merlin", ""), 10), ausgabe, ausgabe);
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Behandle alle Rechnungen einer CSV Datei nacheinander.
+     *
+     * @return Anzahl behandelter Rechnungen
+     * @see CsvRechnungsLeser
+     */
+    static long verarbeite(Path datei, Ausgabe ausgabe) throws IOException {
+        var versand = new Versand(ausgabe, ausgabe);
+        try (var leser = CsvRechnungsLeser.oeffne(datei)) {
+            while (leser.naechste(versand)) {
+                // Versand behandelt jede Rechnung
+            }
+        }
+        return versand.anzahl;
+    }
+
+    /**
+     * Gleiches Verhalten wie {@link Main#sendInvoiceFor(Rechnung, MailSenke, DbSenke)}.
+     */
+    static void versende(Rechnung rechnung, MailSenke mail, DbSenke db) {
+        if (rechnung instanceof InterneVerechnung(var abt, double wert)) {
+            db.storeInDB(abt, wert);
+        } else if (rechnung instanceof ExternVersandt(Privatkunde(var name, var address), double wert)) {
+            mail.sendViaMail(address, text(name, wert, MwStRechner.mwst(wert, false)));
+        } else if (rechnung instanceof ExternVersandt(Businesskunde(var name, var address, var abzug), double wert)) {
+            mail.sendViaMail(address, text(name, wert, MwStRechner.mwst(wert, abzug)));
+        } else {
+            throw new IllegalArgumentException("Unbekannte Rechnung %s".formatted(rechnung.getClass().getName()));
+        }
+    }
+
+    private static String text(String name, double wert, double mwst) {
+        return RechnungsText.STANDARD.render(new StringBuilder(256), name, wert, mwst).toString();
+    }
+
+    /**
+     * Jede Rechnungsart einmal über denselben Weg wie ein echter Lauf, die Ausgabe wird verworfen.
+     */
+    static void trainieren() throws IOException {
+        var datei = Files.createTempFile("rechnungen-training", ".csv");
+        try {
+            Files.writeString(datei, """
+                    # Trainingslauf für das AppCDS Archiv
+                    I;HR;10.00
+                    P;Merlin;merlin@dummy.de;10.00
+                    B;adesso SE;info@dummy.de;false;10.00
+                    B;Eureg JUG;jug@dummy.de;true;10.00
+                    """);
+            verarbeite(datei, new Ausgabe(new PrintStream(OutputStream.nullOutputStream(), false,
+                    StandardCharsets.UTF_8)));
+        } finally {
+            Files.delete(datei);
+        }
+    }
+
+    /**
+     * Schreibt wie die {@linkplain Dummy} Senken, setzt die Zeilen aber selbst zusammen statt über {@code printf}.
+     */
+    static final class Ausgabe implements MailSenke, DbSenke {
+        private final PrintStream aus;
+        private final StringBuilder zeile = new StringBuilder(512);
+
+        Ausgabe(PrintStream aus) {
+            this.aus = aus;
+        }
+
+        @Override
+        public void sendViaMail(String empf, String txt) {
+            zeile.setLength(0);
+            zeile.append("Sende E-Mail an ").append(empf).append(" mit Inhalt:").append(System.lineSeparator())
+                    .append(txt).append(System.lineSeparator());
+            aus.print(zeile);
+        }
+
+        @Override
+        public void storeInDB(String abt, double value) {
+            zeile.setLength(0);
+            zeile.append("Speicher ").append(value).append("€ zur Verrechnung mit Abteilung ").append(abt)
+                    .append(System.lineSeparator());
+            aus.print(zeile);
+        }
+    }
+
+    private static final class Versand implements Consumer<Rechnung> {
+        private final MailSenke mail;
+        private final DbSenke db;
+        private long anzahl;
+
+        Versand(MailSenke mail, DbSenke db) {
+            this.mail = mail;
+            this.db = db;
+        }
+
+        @Override
+        public void accept(Rechnung rechnung) {
+            versende(rechnung, mail, db);
+            anzahl++;
+        }
+    }
+}
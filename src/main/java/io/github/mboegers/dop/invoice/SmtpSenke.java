@@ -0,0 +1,588 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Versendet Rechnungen per SMTP über wenige, wiederverwendete Verbindungen statt einer Verbindung je Rechnung.
+ * Verwendet
+ * JEP 444: Virtual Threads https://openjdk.org/jeps/444
+ * JEP 453: Structured Concurrency (Preview) https://openjdk.org/jeps/453
+ * <p>
+ * Rechnungen werden gesammelt und wie bei der {@linkplain BatchDbSenke} gebündelt versendet, sobald
+ * {@link Konfiguration#maxRechnungen()} erreicht ist, spätestens nach {@link Konfiguration#maxAlter()}, sowie bei
+ * {@link #flush()} und {@link #close()}. Dabei
+ * <ul>
+ *     <li>werden Rechnungen an denselben Empfänger zu einer Sammelmail zusammengefasst, wenn {@code sammeln} es für
+ *     diesen Empfänger erlaubt</li>
+ *     <li>werden die Mails auf bis zu {@link Konfiguration#verbindungen()} Verbindungen aus einem Pool verteilt und
+ *     je Verbindung in einem virtuellen Thread versendet</li>
+ *     <li>werden die Befehle mehrerer Mails einer Sitzung nach RFC 2920 ohne Warten auf die Antworten geschickt,
+ *     eine Mail kostet so einen Umlauf statt vier</li>
+ *     <li>wird nach vorübergehenden Fehlern, Antworten {@code 4xx} oder abgebrochenen Verbindungen, mit exponentiell
+ *     wachsender Pause erneut versendet, Mails mit dauerhaftem Fehler {@code 5xx} werden als
+ *     {@linkplain #unzustellbar() unzustellbar} vermerkt</li>
+ * </ul>
+ * Wie bei SMTP üblich wird höchstens eine Mail doppelt zugestellt, wenn die Verbindung nach ihrem Inhalt, aber vor der
+ * Bestätigung abbricht. Scheitern alle Versuche, bleiben die nicht zugestellten Rechnungen gepuffert und
+ * {@link #flush()} wirft eine {@linkplain UncheckedIOException}. Wie bei der {@linkplain BatchDbSenke} nimmt
+ * {@link #sendViaMail(String, String)} eine Rechnung daher immer an, Fehler stehen in der {@linkplain Statistik}. Nach
+ * einem Fehler versendet erst wieder der Zeitgeber nach {@link Konfiguration#maxAlter()} oder ein expliziter Flush,
+ * damit nicht jede weitere Rechnung alle Versuche abwartet.
+ * {@snippet :
+ *   try (var mail = new SmtpSenke(konfiguration, empf -> empf.endsWith("@firma.de"))) {
+ *       rechnungen.forEach(r -> Main.sendInvoiceFor(r, mail, Dummy::storeInDB));
+ *   }
+ *}
+ */
+final class SmtpSenke implements MailSenke, AutoCloseable {
+
+    /**
+     * @param verbindungen   maximale Anzahl gleichzeitig offener Verbindungen
+     * @param maxRechnungen  Anzahl gesammelter Rechnungen, ab der versendet wird
+     * @param maxAlter       maximale Wartezeit einer Rechnung bis sie versendet wird
+     * @param versuche       Anzahl Versuche je Mail, mindestens 1
+     * @param pause          Pause vor dem ersten erneuten Versuch, verdoppelt sich mit jedem weiteren
+     */
+    record Konfiguration(String host, int port, String absender, int verbindungen, int maxRechnungen,
+                         Duration maxAlter, int versuche, Duration pause) {
+        Konfiguration {
+            requireNonNull(host);
+            adresse(absender);
+            if (port < 1 || port > 65535) throw new IllegalArgumentException("Port %d ungültig".formatted(port));
+            if (verbindungen < 1) throw new IllegalArgumentException("verbindungen muss positiv sein");
+            if (maxRechnungen < 1) throw new IllegalArgumentException("maxRechnungen muss positiv sein");
+            if (maxAlter.isNegative() || maxAlter.isZero()) {
+                throw new IllegalArgumentException("maxAlter muss positiv sein");
+            }
+            if (versuche < 1) throw new IllegalArgumentException("versuche muss positiv sein");
+            if (pause.isNegative()) throw new IllegalArgumentException("pause %s ist negativ".formatted(pause));
+        }
+
+        /**
+         * Server auf localhost, z.B. die {@code SmtpAttrappe} aus den Tests
+         */
+        static Konfiguration lokal(int port) {
+            return new Konfiguration("localhost", port, "rechnung@localhost", 4, 500, Duration.ofSeconds(1), 5,
+                    Duration.ofMillis(50));
+        }
+    }
+
+    /**
+     * @param rechnungen     Anzahl zugestellter Rechnungen, einzeln oder in Sammelmails
+     * @param mails          Anzahl zugestellter Mails
+     * @param sammelmails    davon mit mehr als einer Rechnung
+     * @param verbindungen   Anzahl geöffneter Verbindungen
+     * @param wiederholungen Anzahl erneuter Versuche
+     * @param fehlschlaege   Anzahl Flushes, nach denen Mails gepuffert blieben
+     * @param letzterFehler  Exception des letzten fehlgeschlagenen Flushes, {@code null} ohne Fehler
+     */
+    record Statistik(long rechnungen, long mails, long sammelmails, long verbindungen, long wiederholungen,
+                     long fehlschlaege, RuntimeException letzterFehler) {
+    }
+
+    /**
+     * @param code Antwort des Servers, z.B. 550 für einen unbekannten Empfänger
+     */
+    record Unzustellbar(String empfaenger, List<String> texte, int code) {
+    }
+
+    private record Eintrag(String empfaenger, String text) {
+    }
+
+    private record Mail(String empfaenger, List<String> texte) {
+    }
+
+    private final Konfiguration konfiguration;
+    private final Predicate<String> sammeln;
+    private final ScheduledExecutorService zeitgeber;
+    private final Object schreibLock = new Object();
+    private final ConcurrentLinkedQueue<Verbindung> frei = new ConcurrentLinkedQueue<>();
+    private final List<Unzustellbar> unzustellbar = new CopyOnWriteArrayList<>();
+
+    // geschützt durch this
+    private List<Eintrag> puffer = new ArrayList<>();
+    private boolean geschlossen;
+    private long pauseBis = System.nanoTime();
+
+    private final LongAdder rechnungen = new LongAdder();
+    private final LongAdder mails = new LongAdder();
+    private final LongAdder sammelmails = new LongAdder();
+    private final LongAdder verbindungen = new LongAdder();
+    private final LongAdder wiederholungen = new LongAdder();
+    private final LongAdder fehlschlaege = new LongAdder();
+    private volatile RuntimeException letzterFehler;
+
+    /**
+     * @param sammeln ob Rechnungen an diesen Empfänger in einer Sammelmail zusammengefasst werden dürfen
+     */
+    SmtpSenke(Konfiguration konfiguration, Predicate<String> sammeln) {
+        this.konfiguration = requireNonNull(konfiguration);
+        this.sammeln = requireNonNull(sammeln);
+        this.zeitgeber = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("smtp-flush").factory());
+        long periode = konfiguration.maxAlter().toNanos();
+        zeitgeber.scheduleWithFixedDelay(this::versuche, periode, periode, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Der bisherige Weg zum Vergleich: je Rechnung eine neue Verbindung, jeder Befehl wartet auf seine Antwort.
+     */
+    static MailSenke einzeln(Konfiguration konfiguration) {
+        requireNonNull(konfiguration);
+        return (empf, txt) -> {
+            var mail = List.of(new Mail(adresse(empf), List.of(requireNonNull(txt))));
+            try (var verbindung = new Verbindung(konfiguration, false)) {
+                verbindung.sende(mail);
+                if (!verbindung.abgelehnt.isEmpty()) {
+                    throw new IOException("Mail an %s abgelehnt: %d".formatted(empf,
+                            verbindung.abgelehnt.getFirst().code()));
+                }
+                verbindung.beenden();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Nimmt die Rechnung an, auch wenn der dadurch ausgelöste Versand fehlschlägt.
+     *
+     * @throws IllegalStateException    wenn die Senke geschlossen ist
+     * @throws IllegalArgumentException wenn der Empfänger Zeilenumbrüche oder {@code >} enthält
+     */
+    @Override
+    public void sendViaMail(String empf, String txt) {
+        var eintrag = new Eintrag(adresse(empf), requireNonNull(txt));
+        boolean voll;
+        synchronized (this) {
+            if (geschlossen) throw new IllegalStateException("Senke ist geschlossen");
+            puffer.add(eintrag);
+            voll = puffer.size() >= konfiguration.maxRechnungen() && System.nanoTime() - pauseBis >= 0;
+        }
+        if (voll) versuche();
+    }
+
+    /**
+     * Flush, dessen Fehler nur in der Statistik landet
+     */
+    private void versuche() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // bleibt gepuffert, nächster Versuch beim nächsten Flush
+        }
+    }
+
+    /**
+     * Versende alle gesammelten Rechnungen.
+     *
+     * @throws UncheckedIOException wenn Mails auch nach allen Versuchen nicht versendet wurden, ihre Rechnungen bleiben
+     *                              gepuffert
+     */
+    void flush() {
+        synchronized (schreibLock) {
+            List<Eintrag> batch;
+            synchronized (this) {
+                if (puffer.isEmpty()) return;
+                batch = puffer;
+                puffer = new ArrayList<>();
+            }
+
+            long start = System.nanoTime();
+            var teile = verteilen(gruppieren(batch));
+            // je Teil die noch nicht erledigten Mails, auch nach einer Unterbrechung
+            var reste = teile.stream().map(AtomicReference::new).toList();
+            if (teile.size() == 1) {
+                sendeMitWiederholung(reste.getFirst());
+            } else {
+                try (var scope = new StructuredTaskScope<Void>("smtp", Thread.ofVirtual().name("smtp-", 0)
+                        .factory())) {
+                    reste.forEach(rest -> scope.fork(() -> {
+                        sendeMitWiederholung(rest);
+                        return null;
+                    }));
+                    scope.join();
+                } catch (InterruptedException e) {
+                    // der Scope wartet beim Schließen auf alle Teile, die Reste sind vollständig
+                    Thread.currentThread().interrupt();
+                    throw fehlschlag(offen(reste), new IllegalStateException("Unterbrochen während des Versands", e));
+                }
+            }
+
+            var offen = offen(reste);
+            if (!offen.isEmpty()) {
+                var fehler = new IOException("%d Mails nach %d Versuchen nicht versendet"
+                        .formatted(offen.size(), konfiguration.versuche()));
+                throw fehlschlag(offen, new UncheckedIOException(fehler));
+            }
+            synchronized (this) {
+                pauseBis = start;
+            }
+        }
+    }
+
+    private static List<Mail> offen(List<AtomicReference<List<Mail>>> reste) {
+        var offen = new ArrayList<Mail>();
+        reste.forEach(rest -> offen.addAll(rest.get()));
+        return offen;
+    }
+
+    private RuntimeException fehlschlag(List<Mail> offen, RuntimeException fehler) {
+        zuruecklegen(offen);
+        fehlschlaege.increment();
+        letzterFehler = fehler;
+        return fehler;
+    }
+
+    /**
+     * Adressen landen unverändert in {@code MAIL FROM:<…>}, {@code RCPT TO:<…>} und im Kopf der Mail, mit
+     * Zeilenumbruch oder {@code >} ließen sich so weitere Befehle und Kopfzeilen einschleusen.
+     */
+    private static String adresse(String adresse) {
+        requireNonNull(adresse);
+        for (int i = 0; i < adresse.length(); i++) {
+            char c = adresse.charAt(i);
+            if (c == '\r' || c == '\n' || c == '>') {
+                throw new IllegalArgumentException("Ungültige Adresse %s".formatted(adresse.strip()));
+            }
+        }
+        return adresse;
+    }
+
+    private List<Mail> gruppieren(List<Eintrag> batch) {
+        var mails = new ArrayList<Mail>(batch.size());
+        var gruppen = new LinkedHashMap<String, List<String>>();
+        for (var eintrag : batch) {
+            if (sammeln.test(eintrag.empfaenger())) {
+                gruppen.computeIfAbsent(eintrag.empfaenger(), _ -> new ArrayList<>()).add(eintrag.text());
+            } else {
+                mails.add(new Mail(eintrag.empfaenger(), List.of(eintrag.text())));
+            }
+        }
+        gruppen.forEach((empfaenger, texte) -> mails.add(new Mail(empfaenger, List.copyOf(texte))));
+        return mails;
+    }
+
+    /**
+     * Teile die Mails zusammenhängend auf höchstens {@link Konfiguration#verbindungen()} Verbindungen auf.
+     */
+    private List<List<Mail>> verteilen(List<Mail> mails) {
+        int anzahl = Math.min(konfiguration.verbindungen(), mails.size());
+        var teile = new ArrayList<List<Mail>>(anzahl);
+        for (int i = 0; i < anzahl; i++) {
+            teile.add(mails.subList(i * mails.size() / anzahl, (i + 1) * mails.size() / anzahl));
+        }
+        return teile;
+    }
+
+    /**
+     * Hält in {@code rest} nach jedem Versuch die noch nicht erledigten Mails fest, am Ende also die auch nach allen
+     * Versuchen nicht versendeten Mails.
+     */
+    private void sendeMitWiederholung(AtomicReference<List<Mail>> rest) {
+        for (int versuch = 1; ; versuch++) {
+            Verbindung verbindung = null;
+            try {
+                verbindung = frei.poll();
+                if (verbindung == null) {
+                    verbindung = new Verbindung(konfiguration, true);
+                    verbindungen.increment();
+                }
+                verbindung.sende(rest.get());
+                zaehlen(verbindung);
+                frei.offer(verbindung);
+                rest.set(List.of());
+                return;
+            } catch (IOException e) {
+                if (verbindung != null) {
+                    zaehlen(verbindung);
+                    rest.set(rest.get().subList(verbindung.erledigt, rest.get().size()));
+                    verbindung.close();
+                }
+                if (versuch >= konfiguration.versuche()) return;
+                wiederholungen.increment();
+                if (!warte(versuch)) return;
+            }
+        }
+    }
+
+    private void zaehlen(Verbindung verbindung) {
+        for (var mail : verbindung.bestaetigt) {
+            mails.increment();
+            rechnungen.add(mail.texte().size());
+            if (mail.texte().size() > 1) sammelmails.increment();
+        }
+        unzustellbar.addAll(verbindung.abgelehnt);
+        verbindung.bestaetigt.clear();
+        verbindung.abgelehnt.clear();
+    }
+
+    /**
+     * Exponentiell wachsende Pause mit bis zu 50% Zufall, damit nicht alle Verbindungen gleichzeitig wiederholen
+     *
+     * @return false wenn unterbrochen
+     */
+    private boolean warte(int versuch) {
+        long nanos = konfiguration.pause().toNanos() << Math.min(versuch - 1, 20);
+        nanos += ThreadLocalRandom.current().nextLong(nanos / 2 + 1);
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void zuruecklegen(List<Mail> offen) {
+        var neu = new ArrayList<Eintrag>(offen.size() + puffer.size());
+        for (var mail : offen) mail.texte().forEach(text -> neu.add(new Eintrag(mail.empfaenger(), text)));
+        neu.addAll(puffer);
+        puffer = neu;
+        pauseBis = System.nanoTime() + konfiguration.maxAlter().toNanos();
+    }
+
+    Statistik statistik() {
+        return new Statistik(rechnungen.sum(), mails.sum(), sammelmails.sum(), verbindungen.sum(),
+                wiederholungen.sum(), fehlschlaege.sum(), letzterFehler);
+    }
+
+    List<Unzustellbar> unzustellbar() {
+        return List.copyOf(unzustellbar);
+    }
+
+    /**
+     * Versendet die restlichen Rechnungen und schließt alle Verbindungen, danach werden keine weiteren angenommen.
+     * Scheitert der Versand, bleiben die Rechnungen gepuffert und der Zeitgeber läuft weiter, ein erneutes
+     * {@code close()} oder {@link #flush()} versendet sie.
+     *
+     * @throws UncheckedIOException wenn Mails auch nach allen Versuchen nicht versendet wurden
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            geschlossen = true;
+        }
+        flush();
+        zeitgeber.shutdown();
+        Verbindung verbindung;
+        while ((verbindung = frei.poll()) != null) {
+            try {
+                verbindung.beenden();
+            } catch (IOException e) {
+                // wird ohnehin geschlossen
+            }
+            verbindung.close();
+        }
+    }
+
+    /**
+     * Eine SMTP Sitzung. {@link #sende(List)} hält fest, wie viele Mails vom Anfang der Liste erledigt sind, also
+     * bestätigt oder dauerhaft abgelehnt, damit nach einem Abbruch nur der Rest wiederholt wird.
+     */
+    private static final class Verbindung implements AutoCloseable {
+        private static final int TIMEOUT_MILLIS = 10_000;
+
+        private final Konfiguration konfiguration;
+        private final Socket socket;
+        private final BufferedReader ein;
+        private final BufferedWriter aus;
+        private final boolean pipelining;
+
+        int erledigt;
+        final List<Mail> bestaetigt = new ArrayList<>();
+        final List<Unzustellbar> abgelehnt = new ArrayList<>();
+
+        Verbindung(Konfiguration konfiguration, boolean pipelining) throws IOException {
+            this.konfiguration = konfiguration;
+            this.socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(konfiguration.host(), konfiguration.port()), TIMEOUT_MILLIS);
+                socket.setSoTimeout(TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                this.ein = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                this.aus = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                erwarte(antwort(), 220);
+                befehl("EHLO " + socket.getLocalAddress().getHostName());
+                aus.flush();
+                var ehlo = new StringBuilder();
+                erwarte(antwort(ehlo), 250);
+                this.pipelining = pipelining && ehlo.toString().contains("PIPELINING");
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Mit Pipelining werden {@code MAIL, RCPT} und {@code DATA} einer Mail zusammen mit dem Inhalt der vorigen Mail
+         * geschickt und die Antworten danach gelesen, ohne Pipelining wird nach jedem Befehl gewartet.
+         */
+        void sende(List<Mail> mails) throws IOException {
+            erledigt = 0;
+            Mail vorige = null;
+            for (var mail : mails) {
+                int mailCode;
+                int rcptCode = 0;
+                int dataCode = 0;
+                befehl("MAIL FROM:<" + konfiguration.absender() + ">");
+                if (pipelining) {
+                    befehl("RCPT TO:<" + mail.empfaenger() + ">");
+                    befehl("DATA");
+                    aus.flush();
+                    if (vorige != null) bestaetige(vorige, antwort());
+                    vorige = null;
+                    mailCode = antwort();
+                    rcptCode = antwort();
+                    dataCode = antwort();
+                } else {
+                    mailCode = sofort();
+                    if (mailCode < 400) {
+                        befehl("RCPT TO:<" + mail.empfaenger() + ">");
+                        rcptCode = sofort();
+                    }
+                    if (mailCode < 400 && rcptCode < 400) {
+                        befehl("DATA");
+                        dataCode = sofort();
+                    }
+                }
+                if (mailCode >= 400 || rcptCode >= 400) {
+                    ablehnen(mail, Math.max(mailCode, rcptCode), dataCode);
+                    continue;
+                }
+                erwarte(dataCode, 354);
+                inhalt(mail);
+                if (pipelining) {
+                    vorige = mail;
+                } else {
+                    bestaetige(mail, sofort());
+                }
+            }
+            aus.flush();
+            if (vorige != null) bestaetige(vorige, antwort());
+        }
+
+        private int sofort() throws IOException {
+            aus.flush();
+            return antwort();
+        }
+
+        private void bestaetige(Mail mail, int code) throws IOException {
+            if (code >= 500) {
+                abgelehnt.add(new Unzustellbar(mail.empfaenger(), mail.texte(), code));
+            } else {
+                erwarte(code, 250);
+                bestaetigt.add(mail);
+            }
+            erledigt++;
+        }
+
+        /**
+         * Dauerhafte Fehler erledigen die Mail, vorübergehende brechen die Sitzung für einen erneuten Versuch ab.
+         */
+        private void ablehnen(Mail mail, int code, int dataCode) throws IOException {
+            if (code < 500) {
+                throw new IOException("Vorübergehender Fehler %d für %s".formatted(code, mail.empfaenger()));
+            }
+            if (dataCode == 354) { // der Server erwartet trotzdem einen Inhalt
+                aus.write(".\r\n");
+                aus.flush();
+                antwort();
+            }
+            abgelehnt.add(new Unzustellbar(mail.empfaenger(), mail.texte(), code));
+            erledigt++;
+            befehl("RSET");
+            aus.flush();
+            erwarte(antwort(), 250);
+        }
+
+        private void inhalt(Mail mail) throws IOException {
+            int anzahl = mail.texte().size();
+            befehl("From: <" + konfiguration.absender() + ">");
+            befehl("To: <" + mail.empfaenger() + ">");
+            befehl(anzahl == 1 ? "Subject: Rechnung" : "Subject: %d Rechnungen".formatted(anzahl));
+            befehl("MIME-Version: 1.0");
+            befehl("Content-Type: text/plain; charset=UTF-8");
+            befehl("Content-Transfer-Encoding: 8bit");
+            befehl("");
+            for (int i = 0; i < anzahl; i++) {
+                if (i > 0) befehl("----");
+                for (var zeile : mail.texte().get(i).split("\r?\n", -1)) {
+                    befehl(zeile.startsWith(".") ? "." + zeile : zeile);
+                }
+            }
+            befehl(".");
+        }
+
+        void beenden() throws IOException {
+            befehl("QUIT");
+            aus.flush();
+            antwort();
+        }
+
+        private void befehl(String zeile) throws IOException {
+            aus.write(zeile);
+            aus.write("\r\n");
+        }
+
+        private int antwort() throws IOException {
+            return antwort(null);
+        }
+
+        /**
+         * Lese eine ggf. mehrzeilige Antwort wie {@code 250-attrappe ... 250 8BITMIME}.
+         */
+        private int antwort(StringBuilder text) throws IOException {
+            while (true) {
+                var zeile = ein.readLine();
+                if (zeile == null) throw new IOException("Verbindung vom Server beendet");
+                if (zeile.length() < 3) throw new IOException("Ungültige Antwort: " + zeile);
+                if (text != null) text.append(zeile).append('\n');
+                if (zeile.length() == 3 || zeile.charAt(3) != '-') {
+                    try {
+                        return Integer.parseInt(zeile, 0, 3, 10);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Ungültige Antwort: " + zeile, e);
+                    }
+                }
+            }
+        }
+
+        private static void erwarte(int code, int erwartet) throws IOException {
+            if (code != erwartet) throw new IOException("Antwort %d statt %d".formatted(code, erwartet));
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nichts mehr zu tun
+            }
+        }
+    }
+}
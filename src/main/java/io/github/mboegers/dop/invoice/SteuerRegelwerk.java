@@ -0,0 +1,344 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tabellengesteuerte Steuersätze je Land, Kundenart und Satzklasse mit Gültigkeitszeiträumen und Ausnahmen für
+ * einzelne Kunden.
+ * <p>
+ * Die Regeln werden beim Laden für jedes Land und jeden Zeitraum, in dem sich keine Regel ändert, zu einem
+ * {@linkplain Tarif} kompiliert. Ein Tarif ist ein Array der Steuersätze, indiziert über Kundenart und Satzklasse, die
+ * Berechnung kostet daher nur einen {@code switch} über den Kunden und einen Arrayzugriff. Mit
+ * {@link #neuLaden(List)} werden neue Regeln vollständig kompiliert und dann auf einmal ausgetauscht, laufende
+ * Berechnungen rechnen mit ihrem Tarif unverändert weiter.
+ * <p>
+ * Passen mehrere Regeln, gewinnt die spezifischste: eine Regel für einen Kunden vor einer für die Kundenart vor einer
+ * für die Satzklasse, danach die später beginnende. So kann eine befristete Senkung die allgemeine Regel überdecken.
+ * Gleich spezifische Regeln mit gleichem Beginn und verschiedenen Sätzen sind ein Fehler.
+ * <p>
+ * Eigenständig: {@linkplain Main} und die übrigen Versandwege rechnen weiter mit dem fest programmierten
+ * {@linkplain MwStRechner}, {@link #STANDARD} liefert für die Satzklasse {@code NORMAL} dieselben Beträge.
+ * {@snippet :
+ *   var regelwerk = new SteuerRegelwerk(SteuerRegelwerk.lese(Path.of("steuern.csv")));
+ *   var tarif = regelwerk.tarif("DE", LocalDate.now());
+ *   var mwst = tarif.calculateMwSt(kunde, SteuerRegelwerk.Satzklasse.ERMAESSIGT, wert);
+ *}
+ */
+final class SteuerRegelwerk {
+
+    enum Kundenart {
+        PRIVAT, BUSINESS, BUSINESS_VORSTEUERABZUG;
+
+        static Kundenart von(Kunde kunde) {
+            return switch (kunde) {
+                case Privatkunde _ -> PRIVAT;
+                case Businesskunde(String _, _, var isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> BUSINESS_VORSTEUERABZUG;
+                case Businesskunde _ -> BUSINESS;
+            };
+        }
+    }
+
+    enum Satzklasse {
+        NORMAL, ERMAESSIGT, STEUERFREI
+    }
+
+    /**
+     * Eine Zeile der Regeltabelle, {@code null} bei {@code kunde}, {@code art} und {@code klasse} passt auf alle,
+     * {@code null} bei den Daten bedeutet unbegrenzt.
+     *
+     * @param satz Steuersatz in Prozent mit höchstens zwei Nachkommastellen, z.B. {@code 5.5}
+     */
+    record Regel(String land, Kunde kunde, Kundenart art, Satzklasse klasse, BigDecimal satz,
+                 LocalDate gueltigAb, LocalDate gueltigBis) {
+        Regel {
+            requireNonNull(land);
+            requireNonNull(satz);
+            if (satz.signum() < 0 || satz.compareTo(BigDecimal.valueOf(100)) > 0
+                    || satz.stripTrailingZeros().scale() > 2) {
+                throw new IllegalArgumentException("Satz %s außerhalb 0..100 mit zwei Nachkommastellen".formatted(satz));
+            }
+            if (gueltigAb != null && gueltigBis != null && gueltigBis.isBefore(gueltigAb)) {
+                throw new IllegalArgumentException("gültig bis %s vor gültig ab %s".formatted(gueltigBis, gueltigAb));
+            }
+            if (kunde != null && art != null && art != Kundenart.von(kunde)) {
+                throw new IllegalArgumentException("Kunde %s ist nicht %s".formatted(kunde, art));
+            }
+        }
+
+        Regel(String land, Kundenart art, Satzklasse klasse, String satz) {
+            this(land, null, art, klasse, new BigDecimal(satz), null, null);
+        }
+
+        private boolean gilt(long tag) {
+            return (gueltigAb == null || gueltigAb.toEpochDay() <= tag)
+                    && (gueltigBis == null || tag <= gueltigBis.toEpochDay());
+        }
+
+        private boolean passt(Kunde k, Kundenart a, Satzklasse s) {
+            return (kunde == null || kunde.equals(k)) && (art == null || art == a) && (klasse == null || klasse == s);
+        }
+
+        /**
+         * spezifischer ist, was Kunde, Art oder Klasse festlegt, bei Gleichstand die später beginnende Regel
+         */
+        private int vergleicheSpezifitaet(Regel andere) {
+            int vergleich = Integer.compare(spezifitaet(), andere.spezifitaet());
+            if (vergleich != 0) return vergleich;
+            return Long.compare(gueltigAb == null ? Long.MIN_VALUE : gueltigAb.toEpochDay(),
+                    andere.gueltigAb == null ? Long.MIN_VALUE : andere.gueltigAb.toEpochDay());
+        }
+
+        private int spezifitaet() {
+            return (kunde != null ? 4 : 0) + (art != null ? 2 : 0) + (klasse != null ? 1 : 0);
+        }
+
+        private int basispunkte() {
+            return satz.movePointRight(2).intValueExact();
+        }
+    }
+
+    /**
+     * Die bisher fest programmierten Regeln: 10% für alle, 0% für Businesskunden mit Vorsteuerabzug und 0% für
+     * steuerfreie Leistungen an jeden Kunden
+     */
+    static final List<Regel> STANDARD = List.of(
+            new Regel("DE", null, null, "10"),
+            new Regel("DE", Kundenart.BUSINESS_VORSTEUERABZUG, null, "0"),
+            new Regel("DE", null, Satzklasse.STEUERFREI, "0"));
+
+    private volatile Map<String, Land> laender;
+
+    SteuerRegelwerk(List<Regel> regeln) {
+        this.laender = kompiliere(regeln);
+    }
+
+    /**
+     * Kompiliere die neuen Regeln und tausche sie atomar aus. Bei fehlerhaften Regeln bleiben die alten aktiv.
+     */
+    void neuLaden(List<Regel> regeln) {
+        laender = kompiliere(regeln);
+    }
+
+    /**
+     * @throws IllegalArgumentException wenn es für das Land am Stichtag keine Regeln gibt
+     */
+    Tarif tarif(String land, LocalDate stichtag) {
+        var tarife = laender.get(requireNonNull(land));
+        if (tarife == null) throw new IllegalArgumentException("Keine Regeln für %s".formatted(land));
+        return tarife.tarif(stichtag.toEpochDay());
+    }
+
+    /**
+     * Steuersätze eines Landes in einem Zeitraum, in dem sich keine Regel ändert.
+     */
+    static final class Tarif {
+        private static final int KLASSEN = Satzklasse.values().length;
+
+        private final String land;
+        private final LocalDate gueltigAb;
+        /**
+         * Faktor je {@code art * KLASSEN + klasse}, NaN wenn keine Regel passt
+         */
+        private final double[] faktor;
+        private final int[] basispunkte;
+        private final Map<Kunde, Tarif> ausnahmen;
+        private final boolean hatAusnahmen;
+
+        private Tarif(String land, LocalDate gueltigAb, int[] basispunkte, Map<Kunde, Tarif> ausnahmen) {
+            this.land = land;
+            this.gueltigAb = gueltigAb;
+            this.basispunkte = basispunkte;
+            this.faktor = new double[basispunkte.length];
+            for (int i = 0; i < faktor.length; i++) {
+                faktor[i] = basispunkte[i] < 0 ? Double.NaN : basispunkte[i] / 10_000d;
+            }
+            this.ausnahmen = ausnahmen;
+            this.hatAusnahmen = !ausnahmen.isEmpty();
+        }
+
+        /**
+         * MwSt mit der normalen Satzklasse, mit {@linkplain #STANDARD} gleich
+         * {@linkplain MwStRechner.SwitchExpressionWhenClauseUnnamed}
+         */
+        double calculateMwSt(Kunde kunde, double wert) {
+            return calculateMwSt(kunde, Satzklasse.NORMAL, wert);
+        }
+
+        double calculateMwSt(Kunde kunde, Satzklasse klasse, double wert) {
+            var tarif = hatAusnahmen ? ausnahmen.getOrDefault(kunde, this) : this;
+            double f = tarif.faktor[index(kunde, klasse)];
+            if (Double.isNaN(f)) throw keinSatz(kunde, klasse);
+            return wert * f;
+        }
+
+        long calculateMwSt(Kunde kunde, Satzklasse klasse, long wertCent, RoundingMode rundung) {
+            var tarif = hatAusnahmen ? ausnahmen.getOrDefault(kunde, this) : this;
+            int bp = tarif.basispunkte[index(kunde, klasse)];
+            if (bp < 0) throw keinSatz(kunde, klasse);
+            return Cent.anteil(wertCent, bp, 10_000, rundung);
+        }
+
+        /**
+         * Steuersatz in Prozent
+         */
+        BigDecimal satz(Kunde kunde, Satzklasse klasse) {
+            var tarif = ausnahmen.getOrDefault(kunde, this);
+            int bp = tarif.basispunkte[index(kunde, klasse)];
+            if (bp < 0) throw keinSatz(kunde, klasse);
+            return BigDecimal.valueOf(bp, 2);
+        }
+
+        private static int index(Kunde kunde, Satzklasse klasse) {
+            int art = switch (kunde) {
+                case Privatkunde _ -> 0;
+                case Businesskunde(String _, _, var isVorsteuerAbzugsberechtigt)
+                        when isVorsteuerAbzugsberechtigt -> 2;
+                case Businesskunde _ -> 1;
+            };
+            return art * KLASSEN + klasse.ordinal();
+        }
+
+        private IllegalStateException keinSatz(Kunde kunde, Satzklasse klasse) {
+            return new IllegalStateException("Kein Steuersatz in %s ab %s für %s und %s"
+                    .formatted(land, gueltigAb == null ? "immer" : gueltigAb, kunde, klasse));
+        }
+    }
+
+    /**
+     * Tarife eines Landes, {@code tarife[i]} gilt ab Tag {@code ab[i]} bis vor {@code ab[i + 1]}
+     */
+    private record Land(long[] ab, Tarif[] tarife) {
+        Tarif tarif(long tag) {
+            int i = Arrays.binarySearch(ab, tag);
+            return tarife[i >= 0 ? i : -i - 2];
+        }
+    }
+
+    //region Kompilieren
+    private static Map<String, Land> kompiliere(List<Regel> regeln) {
+        var jeLand = new HashMap<String, List<Regel>>();
+        for (var regel : regeln) jeLand.computeIfAbsent(regel.land(), _ -> new ArrayList<>()).add(regel);
+        var laender = new HashMap<String, Land>();
+        jeLand.forEach((land, r) -> laender.put(land, kompiliere(land, r)));
+        return Map.copyOf(laender);
+    }
+
+    private static Land kompiliere(String land, List<Regel> regeln) {
+        var grenzen = new TreeSet<Long>();
+        grenzen.add(Long.MIN_VALUE);
+        var kunden = new LinkedHashSet<Kunde>();
+        for (var regel : regeln) {
+            if (regel.gueltigAb() != null) grenzen.add(regel.gueltigAb().toEpochDay());
+            if (regel.gueltigBis() != null) grenzen.add(regel.gueltigBis().toEpochDay() + 1);
+            if (regel.kunde() != null) kunden.add(regel.kunde());
+        }
+
+        var ab = grenzen.stream().mapToLong(Long::longValue).toArray();
+        var tarife = new Tarif[ab.length];
+        for (int i = 0; i < ab.length; i++) {
+            long tag = ab[i];
+            var aktiv = regeln.stream().filter(r -> r.gilt(tag)).toList();
+            var beginn = tag == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(tag);
+            var ausnahmen = new HashMap<Kunde, Tarif>();
+            for (var kunde : kunden) {
+                ausnahmen.put(kunde, new Tarif(land, beginn, saetze(aktiv, kunde), Map.of()));
+            }
+            tarife[i] = new Tarif(land, beginn, saetze(aktiv, null), Map.copyOf(ausnahmen));
+        }
+        return new Land(ab, tarife);
+    }
+
+    private static int[] saetze(List<Regel> aktiv, Kunde kunde) {
+        var arten = Kundenart.values();
+        var klassen = Satzklasse.values();
+        var basispunkte = new int[arten.length * klassen.length];
+        for (var art : arten) {
+            for (var klasse : klassen) {
+                basispunkte[art.ordinal() * klassen.length + klasse.ordinal()] =
+                        kunde != null && Kundenart.von(kunde) != art ? -1 : satz(aktiv, kunde, art, klasse);
+            }
+        }
+        return basispunkte;
+    }
+
+    private static int satz(List<Regel> aktiv, Kunde kunde, Kundenart art, Satzklasse klasse) {
+        Regel gewinner = null;
+        for (var regel : aktiv) {
+            if (!regel.passt(kunde, art, klasse)) continue;
+            int vergleich = gewinner == null ? 1 : regel.vergleicheSpezifitaet(gewinner);
+            if (vergleich > 0) {
+                gewinner = regel;
+            } else if (vergleich == 0 && regel.basispunkte() != gewinner.basispunkte()) {
+                throw new IllegalArgumentException("Widersprüchliche Regeln %s und %s".formatted(gewinner, regel));
+            }
+        }
+        return gewinner == null ? -1 : gewinner.basispunkte();
+    }
+    //endregion
+
+    /**
+     * Lese eine Regeltabelle, eine Regel pro Zeile, leere Zeilen und Zeilen mit {@code #} werden übersprungen:
+     * <pre>
+     * land;kunde;art;klasse;satz;gueltigAb;gueltigBis
+     * DE;*;*;*;19;2007-01-01;
+     * DE;*;*;ERMAESSIGT;7;;
+     * DE;adesso SE|info@dummy.de;BUSINESS;*;0;2024-01-01;2024-12-31
+     * </pre>
+     * {@code *} passt auf alle, leere Daten sind unbegrenzt. Ein Kunde wird als {@code name|mail} angegeben und
+     * braucht eine Kundenart.
+     */
+    static List<Regel> lese(Path datei) throws IOException {
+        var regeln = new ArrayList<Regel>();
+        var zeilen = Files.readAllLines(datei);
+        for (int i = 0; i < zeilen.size(); i++) {
+            var zeile = zeilen.get(i).strip();
+            if (zeile.isEmpty() || zeile.startsWith("#")) continue;
+            try {
+                regeln.add(regel(zeile.split(";", -1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Zeile %d: %s".formatted(i + 1, e.getMessage()), e);
+            }
+        }
+        return regeln;
+    }
+
+    private static Regel regel(String[] felder) {
+        if (felder.length != 7) throw new IllegalArgumentException("%d statt 7 Felder".formatted(felder.length));
+        var art = alle(felder[2]) ? null : Kundenart.valueOf(felder[2]);
+        Kunde kunde = null;
+        if (!alle(felder[1])) {
+            if (art == null) throw new IllegalArgumentException("Kunde ohne Kundenart");
+            var nameMail = felder[1].split("\\|", 2);
+            if (nameMail.length != 2) throw new IllegalArgumentException("Kunde nicht als name|mail");
+            kunde = switch (art) {
+                case PRIVAT -> new Privatkunde(nameMail[0], nameMail[1]);
+                case BUSINESS -> new Businesskunde(nameMail[0], nameMail[1], false);
+                case BUSINESS_VORSTEUERABZUG -> new Businesskunde(nameMail[0], nameMail[1], true);
+            };
+        }
+        return new Regel(felder[0], kunde, art,
+                alle(felder[3]) ? null : Satzklasse.valueOf(felder[3]),
+                new BigDecimal(felder[4]),
+                felder[5].isEmpty() ? null : LocalDate.parse(felder[5]),
+                felder[6].isEmpty() ? null : LocalDate.parse(felder[6]));
+    }
+
+    private static boolean alle(String feld) {
+        return feld.equals("*");
+    }
+}
@@ -0,0 +1,493 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Verteilt die Rechnungen einer CSV Datei nach Kunden auf mehrere lokale Worker JVMs, jeder Worker versendet eine
+ * Partition mit {@linkplain Main#sendInvoiceFor(Rechnung, MailSenke, DbSenke)}, der Koordinator führt die MwSt Summen
+ * und Versandergebnisse der Partitionen zusammen.
+ * <p>
+ * Die Partition einer Rechnung ist der Hash des Kunden aus Name und Mail, bei internen Verrechnungen der Abteilung.
+ * Alle Rechnungen eines Kunden landen damit in derselben Partition und werden dort in der Reihenfolge der Datei
+ * versendet. Der Koordinator liest die CSV Datei zweimal: zuerst für die Größe jeder Partition, dann schreibt er jede
+ * Rechnung im {@linkplain BinaerRechnungsSchreiber Binärformat} an das Ende ihrer Partition in einer gemeinsamen Datei
+ * {@code partitionen.bin}. Jeder Worker blendet nur seinen Abschnitt per {@linkplain FileChannel#map} ein, es wird
+ * nichts über Pipes kopiert.
+ * <p>
+ * Worker versenden über einen {@linkplain FortsetzbarerVersand} mit einem Log je Partition. Endet ein Worker nicht mit
+ * 0, liefert kein Ergebnis oder überschreitet das {@linkplain Konfiguration#zeitlimit() Zeitlimit}, bekommt eine neue
+ * Worker JVM die Partition. Sie setzt nach dem Log fort, bereits zugestellte Rechnungen werden nicht noch einmal
+ * versendet, die beim Absturz eventuell im Versand befindliche wird als {@linkplain Teilergebnis#unsicher() unsicher}
+ * gemeldet. Nach {@link Konfiguration#versuche()} Workern für eine Partition bricht der Lauf ab, ein neuer Lauf mit
+ * derselben Datei, demselben Verzeichnis und derselben Anzahl Partitionen setzt fort.
+ * <p>
+ * Dateien im Verzeichnis, je Partition {@code p}:
+ * <pre>
+ * partitionen.bin      alle Partitionen hintereinander, jede mit eigenem Kopf des Binärformats
+ * partition-p.log      Log des FortsetzbarerVersand
+ * partition-p.ausgabe  Standard- und Fehlerausgabe aller Worker dieser Partition
+ * partition-p.ergebnis Teilergebnis des erfolgreichen Workers
+ * </pre>
+ * {@snippet :
+ *   var ergebnis = VerteilterVersand.verteile(csv, verzeichnis, VerteilterVersand.Konfiguration.lokal(4));
+ *   System.out.println(ergebnis.summen().gesamt());
+ *}
+ */
+final class VerteilterVersand {
+    static final String WORKER = "--worker";
+    static final String PARTITIONEN = "partitionen.bin";
+
+    /**
+     * @param worker      höchstens gleichzeitig laufende Worker JVMs
+     * @param partitionen Anzahl Partitionen, mehr Partitionen als Worker verteilen ungleich große Partitionen besser
+     * @param versuche    Worker JVMs je Partition, bevor der Lauf abbricht
+     * @param zeitlimit   Laufzeit eines Workers, danach wird er beendet und die Partition neu vergeben
+     * @param jvmOptionen zusätzliche Optionen der Worker JVMs, z.B. {@code -Xmx256m}
+     * @param einstieg    Klasse, deren {@code main} Methode im Worker läuft und {@link #arbeite} aufruft
+     */
+    record Konfiguration(int worker, int partitionen, int versuche, Duration zeitlimit, List<String> jvmOptionen,
+                         String einstieg) {
+
+        /**
+         * Eine Partition je Worker, drei Versuche je Partition und eine Stunde je Worker.
+         */
+        static Konfiguration lokal(int worker) {
+            return new Konfiguration(worker, worker, 3, Duration.ofHours(1), List.of(),
+                    VerteilterVersand.class.getName());
+        }
+
+        Konfiguration {
+            if (worker < 1) throw new IllegalArgumentException("worker muss positiv sein");
+            if (partitionen < 1) throw new IllegalArgumentException("partitionen muss positiv sein");
+            if (versuche < 1) throw new IllegalArgumentException("versuche muss positiv sein");
+            if (zeitlimit.isNegative() || zeitlimit.isZero()) {
+                throw new IllegalArgumentException("zeitlimit %s muss positiv sein".formatted(zeitlimit));
+            }
+            jvmOptionen = List.copyOf(jvmOptionen);
+            requireNonNull(einstieg);
+        }
+    }
+
+    /**
+     * @param rechnungen Anzahl Rechnungen der Partition
+     * @param summen     Summen aller zugestellten und unsicheren Rechnungen der Partition
+     * @param unsicher   Positionen innerhalb der Partition, deren Versand begonnen, aber nicht bestätigt wurde
+     * @param versuche   Anzahl Worker JVMs, die die Partition bearbeitet haben
+     */
+    record Teilergebnis(int partition, long rechnungen, MwStAuswertung.Ergebnis summen, List<Long> unsicher,
+                        int versuche) {
+        Teilergebnis {
+            unsicher = List.copyOf(unsicher);
+        }
+    }
+
+    /**
+     * @param summen      Summen über alle Partitionen
+     * @param partitionen Teilergebnisse nach Partition
+     */
+    record Ergebnis(MwStAuswertung.Ergebnis summen, List<Teilergebnis> partitionen) {
+        Ergebnis {
+            partitionen = List.copyOf(partitionen);
+        }
+
+        long rechnungen() {
+            return partitionen.stream().mapToLong(Teilergebnis::rechnungen).sum();
+        }
+
+        /**
+         * @return wie oft eine Partition nach einem abgestürzten Worker neu vergeben wurde
+         */
+        int neuVergeben() {
+            return partitionen.stream().mapToInt(t -> t.versuche() - 1).sum();
+        }
+    }
+
+    /**
+     * Abschnitt einer Partition in {@code partitionen.bin}, mit Kopf des Binärformats
+     */
+    record Partition(int nummer, long start, long laenge) {
+    }
+
+    private record Auftrag(Partition partition, int versuch, long frist) {
+    }
+
+    private VerteilterVersand() {
+    }
+
+    /**
+     * Verteile die Rechnungen der CSV Datei auf Worker JVMs und warte auf alle Partitionen.
+     *
+     * @param verzeichnis für die Partitionen, Logs und Ergebnisse der Worker, wird bei Bedarf angelegt
+     * @throws IllegalStateException wenn eine Partition nach {@link Konfiguration#versuche()} Workern nicht fertig ist
+     */
+    static Ergebnis verteile(Path csv, Path verzeichnis, Konfiguration konfiguration)
+            throws IOException, InterruptedException {
+        requireNonNull(csv);
+        requireNonNull(konfiguration);
+        Files.createDirectories(verzeichnis);
+        var datei = verzeichnis.resolve(PARTITIONEN);
+        var partitionen = partitioniere(csv, datei, konfiguration.partitionen());
+        return koordiniere(datei, partitionen, verzeichnis, konfiguration);
+    }
+
+    /**
+     * Deterministisch über JVMs hinweg, alle Rechnungen eines Kunden bzw. einer Abteilung in derselben Partition.
+     */
+    static int partition(Rechnung rechnung, int partitionen) {
+        int hash = switch (rechnung) {
+            case InterneVerechnung(var abt, _) -> Objects.hashCode(abt);
+            case ExternVersandt(Privatkunde(var name, var mail), _) -> kunde(name, mail);
+            case ExternVersandt(Businesskunde(var name, var mail, _), _) -> kunde(name, mail);
+            case ExternVersandt(_, _) -> throw new NullPointerException("Rechnung ohne Kunde");
+        };
+        // obere Bits einmischen, wie in HashMap
+        return Math.floorMod(hash ^ (hash >>> 16), partitionen);
+    }
+
+    private static int kunde(String name, String mail) {
+        return 31 * Objects.hashCode(name) + Objects.hashCode(mail);
+    }
+
+    /**
+     * Schreibe die Rechnungen der CSV Datei nach Partition in die Zieldatei, innerhalb einer Partition in der
+     * Reihenfolge der CSV Datei.
+     */
+    static List<Partition> partitioniere(Path csv, Path ziel, int anzahl) throws IOException {
+        var laengen = new long[anzahl];
+        Arrays.fill(laengen, BinaerRechnungsLeser.KOPF);
+        try (var leser = CsvRechnungsLeser.oeffne(csv)) {
+            while (leser.naechste(r -> laengen[partition(r, anzahl)] += BinaerRechnungsSchreiber.groesse(r))) {
+                // nur Größen zählen
+            }
+        }
+
+        var partitionen = new ArrayList<Partition>(anzahl);
+        long start = 0;
+        for (int p = 0; p < anzahl; p++) {
+            partitionen.add(new Partition(p, start, laengen[p]));
+            start += laengen[p];
+        }
+
+        try (var channel = FileChannel.open(ziel, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var schreiber = new BinaerRechnungsSchreiber[anzahl];
+            for (int p = 0; p < anzahl; p++) {
+                schreiber[p] = new BinaerRechnungsSchreiber(new Abschnitt(channel, partitionen.get(p).start()),
+                        16 * 1024);
+            }
+            try (var leser = CsvRechnungsLeser.oeffne(csv)) {
+                while (leser.naechste(r -> schreiber[partition(r, anzahl)].schreibe(r))) {
+                    // jede Rechnung ans Ende ihrer Partition
+                }
+            }
+            for (var s : schreiber) s.close();
+            if (channel.size() != start) {
+                throw new IllegalStateException("%s hat sich beim Partitionieren geändert".formatted(csv));
+            }
+        }
+        return List.copyOf(partitionen);
+    }
+
+    //region Koordinator
+    private static Ergebnis koordiniere(Path datei, List<Partition> partitionen, Path verzeichnis,
+                                        Konfiguration konfiguration) throws IOException, InterruptedException {
+        var offen = new ArrayDeque<Auftrag>();
+        partitionen.forEach(p -> offen.add(new Auftrag(p, 1, 0)));
+        var laufend = new HashMap<Process, Auftrag>();
+        var teilergebnisse = new Teilergebnis[partitionen.size()];
+        try {
+            while (!offen.isEmpty() || !laufend.isEmpty()) {
+                while (laufend.size() < konfiguration.worker() && !offen.isEmpty()) {
+                    var auftrag = offen.poll();
+                    var prozess = starte(datei, auftrag.partition(), verzeichnis, konfiguration);
+                    laufend.put(prozess, new Auftrag(auftrag.partition(), auftrag.versuch(),
+                            System.nanoTime() + konfiguration.zeitlimit().toNanos()));
+                }
+                warte(laufend);
+
+                for (var iterator = laufend.entrySet().iterator(); iterator.hasNext(); ) {
+                    var eintrag = iterator.next();
+                    var prozess = eintrag.getKey();
+                    var auftrag = eintrag.getValue();
+                    if (prozess.isAlive()) {
+                        if (System.nanoTime() - auftrag.frist() < 0) continue;
+                        prozess.destroyForcibly().waitFor();
+                    }
+                    iterator.remove();
+
+                    int nummer = auftrag.partition().nummer();
+                    var ergebnis = verzeichnis.resolve("partition-%d.ergebnis".formatted(nummer));
+                    if (prozess.exitValue() == 0 && Files.exists(ergebnis)) {
+                        teilergebnisse[nummer] = lese(ergebnis, nummer, auftrag.versuch());
+                    } else if (auftrag.versuch() < konfiguration.versuche()) {
+                        offen.add(new Auftrag(auftrag.partition(), auftrag.versuch() + 1, 0));
+                    } else {
+                        throw new IllegalStateException("Partition %d nach %d Versuchen nicht fertig, siehe %s"
+                                .formatted(nummer, auftrag.versuch(),
+                                        verzeichnis.resolve("partition-%d.ausgabe".formatted(nummer))));
+                    }
+                }
+            }
+        } finally {
+            laufend.keySet().forEach(Process::destroyForcibly);
+        }
+
+        var summen = new MwStAuswertung.Summen();
+        for (var teil : teilergebnisse) summen.add(teil.summen());
+        return new Ergebnis(summen.ergebnis(), Arrays.asList(teilergebnisse));
+    }
+
+    private static Process starte(Path datei, Partition partition, Path verzeichnis, Konfiguration konfiguration)
+            throws IOException {
+        var name = "partition-%d".formatted(partition.nummer());
+        var ergebnis = verzeichnis.resolve(name + ".ergebnis");
+        // ein Ergebnis eines früheren Laufs darf nicht als Ergebnis dieses Workers gelten
+        Files.deleteIfExists(ergebnis);
+
+        var befehl = new ArrayList<String>();
+        befehl.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        befehl.add("--enable-preview");
+        befehl.addAll(konfiguration.jvmOptionen());
+        befehl.add("-cp");
+        befehl.add(System.getProperty("java.class.path"));
+        befehl.add(konfiguration.einstieg());
+        befehl.addAll(List.of(WORKER, datei.toString(), Long.toString(partition.start()),
+                Long.toString(partition.laenge()), verzeichnis.resolve(name + ".log").toString(),
+                ergebnis.toString()));
+
+        return new ProcessBuilder(befehl)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(verzeichnis.resolve(name + ".ausgabe").toFile()))
+                .start();
+    }
+
+    /**
+     * Warte, bis ein Worker endet oder die früheste Frist abläuft.
+     */
+    private static void warte(Map<Process, Auftrag> laufend) throws InterruptedException {
+        if (laufend.isEmpty()) return;
+        long frist = laufend.values().stream().mapToLong(Auftrag::frist).min().orElseThrow();
+        var beendet = CompletableFuture.anyOf(laufend.keySet().stream()
+                .map(Process::onExit)
+                .toArray(CompletableFuture[]::new));
+        try {
+            beendet.get(Math.max(0, frist - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // der Aufrufer beendet Worker nach ihrer Frist
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    //endregion
+
+    //region Worker
+    /**
+     * Versende die Partition aus {@code args} und schreibe das Teilergebnis, Einstieg der Worker JVM.
+     *
+     * @param args {@code --worker datei start laenge log ergebnis}, wie vom Koordinator übergeben
+     */
+    static FortsetzbarerVersand.Stand arbeite(String[] args, MailSenke mail, DbSenke db) throws IOException {
+        if (args.length != 6 || !args[0].equals(WORKER)) {
+            throw new IllegalArgumentException("Erwartet %s datei start laenge log ergebnis, nicht %s"
+                    .formatted(WORKER, Arrays.toString(args)));
+        }
+        long start = Long.parseLong(args[2]);
+        long laenge = Long.parseLong(args[3]);
+        try (var arena = Arena.ofConfined();
+             var channel = FileChannel.open(Path.of(args[1]), StandardOpenOption.READ);
+             var versand = FortsetzbarerVersand.oeffne(Path.of(args[4]), FortsetzbarerVersand.Konfiguration.STANDARD,
+                     mail, db)) {
+            var leser = new BinaerRechnungsLeser(channel.map(FileChannel.MapMode.READ_ONLY, start, laenge, arena));
+            var stand = versand.verarbeite(rechnungen(leser));
+            schreibe(Path.of(args[5]), stand);
+            return stand;
+        }
+    }
+
+    private static Iterator<Rechnung> rechnungen(BinaerRechnungsLeser leser) {
+        return new Iterator<>() {
+            private boolean vorhanden = leser.naechste();
+
+            @Override
+            public boolean hasNext() {
+                return vorhanden;
+            }
+
+            @Override
+            public Rechnung next() {
+                if (!vorhanden) throw new NoSuchElementException();
+                var rechnung = leser.rechnung();
+                vorhanden = leser.naechste();
+                return rechnung;
+            }
+        };
+    }
+    //endregion
+
+    //region Teilergebnis
+    /*
+     * Teilergebnis := rechnungen:long Summe{3} abteilungen:int (Text Summe)* unsicher:int position:long*
+     * Summe        := anzahl:long netto:double mwst:double
+     * Text         := laenge:int utf8:byte[laenge], laenge -1 für null
+     * big-endian wie DataOutputStream
+     */
+
+    /**
+     * Schreibe über eine temporäre Datei, der Koordinator sieht das Teilergebnis ganz oder gar nicht.
+     */
+    static void schreibe(Path ziel, FortsetzbarerVersand.Stand stand) throws IOException {
+        var temp = ziel.resolveSibling(ziel.getFileName() + ".tmp");
+        try (var aus = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            var summen = stand.summen();
+            aus.writeLong(stand.position());
+            schreibe(aus, summen.privatkunden());
+            schreibe(aus, summen.businesskunden());
+            schreibe(aus, summen.steuerfreieBusinesskunden());
+            aus.writeInt(summen.abteilungen().size());
+            for (var abteilung : summen.abteilungen().entrySet()) {
+                schreibe(aus, abteilung.getKey());
+                schreibe(aus, abteilung.getValue());
+            }
+            aus.writeInt(stand.unsicher().size());
+            for (long position : stand.unsicher()) aus.writeLong(position);
+        }
+        Files.move(temp, ziel, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Anders als {@linkplain DataOutputStream#writeUTF(String)} ohne Grenze von 64 KB und mit {@code null}
+     */
+    private static void schreibe(DataOutputStream aus, String text) throws IOException {
+        if (text == null) {
+            aus.writeInt(-1);
+            return;
+        }
+        var utf8 = text.getBytes(StandardCharsets.UTF_8);
+        aus.writeInt(utf8.length);
+        aus.write(utf8);
+    }
+
+    private static void schreibe(DataOutputStream aus, MwStAuswertung.Summe summe) throws IOException {
+        aus.writeLong(summe.anzahl());
+        aus.writeDouble(summe.netto());
+        aus.writeDouble(summe.mwst());
+    }
+
+    static Teilergebnis lese(Path datei, int partition, int versuche) throws IOException {
+        try (var ein = new DataInputStream(new BufferedInputStream(Files.newInputStream(datei)))) {
+            long rechnungen = ein.readLong();
+            var privat = summe(ein);
+            var business = summe(ein);
+            var steuerfrei = summe(ein);
+            int anzahl = ein.readInt();
+            var abteilungen = new HashMap<String, MwStAuswertung.Summe>(anzahl * 2);
+            for (int i = 0; i < anzahl; i++) abteilungen.put(text(ein), summe(ein));
+            var unsicher = new ArrayList<Long>();
+            for (int i = ein.readInt(); i > 0; i--) unsicher.add(ein.readLong());
+            return new Teilergebnis(partition, rechnungen,
+                    new MwStAuswertung.Ergebnis(privat, business, steuerfrei, Collections.unmodifiableMap(abteilungen)),
+                    unsicher, versuche);
+        }
+    }
+
+    private static String text(DataInputStream ein) throws IOException {
+        int laenge = ein.readInt();
+        if (laenge == -1) return null;
+        if (laenge < 0) throw new IOException("Ungültige Textlänge %d".formatted(laenge));
+        var utf8 = ein.readNBytes(laenge);
+        if (utf8.length < laenge) throw new EOFException();
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static MwStAuswertung.Summe summe(DataInputStream ein) throws IOException {
+        long anzahl = ein.readLong();
+        double netto = ein.readDouble();
+        double mwst = ein.readDouble();
+        return anzahl == 0 ? MwStAuswertung.Summe.LEER : new MwStAuswertung.Summe(anzahl, netto, mwst);
+    }
+    //endregion
+
+    /**
+     * Schreibt an eine feste Position des Kanals und rückt nur die eigene Position vor, mehrere Abschnitte teilen sich
+     * so einen {@linkplain FileChannel}.
+     */
+    private static final class Abschnitt implements WritableByteChannel {
+        private final FileChannel channel;
+        private long position;
+
+        Abschnitt(FileChannel channel, long start) {
+            this.channel = channel;
+            this.position = start;
+        }
+
+        @Override
+        public int write(ByteBuffer quelle) throws IOException {
+            int geschrieben = channel.write(quelle, position);
+            position += geschrieben;
+            return geschrieben;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // der Kanal gehört dem Koordinator
+        }
+    }
+
+    /**
+     * Als Koordinator: {@code rechnungen.csv verzeichnis [worker]}, als Worker wie vom Koordinator gestartet mit den
+     * {@linkplain Dummy} Senken.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            arbeite(args, Dummy::sendViaMail, Dummy::storeInDB);
+            System.out.flush();
+            return;
+        }
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Erwartet rechnungen.csv verzeichnis [worker]");
+        }
+        int worker = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        var ergebnis = verteile(Path.of(args[0]), Path.of(args[1]), Konfiguration.lokal(worker));
+        for (var teil : ergebnis.partitionen()) {
+            System.out.printf("Partition %d: %d Rechnungen, %d Versuche, unsicher %s%n", teil.partition(),
+                    teil.rechnungen(), teil.versuche(), teil.unsicher());
+        }
+        System.out.printf("%d Rechnungen, %s%n", ergebnis.rechnungen(), ergebnis.summen().gesamt());
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.mboegers.dop.invoice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.StructuredTaskScope;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Versende einen Stapel Rechnungen mit je einem virtuellen Thread pro Rechnung.
+ * Verwendet
+ * JEP 444: Virtual Threads https://openjdk.org/jeps/444
+ * JEP 453: Structured Concurrency (Preview) https://openjdk.org/jeps/453
+ * <p>
+ * Je Senke begrenzt ein {@linkplain Semaphore} die gleichzeitigen Aufrufe. Schlägt eine Rechnung fehl, werden die
+ * übrigen Rechnungen des Stapels trotzdem versendet und der Fehler im {@linkplain Ergebnis} gesammelt.
+ * {@snippet :
+ *   var versand = new VirtuellerVersand(Stil.DELEGATE, Dummy::sendViaMail, 16, Dummy::storeInDB, 4);
+ *   var ergebnis = versand.versende(rechnungen);
+ *}
+ */
+final class VirtuellerVersand {
+
+    /**
+     * Welche Implementierung aus {@linkplain Main} eine Rechnung behandelt
+     */
+    enum Stil {
+        /**
+         * {@linkplain Main#sendInvoiceFor(Rechnung, MailSenke, DbSenke)}
+         */
+        ONE_METHOD,
+        /**
+         * {@linkplain Main#sendInvoiceFor2(Rechnung, MailSenke, DbSenke)}
+         */
+        DELEGATE;
+
+        void send(Rechnung rechnung, MailSenke mail, DbSenke db) {
+            switch (this) {
+                case ONE_METHOD -> Main.sendInvoiceFor(rechnung, mail, db);
+                case DELEGATE -> Main.sendInvoiceFor2(rechnung, mail, db);
+            }
+        }
+    }
+
+    /**
+     * @param index Position der Rechnung im Stapel
+     */
+    record Fehlschlag(int index, Rechnung rechnung, Throwable fehler) {
+    }
+
+    record Ergebnis(int versendet, List<Fehlschlag> fehlschlaege) {
+        Ergebnis {
+            fehlschlaege = List.copyOf(fehlschlaege);
+        }
+    }
+
+    private final Stil stil;
+    private final MailSenke mail;
+    private final DbSenke db;
+
+    /**
+     * @param mailLimit maximale Anzahl gleichzeitiger Aufrufe der Mail-Senke
+     * @param dbLimit   maximale Anzahl gleichzeitiger Aufrufe der Datenbank-Senke
+     */
+    VirtuellerVersand(Stil stil, MailSenke mail, int mailLimit, DbSenke db, int dbLimit) {
+        this.stil = requireNonNull(stil);
+        requireNonNull(mail);
+        requireNonNull(db);
+        var mailPermits = permits(mailLimit);
+        var dbPermits = permits(dbLimit);
+        this.mail = (empf, txt) -> {
+            acquire(mailPermits);
+            try {
+                mail.sendViaMail(empf, txt);
+            } finally {
+                mailPermits.release();
+            }
+        };
+        this.db = (abt, wert) -> {
+            acquire(dbPermits);
+            try {
+                db.storeInDB(abt, wert);
+            } finally {
+                dbPermits.release();
+            }
+        };
+    }
+
+    /**
+     * Versende alle Rechnungen des Stapels und warte bis jede Rechnung versendet oder fehlgeschlagen ist.
+     */
+    Ergebnis versende(List<? extends Rechnung> rechnungen) throws InterruptedException {
+        try (var scope = new StructuredTaskScope<Void>("versand", Thread.ofVirtual().name("versand-", 0).factory())) {
+            var aufgaben = new ArrayList<StructuredTaskScope.Subtask<Void>>(rechnungen.size());
+            for (var rechnung : rechnungen) {
+                aufgaben.add(scope.fork(() -> {
+                    stil.send(rechnung, mail, db);
+                    return null;
+                }));
+            }
+            scope.join();
+
+            int versendet = 0;
+            var fehlschlaege = new ArrayList<Fehlschlag>();
+            for (int i = 0; i < aufgaben.size(); i++) {
+                var aufgabe = aufgaben.get(i);
+                switch (aufgabe.state()) {
+                    case SUCCESS -> versendet++;
+                    case FAILED -> fehlschlaege.add(new Fehlschlag(i, rechnungen.get(i), aufgabe.exception()));
+                    case UNAVAILABLE -> throw new IllegalStateException("Rechnung %d nicht abgeschlossen".formatted(i));
+                }
+            }
+            return new Ergebnis(versendet, fehlschlaege);
+        }
+    }
+
+    private static Semaphore permits(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit %d muss positiv sein".formatted(limit));
+        return new Semaphore(limit);
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Unterbrochen beim Warten auf die Senke", e);
+        }
+    }
+}
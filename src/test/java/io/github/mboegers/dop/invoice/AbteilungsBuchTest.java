@@ -0,0 +1,126 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the {@linkplain AbteilungsBuch} sums internal charges per department under concurrent posting and
+ * whether every snapshot contains each posting completely or not at all
+ *
+ * @see AbteilungsBuch
+ */
+class AbteilungsBuchTest {
+
+    private static final String[] ABTEILUNGEN = {"HR", "IT", "Vertrieb", "Einkauf"};
+
+    @Test
+    void sumsPerDepartment() {
+        var buch = new AbteilungsBuch(4);
+        buch.buche("HR", 10d);
+        buch.buche(new InterneVerechnung("IT", 5d));
+        buch.storeInDB("HR", 2.5d);
+
+        var schnappschuss = buch.schnappschuss();
+
+        assertThat(schnappschuss.nummer()).isEqualTo(1);
+        assertThat(schnappschuss.konten()).containsOnly(
+                Map.entry("HR", new AbteilungsBuch.Konto(2, 12.5d)),
+                Map.entry("IT", new AbteilungsBuch.Konto(1, 5d)));
+        assertThat(schnappschuss.gesamt()).isEqualTo(new AbteilungsBuch.Konto(3, 17.5d));
+        assertThat(buch.konto("HR")).isEqualTo(new AbteilungsBuch.Konto(2, 12.5d));
+        assertThat(buch.konto("Vertrieb")).isEqualTo(AbteilungsBuch.Konto.LEER);
+    }
+
+    @Test
+    void snapshotReportsChangesSincePreviousOne() {
+        var buch = new AbteilungsBuch(4);
+        buch.buche("HR", 10d);
+        buch.schnappschuss();
+        buch.buche("IT", 1d);
+        buch.buche("IT", 2d);
+
+        var schnappschuss = buch.schnappschuss();
+
+        assertThat(schnappschuss.seitVorigem()).containsOnly(Map.entry("IT", new AbteilungsBuch.Konto(2, 3d)));
+        assertThat(schnappschuss.eintraege()).containsExactly(new BatchDbSenke.Eintrag("IT", 3d));
+        assertThat(schnappschuss.konten()).containsOnlyKeys("HR", "IT");
+    }
+
+    @Test
+    void worksAsDbSenke() {
+        var buch = new AbteilungsBuch();
+
+        Main.sendInvoiceFor(new InterneVerechnung("HR", 10d), (_, _) -> {
+        }, buch);
+
+        assertThat(buch.schnappschuss().konten()).containsOnly(Map.entry("HR", new AbteilungsBuch.Konto(1, 10d)));
+    }
+
+    @Test
+    void concurrentPostingsAreNeitherLostNorTorn() throws Exception {
+        var buch = new AbteilungsBuch(4);
+        int threads = 8;
+        int buchungen = 20_000;
+        var start = new CountDownLatch(1);
+        var fertig = new AtomicBoolean();
+        var schnappschuesse = new ArrayList<AbteilungsBuch.Schnappschuss>();
+
+        try (var executor = Executors.newFixedThreadPool(threads + 1)) {
+            var erzeuger = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                erzeuger.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < buchungen; i++) buche(buch, thread, i);
+                    return null;
+                }));
+            }
+            var leser = executor.submit(() -> {
+                start.await();
+                while (!fertig.get()) schnappschuesse.add(buch.schnappschuss());
+                return null;
+            });
+            start.countDown();
+            for (var f : erzeuger) f.get();
+            fertig.set(true);
+            leser.get();
+        }
+        schnappschuesse.add(buch.schnappschuss());
+
+        var summeDerAenderungen = new HashMap<String, AbteilungsBuch.Konto>();
+        for (var schnappschuss : schnappschuesse) {
+            // anzahl and summe of one Konto stem from the same postings of 1.0 or 2.0
+            schnappschuss.konten().values().forEach(konto ->
+                    assertThat(konto.summe()).isBetween(konto.anzahl() * 1d, konto.anzahl() * 2d));
+            schnappschuss.seitVorigem().forEach((abteilung, konto) ->
+                    summeDerAenderungen.merge(abteilung, konto, AbteilungsBuch.Konto::plus));
+        }
+        var letzter = schnappschuesse.getLast();
+        assertThat(letzter.gesamt()).isEqualTo(new AbteilungsBuch.Konto(2L * threads * buchungen,
+                3d * threads * buchungen));
+        assertThat(summeDerAenderungen).isEqualTo(letzter.konten());
+        assertThat(schnappschuesse).extracting(AbteilungsBuch.Schnappschuss::nummer).isSorted();
+    }
+
+    private static void buche(AbteilungsBuch buch, int thread, int i) {
+        int abteilung = (thread + i) % ABTEILUNGEN.length;
+        buch.buche(ABTEILUNGEN[abteilung], 1d);
+        buch.buche(ABTEILUNGEN[(abteilung + 1) % ABTEILUNGEN.length], 2d);
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThatThrownBy(() -> new AbteilungsBuch(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AbteilungsBuch(1).buche(null, 1d)).isInstanceOf(NullPointerException.class);
+    }
+}
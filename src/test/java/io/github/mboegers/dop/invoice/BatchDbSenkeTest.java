@@ -0,0 +1,162 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the {@linkplain BatchDbSenke} coalesces internal charges into batches, flushes on size, time and
+ * close and reports its batch statistics
+ *
+ * @see BatchDbSenke
+ */
+class BatchDbSenkeTest {
+
+    private static final Duration LANGE = Duration.ofHours(1);
+
+    private final List<List<BatchDbSenke.Eintrag>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void flushOnSize() {
+        try (var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(3, LANGE, false), batches::add)) {
+            senke.storeInDB("HR", 1d);
+            senke.storeInDB("IT", 2d);
+            assertThat(batches).isEmpty();
+
+            senke.storeInDB("HR", 3d);
+
+            assertThat(batches).containsExactly(List.of(
+                    new BatchDbSenke.Eintrag("HR", 1d),
+                    new BatchDbSenke.Eintrag("HR", 3d),
+                    new BatchDbSenke.Eintrag("IT", 2d)));
+        }
+    }
+
+    @Test
+    void flushOnTime() throws InterruptedException {
+        try (var senke = new BatchDbSenke(
+                new BatchDbSenke.Konfiguration(1_000, Duration.ofMillis(20), false), batches::add)) {
+            senke.storeInDB("HR", 1d);
+
+            for (int i = 0; i < 100 && batches.isEmpty(); i++) Thread.sleep(10);
+
+            assertThat(batches).containsExactly(List.of(new BatchDbSenke.Eintrag("HR", 1d)));
+        }
+    }
+
+    @Test
+    void vorsummierenWritesOneEntryPerAbteilung() {
+        var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1_000, LANGE, true), batches::add);
+        senke.storeInDB("HR", 1d);
+        senke.storeInDB("IT", 2d);
+        senke.storeInDB("HR", 3d);
+
+        senke.close();
+
+        assertThat(batches).containsExactly(List.of(
+                new BatchDbSenke.Eintrag("HR", 4d),
+                new BatchDbSenke.Eintrag("IT", 2d)));
+        var statistik = senke.statistik();
+        assertThat(statistik.flushes()).isEqualTo(1L);
+        assertThat(statistik.verrechnungen()).isEqualTo(3L);
+        assertThat(statistik.geschrieben()).isEqualTo(2L);
+        assertThat(statistik.maxBatch()).isEqualTo(2);
+        assertThat(statistik.mittlereBatchGroesse()).isEqualTo(2d);
+    }
+
+    @Test
+    void usableFromSendInvoiceFor() {
+        try (var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1_000, LANGE, true), batches::add)) {
+            Main.sendInvoiceFor(new InterneVerechnung("HR", 10d), (empf, txt) -> {
+            }, senke);
+            Main.sendInvoiceFor2(new InterneVerechnung("HR", 5d), (empf, txt) -> {
+            }, senke);
+        }
+
+        assertThat(batches).containsExactly(List.of(new BatchDbSenke.Eintrag("HR", 15d)));
+    }
+
+    @Test
+    void failedFlushKeepsEntries() {
+        var fehler = new AtomicBoolean(true);
+        var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1_000, LANGE, false), eintraege -> {
+            if (fehler.getAndSet(false)) throw new IllegalStateException("Datenbank nicht erreichbar");
+            batches.add(eintraege);
+        });
+        senke.storeInDB("HR", 1d);
+
+        assertThatThrownBy(senke::flush).isInstanceOf(IllegalStateException.class);
+        senke.storeInDB("IT", 2d);
+        senke.close();
+
+        assertThat(batches).containsExactly(List.of(
+                new BatchDbSenke.Eintrag("HR", 1d),
+                new BatchDbSenke.Eintrag("IT", 2d)));
+    }
+
+    @Test
+    void failedSizeFlushAcceptsChargeExactlyOnce() {
+        var aufrufe = new AtomicInteger();
+        var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1, LANGE, false), eintraege -> {
+            if (aufrufe.incrementAndGet() == 1) throw new IllegalStateException("Datenbank nicht erreichbar");
+            batches.add(eintraege);
+        });
+
+        senke.storeInDB("HR", 1d);
+        // no inline retry while pausing after the failure, the charge is still accepted
+        senke.storeInDB("IT", 2d);
+
+        assertThat(aufrufe.get()).isEqualTo(1);
+        assertThat(senke.statistik().fehlschlaege()).isEqualTo(1L);
+        assertThat(senke.statistik().letzterFehler()).hasMessage("Datenbank nicht erreichbar");
+
+        senke.close();
+
+        assertThat(batches).containsExactly(List.of(
+                new BatchDbSenke.Eintrag("HR", 1d),
+                new BatchDbSenke.Eintrag("IT", 2d)));
+        assertThat(senke.statistik().verrechnungen()).isEqualTo(2L);
+    }
+
+    @Test
+    void manyChargesPerAbteilung() {
+        try (var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(100, LANGE, true), batches::add)) {
+            for (int i = 1; i <= 100; i++) senke.storeInDB(i % 2 == 0 ? "HR" : "IT", i);
+        }
+
+        assertThat(batches).containsExactly(List.of(
+                new BatchDbSenke.Eintrag("IT", 2500d),
+                new BatchDbSenke.Eintrag("HR", 2550d)));
+    }
+
+    @Test
+    void failedCloseKeepsEntriesForNextClose() {
+        var fehler = new AtomicBoolean(true);
+        var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1_000, LANGE, false), eintraege -> {
+            if (fehler.getAndSet(false)) throw new IllegalStateException("Datenbank nicht erreichbar");
+            batches.add(eintraege);
+        });
+        senke.storeInDB("HR", 1d);
+
+        assertThatThrownBy(senke::close).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> senke.storeInDB("IT", 2d)).isInstanceOf(IllegalStateException.class);
+        senke.close();
+
+        assertThat(batches).containsExactly(List.of(new BatchDbSenke.Eintrag("HR", 1d)));
+    }
+
+    @Test
+    void closedSinkRejectsCharges() {
+        var senke = new BatchDbSenke(new BatchDbSenke.Konfiguration(1, LANGE, false), batches::add);
+        senke.close();
+
+        assertThatThrownBy(() -> senke.storeInDB("HR", 1d)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether every permitted subtype of {@linkplain Rechnung} and {@linkplain Kunde} survives a round trip through
+ * {@linkplain BinaerRechnungsSchreiber} and {@linkplain BinaerRechnungsLeser}
+ *
+ * @see BinaerRechnungsLeser
+ * @see BinaerRechnungsSchreiber
+ */
+class BinaerRechnungsFormatTest {
+
+    private static final List<Rechnung> ALLE_ARTEN = List.of(
+            new InterneVerechnung("HR", 10d),
+            new InterneVerechnung(null, -0d),
+            new ExternVersandt(new Privatkunde("Merlin Bögershausen", "merlin@dummy.de"), 1055.55d),
+            new ExternVersandt(new Privatkunde("", null), Double.NaN),
+            new ExternVersandt(new Businesskunde("adesso SE", "info@dummy.de", false), Double.MAX_VALUE),
+            new ExternVersandt(new Businesskunde("Eureg JUG €", "", true), Double.MIN_VALUE));
+
+    @TempDir
+    Path verzeichnis;
+
+    @Test
+    void testDataCoversAllPermittedSubtypes() {
+        var rechnungsArten = ALLE_ARTEN.stream().map(Object::getClass).distinct().toList();
+        var kundenArten = ALLE_ARTEN.stream()
+                .<Kunde>mapMulti((r, ziel) -> {
+                    if (r instanceof ExternVersandt(var kunde, _)) ziel.accept(kunde);
+                })
+                .map(Object::getClass).distinct().toList();
+
+        assertThat(rechnungsArten).containsExactlyInAnyOrder(Rechnung.class.getPermittedSubclasses());
+        assertThat(kundenArten).containsExactlyInAnyOrder(Kunde.class.getPermittedSubclasses());
+    }
+
+    @Test
+    void roundTripInMemory() {
+        var leser = new BinaerRechnungsLeser(MemorySegment.ofArray(kodiere(ALLE_ARTEN, 64 * 1024)));
+
+        assertThat(liesAlle(leser)).isEqualTo(ALLE_ARTEN);
+    }
+
+    @Test
+    void roundTripWithInvoicesLargerThanBuffer() {
+        var langerName = "x".repeat(100);
+        var rechnungen = new ArrayList<>(ALLE_ARTEN);
+        rechnungen.add(new ExternVersandt(new Privatkunde(langerName, langerName), 1d));
+        rechnungen.addAll(ALLE_ARTEN);
+
+        var leser = new BinaerRechnungsLeser(MemorySegment.ofArray(kodiere(rechnungen, 64)));
+
+        assertThat(liesAlle(leser)).isEqualTo(rechnungen);
+    }
+
+    @Test
+    void roundTripViaMappedFile() throws IOException {
+        var datei = verzeichnis.resolve("rechnungen.bin");
+        try (var channel = FileChannel.open(datei, CREATE, WRITE);
+             var schreiber = new BinaerRechnungsSchreiber(channel)) {
+            ALLE_ARTEN.forEach(schreiber::schreibe);
+        }
+
+        try (var leser = BinaerRechnungsLeser.oeffne(datei)) {
+            assertThat(liesAlle(leser)).isEqualTo(ALLE_ARTEN);
+        }
+    }
+
+    @Test
+    void flyweightReadsFieldsWithoutRecords() {
+        var leser = new BinaerRechnungsLeser(MemorySegment.ofArray(kodiere(ALLE_ARTEN, 64 * 1024)));
+        var typen = new ArrayList<Byte>();
+        var abzug = new ArrayList<Boolean>();
+
+        while (leser.naechste()) {
+            typen.add(leser.typ());
+            abzug.add(leser.isVorsteuerAbzugsberechtigt());
+        }
+
+        assertThat(typen).containsExactly(RechnungsBatch.INTERN, RechnungsBatch.INTERN,
+                RechnungsBatch.PRIVATKUNDE, RechnungsBatch.PRIVATKUNDE,
+                RechnungsBatch.BUSINESSKUNDE, RechnungsBatch.BUSINESSKUNDE);
+        assertThat(abzug).containsExactly(false, false, false, false, false, true);
+    }
+
+    @Test
+    void textBytesWithoutCopy() {
+        var leser = new BinaerRechnungsLeser(MemorySegment.ofArray(kodiere(ALLE_ARTEN, 64 * 1024)));
+        leser.naechste();
+        leser.naechste();
+        leser.naechste();
+
+        var name = leser.text1Bytes().toArray(ValueLayout.JAVA_BYTE);
+        var mail = leser.text2Bytes().toArray(ValueLayout.JAVA_BYTE);
+        leser.naechste();
+
+        assertThat(new String(name, StandardCharsets.UTF_8)).isEqualTo("Merlin Bögershausen");
+        assertThat(new String(mail, StandardCharsets.UTF_8)).isEqualTo("merlin@dummy.de");
+        assertThat(leser.text2Bytes().byteSize()).isZero();
+    }
+
+    @Test
+    void noInvoiceFormat() {
+        assertThatThrownBy(() -> new BinaerRechnungsLeser(MemorySegment.ofArray(new byte[]{1, 2, 3, 4, 5})))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] kodiere(List<Rechnung> rechnungen, int puffergroesse) {
+        var bytes = new ByteArrayOutputStream();
+        try (var schreiber = new BinaerRechnungsSchreiber(Channels.newChannel(bytes), puffergroesse)) {
+            rechnungen.forEach(schreiber::schreibe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Rechnung> liesAlle(BinaerRechnungsLeser leser) {
+        var rechnungen = new ArrayList<Rechnung>();
+        while (leser.naechste()) rechnungen.add(leser.rechnung());
+        return rechnungen;
+    }
+}
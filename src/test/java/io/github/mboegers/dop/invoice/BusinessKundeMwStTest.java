@@ -3,8 +3,6 @@ package io.github.mboegers.dop.invoice;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 
-import java.util.function.BiFunction;
-
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -19,37 +17,37 @@ class BusinessKundeMwStTest {
 
     @ParameterizedTest(name = "Businesskunde with Vorsteuerabzugsberechtigung pay 0.0 MwSt for 100.0 invoices")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void invoiceValue100WithVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void invoiceValue100WithVorsteuerabzug(MwStFunktion sut) {
         var businessCustomer = new Businesskunde("test", "test@dummy.de", true);
         var invoiceAmount = 100d;
         var expectedMwSt = 0d;
 
-        var actualMwSt = sut.apply(businessCustomer, invoiceAmount);
+        var actualMwSt = sut.calculateMwSt(businessCustomer, invoiceAmount);
 
         assertThat(actualMwSt).isEqualTo(expectedMwSt);
     }
 
     @ParameterizedTest(name = "Businesskunde with Vorsteuerabzugsberechtigung pay 0.0 MwSt for 500.0 invoices")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void invoiceValue500WithVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void invoiceValue500WithVorsteuerabzug(MwStFunktion sut) {
         var businessCustomer = new Businesskunde("test", "test@dummy.de", true);
         var invoiceAmount = 500d;
         var expectedMwSt = 0d;
 
-        var actualMwSt = sut.apply(businessCustomer, invoiceAmount);
+        var actualMwSt = sut.calculateMwSt(businessCustomer, invoiceAmount);
 
         assertThat(actualMwSt).isEqualTo(expectedMwSt);
     }
 
     @ParameterizedTest(name = "Name has no effect to MwSt for Businesskunde with Vorsteuerabzugsberechtigung")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void customerNameChangedWithVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void customerNameChangedWithVorsteuerabzug(MwStFunktion sut) {
         var testCustomer = new Businesskunde("Test", "other@dummy.de", true);
         var otherCustomer = new Businesskunde("Other", "Test@dummy.de", true);
         var invoiceAmount = 100d;
 
-        var testCustomerMwSt = sut.apply(testCustomer, invoiceAmount);
-        var otherCustomerMwSt = sut.apply(otherCustomer, invoiceAmount);
+        var testCustomerMwSt = sut.calculateMwSt(testCustomer, invoiceAmount);
+        var otherCustomerMwSt = sut.calculateMwSt(otherCustomer, invoiceAmount);
 
         assertThat(testCustomerMwSt)
                 .withFailMessage("Businesskunde with name 'Test' has to pay different MwSt as with name 'Other'")
@@ -58,37 +56,37 @@ class BusinessKundeMwStTest {
 
     @ParameterizedTest(name = "Businesskunde with Vorsteuerabzugsberechtigung pay 10.0 MwSt for 100.0 invoices")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void invoiceValue100WithoutVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void invoiceValue100WithoutVorsteuerabzug(MwStFunktion sut) {
         var businessCustomer = new Businesskunde("test", "test@dummy.de", false);
         var invoiceAmount = 100d;
         var expectedMwSt = 10d;
 
-        var actualMwSt = sut.apply(businessCustomer, invoiceAmount);
+        var actualMwSt = sut.calculateMwSt(businessCustomer, invoiceAmount);
 
         assertThat(actualMwSt).isEqualTo(expectedMwSt);
     }
 
     @ParameterizedTest(name = "Businesskunde without Vorsteuerabzugsberechtigung pay 50.0 MwSt for 500.0 invoices")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void invoiceValue500WithoutVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void invoiceValue500WithoutVorsteuerabzug(MwStFunktion sut) {
         var businessCustomer = new Businesskunde("test", "test@dummy.de", false);
         var invoiceAmount = 500d;
         var expectedMwSt = 50d;
 
-        var actualMwSt = sut.apply(businessCustomer, invoiceAmount);
+        var actualMwSt = sut.calculateMwSt(businessCustomer, invoiceAmount);
 
         assertThat(actualMwSt).isEqualTo(expectedMwSt);
     }
 
     @ParameterizedTest(name = "Name has no effect to MwSt for Businesskunde without Vorsteuerabzugsberechtigung")
     @ArgumentsSource(CalculateMwStMethodProvider.class)
-    void customerNameChangedWithoutVorsteuerabzug(BiFunction<Kunde, Double, Double> sut) {
+    void customerNameChangedWithoutVorsteuerabzug(MwStFunktion sut) {
         var testCustomer = new Businesskunde("Test", "other@dummy.de", false);
         var otherCustomer = new Businesskunde("Other", "Test@dummy.de", false);
         var invoiceAmount = 100d;
 
-        var testCustomerMwSt = sut.apply(testCustomer, invoiceAmount);
-        var otherCustomerMwSt = sut.apply(otherCustomer, invoiceAmount);
+        var testCustomerMwSt = sut.calculateMwSt(testCustomer, invoiceAmount);
+        var otherCustomerMwSt = sut.calculateMwSt(otherCustomer, invoiceAmount);
 
         assertThat(testCustomerMwSt)
                 .withFailMessage("Businesskunde with name 'Test' has to pay different MwSt as with name 'Other'")
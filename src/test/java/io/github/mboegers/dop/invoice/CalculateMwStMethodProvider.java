@@ -5,7 +5,6 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 
 import java.util.List;
-import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
 /**
@@ -15,7 +14,7 @@ import java.util.stream.Stream;
  * @see org.junit.jupiter.params.ParameterizedTest
  */
 class CalculateMwStMethodProvider implements ArgumentsProvider {
-    private static final List<BiFunction<Kunde, Double, Double>> methods = List.of(
+    private static final List<MwStFunktion> methods = List.of(
             MwStRechner.PlainOOP::calculateMwSt,
             MwStRechner.InstanceOfPattern::calculateMwSt,
             MwStRechner.SwichExpression::calculateMwSt,
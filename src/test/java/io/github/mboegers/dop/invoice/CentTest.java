@@ -0,0 +1,136 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether {@linkplain Cent} rounds like {@linkplain BigDecimal} and the cent overloads of the
+ * {@linkplain MwStRechner} strategies agree with each other
+ *
+ * @see Cent
+ * @see MwStRechner
+ */
+class CentTest {
+
+    interface CentRechner {
+        long calculateMwSt(Kunde kunde, long wertCent, RoundingMode rundung);
+    }
+
+    private static final List<CentRechner> RECHNER = List.of(
+            MwStRechner.PlainOOP::calculateMwSt,
+            MwStRechner.InstanceOfPattern::calculateMwSt,
+            MwStRechner.SwichExpression::calculateMwSt,
+            MwStRechner.SwitchExpressionWhenClause::calculateMwSt,
+            MwStRechner.SwitchExpressionWhenClauseDeconstruct::calculateMwSt,
+            MwStRechner.SwitchExpressionWhenClauseDeconstructVar::calculateMwSt,
+            MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt);
+
+    @ParameterizedTest
+    @EnumSource(value = RoundingMode.class, mode = EnumSource.Mode.EXCLUDE, names = "UNNECESSARY")
+    void divisionRoundsLikeBigDecimal(RoundingMode rundung) {
+        var random = new Random(42L);
+        for (int i = 0; i < 10_000; i++) {
+            long dividend = random.nextLong(-1_000_000, 1_000_000);
+            long divisor = random.nextBoolean() ? random.nextLong(1, 1_000) : -random.nextLong(1, 1_000);
+            if (i % 10 == 0) dividend = random.nextLong(-1_000, 1_000) * divisor + divisor / 2; // genau .5 bei geradem Divisor
+
+            var erwartet = BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), 0, rundung).longValueExact();
+
+            assertThat(Cent.teile(dividend, divisor, rundung)).as("%d / %d", dividend, divisor).isEqualTo(erwartet);
+        }
+    }
+
+    @Test
+    void halfCentsPerRoundingMode() {
+        assertThat(Cent.prozent(105525, 10, RoundingMode.HALF_UP)).isEqualTo(10553);
+        assertThat(Cent.prozent(105525, 10, RoundingMode.HALF_EVEN)).isEqualTo(10552);
+        assertThat(Cent.prozent(105535, 10, RoundingMode.HALF_EVEN)).isEqualTo(10554);
+        assertThat(Cent.prozent(-105525, 10, RoundingMode.HALF_UP)).isEqualTo(-10553);
+        assertThat(Cent.prozent(-105525, 10, RoundingMode.FLOOR)).isEqualTo(-10553);
+        assertThat(Cent.prozent(-105525, 10, RoundingMode.CEILING)).isEqualTo(-10552);
+        assertThatThrownBy(() -> Cent.prozent(105525, 10, RoundingMode.UNNECESSARY))
+                .isInstanceOf(ArithmeticException.class);
+        assertThat(Cent.prozent(105520, 10, RoundingMode.UNNECESSARY)).isEqualTo(10552);
+    }
+
+    @Test
+    void conversionFromEuro() {
+        assertThat(Cent.von(1055.25d, RoundingMode.HALF_UP)).isEqualTo(105525);
+        assertThat(Cent.von(0.1d + 0.2d, RoundingMode.HALF_UP)).isEqualTo(30);
+        assertThat(Cent.von(0.125d, RoundingMode.HALF_EVEN)).isEqualTo(12);
+        assertThat(Cent.von(-0.125d, RoundingMode.HALF_UP)).isEqualTo(-13);
+        assertThatThrownBy(() -> Cent.von(Double.NaN, RoundingMode.HALF_UP)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cent.von(1e300, RoundingMode.HALF_UP)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void overflowIsDetected() {
+        assertThatThrownBy(() -> Cent.plus(Long.MAX_VALUE, 1)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cent.minus(Long.MIN_VALUE, 1)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cent.prozent(Long.MAX_VALUE / 2, 10, RoundingMode.HALF_UP))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cent.teile(Long.MIN_VALUE, -1, RoundingMode.HALF_UP))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cent.anteil(Long.MIN_VALUE, 1, -1, RoundingMode.HALF_UP))
+                .isInstanceOf(ArithmeticException.class);
+        assertThat(Cent.teile(Long.MIN_VALUE, 1, RoundingMode.HALF_UP)).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    void formatsTwoDecimals() {
+        assertThat(Cent.append(new StringBuilder(), 105525)).hasToString("1055.25");
+        assertThat(Cent.append(new StringBuilder(), 7)).hasToString("0.07");
+        assertThat(Cent.append(new StringBuilder(), -5)).hasToString("-0.05");
+        assertThat(Cent.append(new StringBuilder(), Long.MIN_VALUE))
+                .hasToString(Cent.alsBigDecimal(Long.MIN_VALUE).toPlainString());
+    }
+
+    @Test
+    void sumsStayExact() {
+        long summe = 0;
+        double summeDouble = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            summe = Cent.plus(summe, Cent.prozent(1, 10, RoundingMode.UP));
+            summeDouble += 0.01d;
+        }
+
+        assertThat(summe).isEqualTo(1_000_000);
+        assertThat(summeDouble).isNotEqualTo(10_000d);
+    }
+
+    @Test
+    void centRateMatchesDoubleRate() {
+        assertThat(MwStRechner.SATZ).isEqualTo(0.1d);
+        assertThat(Cent.euro(Cent.prozent(105500, Cent.MWST_PROZENT, RoundingMode.UNNECESSARY)))
+                .isEqualTo(MwStRechner.mwst(1055d, false));
+    }
+
+    @Test
+    void allStrategiesAgree() {
+        var kunden = List.of(
+                new Privatkunde("Merlin", "merlin@dummy.de"),
+                new Businesskunde("adesso SE", "info@dummy.de", false),
+                new Businesskunde("Eureg JUG", "jug@dummy.de", true));
+        var random = new Random(4711L);
+        for (int i = 0; i < 1_000; i++) {
+            var kunde = kunden.get(i % kunden.size());
+            long wert = random.nextLong(0, 10_000_000);
+            long erwartet = kunde instanceof Businesskunde b && b.isVorsteuerAbzugsberechtigt()
+                    ? 0L
+                    : BigDecimal.valueOf(wert).divide(BigDecimal.TEN, 0, RoundingMode.HALF_EVEN).longValueExact();
+
+            for (var rechner : RECHNER) {
+                assertThat(rechner.calculateMwSt(kunde, wert, RoundingMode.HALF_EVEN)).isEqualTo(erwartet);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the {@linkplain CsvRechnungsLeser} reads invoices from a memory mapped CSV file as records and
+ * directly into the columns of a {@linkplain RechnungsBatch}
+ *
+ * @see CsvRechnungsLeser
+ */
+class CsvRechnungsLeserTest {
+
+    @TempDir
+    Path verzeichnis;
+
+    @Test
+    void readsAllInvoiceTypes() throws IOException {
+        var datei = schreibe("""
+                # Typ;Name;Mail;Vorsteuerabzug;Wert
+                I;HR;10
+                B;adesso SE;info@dummy.de;false;10.5\r
+
+                B;Eureg JUG;jug@dummy.de;true;-0.25
+                P;Merlin Bögershausen;merlin@dummy.de;1.0E7
+                """);
+
+        try (var rechnungen = CsvRechnungsLeser.oeffne(datei).stream()) {
+            assertThat(rechnungen).containsExactly(
+                    new InterneVerechnung("HR", 10d),
+                    new ExternVersandt(new Businesskunde("adesso SE", "info@dummy.de", false), 10.5d),
+                    new ExternVersandt(new Businesskunde("Eureg JUG", "jug@dummy.de", true), -0.25d),
+                    new ExternVersandt(new Privatkunde("Merlin Bögershausen", "merlin@dummy.de"), 1e7d));
+        }
+    }
+
+    @Test
+    void amountsLikeParseDouble() throws IOException {
+        var random = new Random(42L);
+        var text = new StringBuilder();
+        var erwartet = new ArrayList<Double>();
+        for (int i = 0; i < 10_000; i++) {
+            var wert = switch (i % 3) {
+                case 0 -> String.valueOf(random.nextInt(10_000_000) / 100d);
+                case 1 -> String.valueOf(random.nextDouble() * 1e6);
+                default -> "%d.%03d".formatted(random.nextInt(1000), random.nextInt(1000));
+            };
+            text.append("I;HR;").append(wert).append('\n');
+            erwartet.add(Double.parseDouble(wert));
+        }
+
+        try (var rechnungen = CsvRechnungsLeser.oeffne(schreibe(text.toString())).stream()) {
+            assertThat(rechnungen.map(r -> ((InterneVerechnung) r).wert()).toList()).isEqualTo(erwartet);
+        }
+    }
+
+    @Test
+    void repeatedTextsAreShared() throws IOException {
+        var datei = schreibe("I;HR;1\nI;HR;2\n");
+
+        try (var rechnungen = CsvRechnungsLeser.oeffne(datei).stream()) {
+            var gelesen = rechnungen.map(r -> ((InterneVerechnung) r).abteilung()).toList();
+            assertThat(gelesen.get(0)).isSameAs(gelesen.get(1));
+        }
+    }
+
+    @Test
+    void batchesMatchRecords() throws IOException {
+        var text = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            text.append(switch (i % 4) {
+                case 0 -> "I;HR;%d.5%n".formatted(i);
+                case 1 -> "P;p%d;p@dummy.de;%d.25%n".formatted(i, i);
+                case 2 -> "B;b%d;b@dummy.de;true;%d%n".formatted(i, i);
+                default -> "B;b%d;b@dummy.de;false;%d.75%n".formatted(i, i);
+            });
+        }
+        var datei = schreibe(text.toString());
+        List<Rechnung> rechnungen;
+        try (var stream = CsvRechnungsLeser.oeffne(datei).stream()) {
+            rechnungen = stream.toList();
+        }
+        var erwartet = new double[rechnungen.size()];
+        MwStRechner.Batch.calculateMwSt(RechnungsBatch.of(rechnungen), erwartet);
+
+        var batch = new RechnungsBatch(128);
+        var mwst = new double[128];
+        var berechnet = new ArrayList<Double>();
+        try (var leser = CsvRechnungsLeser.oeffne(datei)) {
+            while (leser.naechsterBatch(batch, 128) > 0) {
+                MwStRechner.Batch.calculateMwSt(batch, mwst);
+                for (int i = 0; i < batch.size(); i++) berechnet.add(mwst[i]);
+                batch.clear();
+            }
+        }
+
+        assertThat(berechnet).containsExactly(Arrays.stream(erwartet).boxed().toArray(Double[]::new));
+    }
+
+    @Test
+    void malformedLineReportsLineNumber() throws IOException {
+        var datei = schreibe("I;HR;1\nX;HR;1\n");
+
+        try (var rechnungen = CsvRechnungsLeser.oeffne(datei).stream()) {
+            assertThatThrownBy(rechnungen::toList)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Zeile 2");
+        }
+    }
+
+    @Test
+    void wrongNumberOfFields() throws IOException {
+        var datei = schreibe("P;Merlin;10\n");
+
+        try (var rechnungen = CsvRechnungsLeser.oeffne(datei).stream()) {
+            assertThatThrownBy(rechnungen::toList).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void corruptFlagIsRejected() throws IOException {
+        for (var flag : List.of("txyz", "tRUE", "fnord", "True", "")) {
+            var datei = schreibe("B;adesso SE;info@adesso.de;%s;10\n".formatted(flag));
+
+            try (var rechnungen = CsvRechnungsLeser.oeffne(datei).stream()) {
+                assertThatThrownBy(rechnungen::toList)
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("kein Wahrheitswert");
+            }
+        }
+    }
+
+    private Path schreibe(String inhalt) throws IOException {
+        return Files.writeString(Files.createTempFile(verzeichnis, "rechnungen", ".csv"), inhalt);
+    }
+}
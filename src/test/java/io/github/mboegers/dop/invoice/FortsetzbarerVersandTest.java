@@ -0,0 +1,224 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Check whether the {@linkplain FortsetzbarerVersand} resumes after a crash without sending an invoice twice and
+ * restores the running sums from its log
+ *
+ * @see FortsetzbarerVersand
+ */
+class FortsetzbarerVersandTest {
+
+    private static final FortsetzbarerVersand.Konfiguration KONFIGURATION =
+            new FortsetzbarerVersand.Konfiguration(4, 8, 1 << 20);
+
+    /**
+     * simulates the death of the JVM, in contrast to an exception of the sink nothing is logged
+     */
+    private static final class Absturz extends Error {
+    }
+
+    @TempDir
+    Path verzeichnis;
+
+    private final List<String> mails = new ArrayList<>();
+    private final List<String> buchungen = new ArrayList<>();
+
+    private static List<Rechnung> rechnungen(int anzahl) {
+        return IntStream.range(0, anzahl).<Rechnung>mapToObj(i -> switch (i % 4) {
+            case 0 -> new InterneVerechnung("Abt" + i % 3, i);
+            case 1 -> new ExternVersandt(new Privatkunde("Privat" + i, "p" + i), i);
+            case 2 -> new ExternVersandt(new Businesskunde("Business" + i, "b" + i, true), i);
+            default -> new ExternVersandt(new Businesskunde("Business" + i, "b" + i, false), i);
+        }).toList();
+    }
+
+    private FortsetzbarerVersand oeffne(FortsetzbarerVersand.Konfiguration konfiguration, int absturzBeiMail)
+            throws IOException {
+        return FortsetzbarerVersand.oeffne(verzeichnis.resolve("versand.log"), konfiguration,
+                (empf, _) -> {
+                    if (mails.size() == absturzBeiMail) throw new Absturz();
+                    mails.add(empf);
+                },
+                (abt, wert) -> buchungen.add(abt + wert));
+    }
+
+    private static void assertSummen(MwStAuswertung.Ergebnis ist, List<Rechnung> rechnungen) {
+        var soll = MwStAuswertung.auswerten(rechnungen);
+        assertThat(ist.abteilungen()).isEqualTo(soll.abteilungen());
+        assertThat(ist.gesamt().anzahl()).isEqualTo(soll.gesamt().anzahl());
+        assertThat(ist.gesamt().netto()).isCloseTo(soll.gesamt().netto(), within(1e-9));
+        assertThat(ist.gesamt().mwst()).isCloseTo(soll.gesamt().mwst(), within(1e-9));
+    }
+
+    @Test
+    void processesAllInvoices() throws IOException {
+        var rechnungen = rechnungen(30);
+
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            assertThat(stand.position()).isEqualTo(30);
+            assertThat(stand.unsicher()).isEmpty();
+            assertSummen(stand.summen(), rechnungen);
+        }
+        assertThat(mails).hasSize(22).doesNotHaveDuplicates();
+        assertThat(buchungen).hasSize(8).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void resumesAfterCrashWithoutSendingTwice() throws IOException {
+        var rechnungen = rechnungen(30);
+
+        try (var versand = oeffne(KONFIGURATION, 15)) {
+            assertThatThrownBy(() -> versand.verarbeite(rechnungen.iterator())).isInstanceOf(Absturz.class);
+        }
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            // the 16th mail belongs to position 21, whose delivery started but was never confirmed
+            assertThat(stand.unsicher()).containsExactly(21L);
+            assertThat(stand.position()).isEqualTo(30);
+            assertSummen(stand.summen(), rechnungen);
+        }
+        assertThat(mails).hasSize(21).doesNotHaveDuplicates().doesNotContain("p21");
+        assertThat(buchungen).hasSize(8).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void checkpointKeepsNullAndLongDepartments() throws IOException {
+        var rechnungen = new ArrayList<>(rechnungen(30));
+        rechnungen.set(0, new InterneVerechnung(null, 1d));
+        rechnungen.set(4, new InterneVerechnung("A".repeat(70_000), 4d));
+
+        try (var versand = oeffne(KONFIGURATION, 15)) {
+            assertThatThrownBy(() -> versand.verarbeite(rechnungen.iterator())).isInstanceOf(Absturz.class);
+        }
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            assertThat(stand.summen().abteilungen()).containsKeys(null, "A".repeat(70_000));
+            assertSummen(stand.summen(), rechnungen);
+        }
+    }
+
+    @Test
+    void remembersUncertainInvoiceAcrossCrashes() throws IOException {
+        var rechnungen = rechnungen(30);
+
+        try (var versand = oeffne(KONFIGURATION, 15)) {
+            assertThatThrownBy(() -> versand.verarbeite(rechnungen.iterator())).isInstanceOf(Absturz.class);
+        }
+        try (var versand = oeffne(KONFIGURATION, 16)) {
+            assertThatThrownBy(() -> versand.verarbeite(rechnungen.iterator())).isInstanceOf(Absturz.class);
+        }
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            assertThat(stand.unsicher()).containsExactly(21L, 23L);
+            assertSummen(stand.summen(), rechnungen);
+        }
+        assertThat(mails).hasSize(20).doesNotHaveDuplicates().doesNotContain("p21", "b23");
+    }
+
+    @Test
+    void resendsInvoiceAfterSinkException() throws IOException {
+        var rechnungen = rechnungen(10);
+        var fehler = new boolean[]{true};
+        var log = verzeichnis.resolve("versand.log");
+        MailSenke mail = (empf, _) -> {
+            if (empf.equals("p5") && fehler[0]) throw new IllegalStateException("Server nicht erreichbar");
+            mails.add(empf);
+        };
+
+        try (var versand = FortsetzbarerVersand.oeffne(log, KONFIGURATION, mail, (abt, _) -> buchungen.add(abt))) {
+            assertThatThrownBy(() -> versand.verarbeite(rechnungen.iterator()))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        fehler[0] = false;
+        try (var versand = FortsetzbarerVersand.oeffne(log, KONFIGURATION, mail, (abt, _) -> buchungen.add(abt))) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            assertThat(stand.unsicher()).isEmpty();
+            assertSummen(stand.summen(), rechnungen);
+        }
+        assertThat(mails).containsExactly("p1", "b2", "b3", "p5", "b6", "b7", "p9");
+        assertThat(buchungen).hasSize(3);
+    }
+
+    @Test
+    void continuesUnboundedSourceAfterCheckpoint() throws IOException {
+        var rechnungen = rechnungen(40);
+
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            versand.verarbeite(rechnungen.subList(0, 20).iterator());
+        }
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            assertThat(versand.stand().position()).isEqualTo(20);
+            assertSummen(versand.stand().summen(), rechnungen.subList(0, 20));
+
+            var stand = versand.verarbeite(rechnungen.iterator());
+
+            assertThat(stand.position()).isEqualTo(40);
+            assertSummen(stand.summen(), rechnungen);
+        }
+        assertThat(mails).hasSize(30).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void ignoresTornEntryAtEndOfLog() throws IOException {
+        var rechnungen = rechnungen(12);
+        var log = verzeichnis.resolve("versand.log");
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            versand.verarbeite(rechnungen.iterator());
+        }
+        long groesse = Files.size(log);
+        Files.write(log, new byte[]{40, 0, 0, 0, FortsetzbarerVersand.ZUGESTELLT, 1, 2}, StandardOpenOption.APPEND);
+
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            assertThat(versand.stand().position()).isEqualTo(12);
+        }
+        assertThat(Files.size(log)).isEqualTo(groesse);
+    }
+
+    @Test
+    void compactsLogAtCheckpoint() throws IOException {
+        var rechnungen = rechnungen(400);
+        var log = verzeichnis.resolve("versand.log");
+
+        try (var versand = oeffne(new FortsetzbarerVersand.Konfiguration(4, 8, 512), -1)) {
+            var stand = versand.verarbeite(rechnungen.iterator());
+            assertSummen(stand.summen(), rechnungen);
+        }
+
+        assertThat(Files.size(log)).isLessThanOrEqualTo(512);
+        try (var versand = oeffne(KONFIGURATION, -1)) {
+            assertThat(versand.stand().position()).isEqualTo(400);
+            assertSummen(versand.stand().summen(), rechnungen);
+        }
+    }
+
+    @Test
+    void rejectsInvalidKonfiguration() {
+        assertThatThrownBy(() -> new FortsetzbarerVersand.Konfiguration(0, 8, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FortsetzbarerVersand.Konfiguration(8, 4, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FortsetzbarerVersand.Konfiguration(4, 8, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.mboegers.dop.invoice;
+
+import io.github.mboegers.dop.invoice.Instrumentierung.Art;
+import io.github.mboegers.dop.invoice.Instrumentierung.Stufe;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check whether the {@linkplain LatenzHistogramm} reports quantiles within its precision and whether
+ * {@linkplain Instrumentierung} records every stage per invoice kind in histograms and as JFR events
+ *
+ * @see LatenzHistogramm
+ * @see Instrumentierung
+ */
+class InstrumentierungTest {
+
+    private static final List<Rechnung> RECHNUNGEN = List.of(
+            new InterneVerechnung("HR", 10d),
+            new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 10d),
+            new ExternVersandt(new Businesskunde("adesso SE", "info@dummy.de", false), 10d),
+            new ExternVersandt(new Businesskunde("Eureg JUG", "jug@dummy.de", true), 10d));
+
+    @TempDir
+    Path verzeichnis;
+
+    @Test
+    void quantilesWithinBucketPrecision() {
+        var histogramm = new LatenzHistogramm();
+        var random = new Random(42L);
+        var werte = new long[100_000];
+        for (int i = 0; i < werte.length; i++) {
+            werte[i] = (long) Math.exp(random.nextDouble() * Math.log(1e9));
+            histogramm.aufzeichnen(werte[i]);
+        }
+        Arrays.sort(werte);
+
+        var schnappschuss = histogramm.schnappschuss();
+
+        assertThat(schnappschuss.anzahl()).isEqualTo(werte.length);
+        assertThat(schnappschuss.max()).isEqualTo(werte[werte.length - 1]);
+        assertGenau(schnappschuss.p50(), werte[werte.length / 2 - 1]);
+        assertGenau(schnappschuss.p99(), werte[werte.length * 99 / 100 - 1]);
+        assertGenau(schnappschuss.p999(), werte[werte.length * 999 / 1000 - 1]);
+    }
+
+    @Test
+    void bucketBoundsCoverAllValues() {
+        for (long wert : new long[]{0, 1, 31, 32, 33, 63, 64, 1_000, 1_000_000_007L, Long.MAX_VALUE}) {
+            int index = LatenzHistogramm.index(wert);
+            assertThat(LatenzHistogramm.obereGrenze(index)).as("Wert %d", wert).isGreaterThanOrEqualTo(wert);
+            if (index > 0) {
+                assertThat(LatenzHistogramm.obereGrenze(index - 1)).as("Wert %d", wert).isLessThan(wert);
+            }
+        }
+    }
+
+    @Test
+    void concurrentRecording() {
+        var histogramm = new LatenzHistogramm();
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            for (int t = 0; t < 4; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) histogramm.aufzeichnen(i % 1000);
+                });
+            }
+        }
+
+        assertThat(histogramm.schnappschuss().anzahl()).isEqualTo(400_000);
+        assertThat(histogramm.schnappschuss().max()).isEqualTo(999);
+    }
+
+    @Test
+    void recordsStagesPerInvoiceKind() {
+        var messung = new Instrumentierung(true, false);
+        var mails = new ArrayList<String>();
+
+        for (var rechnung : RECHNUNGEN) {
+            Main.sendInvoiceFor2(rechnung, (_, text) -> mails.add(text), (_, _) -> {
+            }, messung);
+            Main.sendInvoiceFor(rechnung, (_, text) -> mails.add(text), (_, _) -> {
+            }, messung);
+        }
+
+        assertThat(mails).hasSize(6);
+        for (var art : Art.values()) assertThat(messung.anzahl(art)).isEqualTo(2);
+        var bericht = messung.bericht();
+        assertThat(bericht.get(Stufe.DB)).containsOnlyKeys(Art.INTERN);
+        assertThat(bericht.get(Stufe.MAIL)).containsOnlyKeys(Art.PRIVAT, Art.BUSINESS, Art.BUSINESS_STEUERFREI);
+        assertThat(bericht.get(Stufe.TEXT).get(Art.PRIVAT).anzahl()).isEqualTo(2);
+        assertThat(bericht.get(Stufe.GESAMT)).hasSize(Art.values().length);
+
+        messung.zuruecksetzen();
+
+        assertThat(messung.bericht()).isEmpty();
+    }
+
+    @Test
+    void disabledRecordsNothing() {
+        for (var rechnung : RECHNUNGEN) {
+            Main.sendInvoiceFor2(rechnung, (_, _) -> {
+            }, (_, _) -> {
+            }, Instrumentierung.AUS);
+        }
+
+        assertThat(Instrumentierung.AUS.bericht()).isEmpty();
+    }
+
+    @Test
+    void emitsJfrEvents() throws IOException {
+        var messung = new Instrumentierung(false, true);
+        var datei = verzeichnis.resolve("rechnungen.jfr");
+
+        try (var recording = new Recording()) {
+            recording.enable(Instrumentierung.StufenEreignis.NAME);
+            recording.start();
+            for (var rechnung : RECHNUNGEN) {
+                Main.sendInvoiceFor2(rechnung, (_, _) -> {
+                }, (_, _) -> {
+                }, messung);
+            }
+            recording.stop();
+            recording.dump(datei);
+        }
+
+        var ereignisse = RecordingFile.readAllEvents(datei).stream()
+                .filter(e -> e.getEventType().getName().equals(Instrumentierung.StufenEreignis.NAME))
+                .toList();
+        // intern: DB + GESAMT, extern: MWST, TEXT, MAIL + GESAMT
+        assertThat(ereignisse).hasSize(2 + 3 * 4);
+        assertThat(ereignisse).extracting(e -> e.getString("art")).contains("INTERN", "BUSINESS_STEUERFREI");
+        assertThat(ereignisse).allSatisfy(e -> assertThat(e.getLong("dauer")).isNotNegative());
+        assertThat(messung.bericht()).isEmpty();
+    }
+
+    private static void assertGenau(long gemessen, long exakt) {
+        assertThat(gemessen).isBetween(exakt, exakt + exakt / LatenzHistogramm.UNTERTEILUNG + 1);
+    }
+}
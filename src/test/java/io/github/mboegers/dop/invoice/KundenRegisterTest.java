@@ -0,0 +1,133 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the off-heap {@linkplain KundenRegister} deduplicates equal customers, gives back the same
+ * customers and lets {@linkplain KompakteRechnungen} calculate the same MwSt as
+ * {@linkplain MwStRechner.SwitchExpressionWhenClauseUnnamed}
+ *
+ * @see KundenRegister
+ * @see KompakteRechnungen
+ */
+class KundenRegisterTest {
+
+    private static final List<Kunde> KUNDEN = List.of(
+            new Privatkunde("Merlin Bögershausen", "merlin@dummy.de"),
+            new Privatkunde("Merlin Bögershausen", "other@dummy.de"),
+            new Privatkunde(null, null),
+            new Businesskunde("adesso SE", "info@dummy.de", false),
+            new Businesskunde("adesso SE", "info@dummy.de", true),
+            new Businesskunde("", "", true),
+            new Privatkunde("Ærø € \uD83D\uDE00", "ü@dummy.de"),
+            new Privatkunde("Ærø € \uD83D\uDE00", "u@dummy.de"));
+
+    @Test
+    void equalCustomersShareOneId() {
+        try (var register = new KundenRegister(16, 1024)) {
+            var ids = KUNDEN.stream().mapToInt(register::intern).toArray();
+            var wieder = KUNDEN.stream().map(k -> switch (k) {
+                case Privatkunde(var n, var m) -> new Privatkunde(n, m);
+                case Businesskunde(var n, var m, var a) -> new Businesskunde(n, m, a);
+            }).mapToInt(register::intern).toArray();
+
+            assertThat(ids).doesNotHaveDuplicates().containsExactly(0, 1, 2, 3, 4, 5, 6, 7);
+            assertThat(wieder).containsExactly(ids);
+            assertThat(register.anzahl()).isEqualTo(KUNDEN.size());
+        }
+    }
+
+    @Test
+    void customersRoundTrip() {
+        try (var register = new KundenRegister(16, 1024)) {
+            var ids = KUNDEN.stream().mapToInt(register::intern).toArray();
+
+            for (int i = 0; i < ids.length; i++) {
+                assertThat(register.kunde(ids[i])).isEqualTo(KUNDEN.get(i));
+            }
+        }
+    }
+
+    @Test
+    void viewReadsWithoutRecord() {
+        try (var register = new KundenRegister(16, 1024)) {
+            int id = register.intern(new Businesskunde("adesso SE", "info@dummy.de", true));
+            var ansicht = register.new Ansicht().zeige(id);
+
+            assertThat(ansicht.typ()).isEqualTo(RechnungsBatch.BUSINESSKUNDE);
+            assertThat(ansicht.isVorsteuerAbzugsberechtigt()).isTrue();
+            assertThat(ansicht.name()).isEqualTo("adesso SE");
+            assertThat(ansicht.mail()).isEqualTo("info@dummy.de");
+            assertThat(ansicht.nameBytes().byteSize()).isEqualTo(9L);
+        }
+    }
+
+    @Test
+    void compactInvoicesCalculateSameMwSt() {
+        try (var register = new KundenRegister(16, 1024)) {
+            var rechnungen = new KompakteRechnungen(register, 4);
+            for (int i = 0; i < 100; i++) {
+                rechnungen.add(new ExternVersandt(KUNDEN.get(i % KUNDEN.size()), i * 1.5d));
+            }
+            var mwst = new double[rechnungen.size()];
+
+            rechnungen.calculateMwSt(mwst);
+
+            assertThat(register.anzahl()).isEqualTo(KUNDEN.size());
+            for (int i = 0; i < rechnungen.size(); i++) {
+                var rechnung = rechnungen.rechnung(i);
+                assertThat(rechnung).isEqualTo(new ExternVersandt(KUNDEN.get(i % KUNDEN.size()), i * 1.5d));
+                assertThat(mwst[i]).isEqualTo(
+                        MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(rechnung.kunde(), rechnung.wert()));
+            }
+        }
+    }
+
+    @Test
+    void loneSurrogateMatchesItsEncoding() {
+        try (var register = new KundenRegister(16, 1024)) {
+            int id = register.intern(new Privatkunde("a\uD800b", null));
+
+            assertThat(register.intern(new Privatkunde("a\uD800b", null))).isEqualTo(id);
+            assertThat(register.kunde(id)).isEqualTo(new Privatkunde("a?b", null));
+        }
+    }
+
+    @Test
+    void knownCustomerDoesNotAllocate() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try (var register = new KundenRegister(16, 1024)) {
+            KUNDEN.forEach(register::intern);
+            for (int i = 0; i < 10_000; i++) register.intern(KUNDEN.get(i % KUNDEN.size()));
+
+            long vorher = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 10_000; i++) register.intern(KUNDEN.get(i % KUNDEN.size()));
+            long alloziert = threads.getCurrentThreadAllocatedBytes() - vorher;
+
+            // a byte[] and a record per lookup would be well above one byte per call
+            assertThat(alloziert).isLessThan(10_000L);
+        }
+    }
+
+    @Test
+    void fullRegister() {
+        try (var register = new KundenRegister(1, 1024)) {
+            register.intern(KUNDEN.get(0));
+
+            assertThatThrownBy(() -> register.intern(KUNDEN.get(1))).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void unknownId() {
+        try (var register = new KundenRegister(4, 1024)) {
+            assertThatThrownBy(() -> register.kunde(0)).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+}
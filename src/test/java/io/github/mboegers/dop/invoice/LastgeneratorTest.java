@@ -0,0 +1,148 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Check whether the {@linkplain Lastgenerator} produces reproducible invoices with the configured mix, Zipfian
+ * customer repetition and amount distribution
+ *
+ * @see Lastgenerator
+ */
+class LastgeneratorTest {
+
+    private static final int ANZAHL = 100_000;
+
+    private static Lastgenerator.Konfiguration konfiguration(Lastgenerator.Mischung mischung, double zipf) {
+        return new Lastgenerator.Konfiguration(mischung, 1_000, zipf, Lastgenerator.Betraege.GLEICHVERTEILT, 7L);
+    }
+
+    private static String art(Rechnung rechnung) {
+        return switch (rechnung) {
+            case InterneVerechnung _ -> "intern";
+            case ExternVersandt(Privatkunde _, _) -> "privat";
+            case ExternVersandt(Businesskunde b, _) when b.isVorsteuerAbzugsberechtigt() -> "businessAbzug";
+            case ExternVersandt(Businesskunde _, _) -> "business";
+        };
+    }
+
+    @Test
+    void sameSeedSameInvoices() {
+        var a = new Lastgenerator(Lastgenerator.Konfiguration.STANDARD).erzeuge(1_000);
+        var b = new Lastgenerator(Lastgenerator.Konfiguration.STANDARD).erzeuge(1_000);
+
+        assertThat(a).isEqualTo(b);
+    }
+
+    @Test
+    void followsConfiguredMix() {
+        var mischung = new Lastgenerator.Mischung(1d, 5d, 2d, 2d);
+        var rechnungen = new Lastgenerator(konfiguration(mischung, 1d)).erzeuge(ANZAHL);
+
+        var anteile = rechnungen.stream()
+                .collect(Collectors.groupingBy(LastgeneratorTest::art, Collectors.counting()));
+
+        assertThat(anteile.get("intern") / (double) ANZAHL).isCloseTo(0.1d, within(0.01d));
+        assertThat(anteile.get("privat") / (double) ANZAHL).isCloseTo(0.5d, within(0.01d));
+        assertThat(anteile.get("business") / (double) ANZAHL).isCloseTo(0.2d, within(0.01d));
+        assertThat(anteile.get("businessAbzug") / (double) ANZAHL).isCloseTo(0.2d, within(0.01d));
+    }
+
+    @Test
+    void omitsKindsWithoutShare() {
+        var nurPrivat = new Lastgenerator.Mischung(0d, 1d, 0d, 0d);
+        var rechnungen = new Lastgenerator(konfiguration(nurPrivat, 1d)).erzeuge(10_000);
+
+        assertThat(rechnungen).allMatch(r -> art(r).equals("privat"));
+    }
+
+    @Test
+    void repeatsCustomersZipfian() {
+        var nurPrivat = new Lastgenerator.Mischung(0d, 1d, 0d, 0d);
+        var rechnungen = new Lastgenerator(konfiguration(nurPrivat, 1d)).erzeuge(ANZAHL);
+
+        Map<Kunde, Long> haeufigkeit = rechnungen.stream()
+                .map(r -> ((ExternVersandt) r).kunde())
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        long haeufigster = Collections.max(haeufigkeit.values());
+        var erster = new Privatkunde("Privatkunde 0", "privat0@kunde.example");
+        var zweiter = new Privatkunde("Privatkunde 1", "privat1@kunde.example");
+
+        // with s = 1 and 1000 ranks rank 1 gets 1 / H(1000) = 13.4% and rank 2 half of that
+        assertThat(haeufigkeit.get(erster)).isEqualTo(haeufigster);
+        assertThat(haeufigkeit.get(erster) / (double) ANZAHL).isCloseTo(0.134d, within(0.01d));
+        assertThat(haeufigkeit.get(zweiter) / (double) haeufigkeit.get(erster)).isCloseTo(0.5d, within(0.05d));
+    }
+
+    @Test
+    void repeatedCustomerIsSameInstance() {
+        var nurPrivat = new Lastgenerator.Mischung(0d, 1d, 0d, 0d);
+        var rechnungen = new Lastgenerator(konfiguration(nurPrivat, 1d)).erzeuge(ANZAHL);
+
+        var instanzen = Collections.newSetFromMap(new IdentityHashMap<Kunde, Boolean>());
+        rechnungen.forEach(r -> instanzen.add(((ExternVersandt) r).kunde()));
+
+        assertThat(instanzen).hasSizeLessThanOrEqualTo(1_000);
+    }
+
+    @Test
+    void zipfZeroIsUniform() {
+        var nurPrivat = new Lastgenerator.Mischung(0d, 1d, 0d, 0d);
+        var rechnungen = new Lastgenerator(konfiguration(nurPrivat, 0d)).erzeuge(ANZAHL);
+
+        var haeufigkeit = rechnungen.stream()
+                .collect(Collectors.groupingBy(r -> ((ExternVersandt) r).kunde(), Collectors.counting()));
+
+        assertThat(haeufigkeit).hasSize(1_000);
+        assertThat(Collections.max(haeufigkeit.values())).isLessThan(200L);
+    }
+
+    @Test
+    void amountsFollowDistributionInCents() {
+        for (var betraege : Lastgenerator.Betraege.values()) {
+            var konfig = new Lastgenerator.Konfiguration(Lastgenerator.Mischung.STANDARD, 100, 1d, betraege, 1L);
+            var werte = new Lastgenerator(konfig).erzeuge(10_000).stream()
+                    .mapToDouble(r -> switch (r) {
+                        case InterneVerechnung(_, double wert) -> wert;
+                        case ExternVersandt(_, double wert) -> wert;
+                    })
+                    .toArray();
+
+            for (double wert : werte) {
+                assertThat(wert).isPositive();
+                assertThat(Math.round(wert * 100d) / 100d).isEqualTo(wert);
+            }
+            switch (betraege) {
+                case FEST -> assertThat(werte).containsOnly(100d);
+                case GLEICHVERTEILT -> assertThat(Arrays.stream(werte)).allMatch(w -> w >= 1d && w <= 10_000d);
+                case LOGNORMAL -> {
+                    var sortiert = werte.clone();
+                    Arrays.sort(sortiert);
+                    assertThat(sortiert[sortiert.length / 2]).isCloseTo(250d, within(25d));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidKonfiguration() {
+        assertThatThrownBy(() -> new Lastgenerator.Mischung(0d, 0d, 0d, 0d))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Lastgenerator.Mischung(-1d, 1d, 0d, 0d))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> konfiguration(Lastgenerator.Mischung.STANDARD, -1d))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Lastgenerator.Konfiguration(Lastgenerator.Mischung.STANDARD, 0, 1d,
+                Lastgenerator.Betraege.FEST, 1L)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Check whether {@linkplain MwStAuswertung} sums net, MwSt and counts per customer class and department and gives
+ * bit-identical results for every parallelism
+ *
+ * @see MwStAuswertung
+ */
+class MwStAuswertungTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 8})
+    void sameResultForEveryParallelism(int parallelism) {
+        var rechnungen = MwStBatchTest.randomRechnungen(100_000, 42L);
+
+        var sequenziell = auswerten(rechnungen, 1);
+        var parallel = auswerten(rechnungen, parallelism);
+
+        assertThat(parallel).isEqualTo(sequenziell);
+    }
+
+    @Test
+    void groupsByCustomerClassAndDepartment() {
+        var rechnungen = List.of(
+                new InterneVerechnung("HR", 10d),
+                new InterneVerechnung("IT", 20d),
+                new InterneVerechnung("HR", 5d),
+                new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 100d),
+                new ExternVersandt(new Businesskunde("adesso SE", "info@dummy.de", false), 200d),
+                new ExternVersandt(new Businesskunde("Eureg JUG", "jug@dummy.de", true), 300d));
+
+        var ergebnis = MwStAuswertung.auswerten(rechnungen);
+
+        assertThat(ergebnis.privatkunden()).isEqualTo(new MwStAuswertung.Summe(1, 100d, 10d));
+        assertThat(ergebnis.businesskunden()).isEqualTo(new MwStAuswertung.Summe(1, 200d, 20d));
+        assertThat(ergebnis.steuerfreieBusinesskunden()).isEqualTo(new MwStAuswertung.Summe(1, 300d, 0d));
+        assertThat(ergebnis.abteilungen()).containsOnly(
+                entry("HR", new MwStAuswertung.Summe(2, 15d, 0d)),
+                entry("IT", new MwStAuswertung.Summe(1, 20d, 0d)));
+        assertThat(ergebnis.gesamt()).isEqualTo(new MwStAuswertung.Summe(6, 635d, 30d));
+    }
+
+    @Test
+    void linkedListSameAsArrayList() {
+        var rechnungen = MwStBatchTest.randomRechnungen(100_000, 42L);
+
+        assertThat(MwStAuswertung.auswerten(new LinkedList<>(rechnungen)))
+                .isEqualTo(MwStAuswertung.auswerten(new ArrayList<>(rechnungen)));
+    }
+
+    @Test
+    void matchesExactSums() {
+        var rechnungen = MwStBatchTest.randomRechnungen(200_000, 4711L);
+
+        var ergebnis = MwStAuswertung.auswerten(rechnungen);
+
+        assertThat(ergebnis.privatkunden().netto()).isCloseTo(
+                exakt(rechnungen, r -> r instanceof ExternVersandt(Privatkunde _, _), MwStAuswertungTest::wert),
+                within(1e-6));
+        assertThat(ergebnis.gesamt().netto())
+                .isCloseTo(exakt(rechnungen, _ -> true, MwStAuswertungTest::wert), within(1e-6));
+        assertThat(ergebnis.gesamt().mwst())
+                .isCloseTo(exakt(rechnungen, _ -> true, MwStBatchTest::expectedMwSt), within(1e-6));
+        assertThat(ergebnis.gesamt().anzahl()).isEqualTo(rechnungen.size());
+    }
+
+    @Test
+    void compensatesSmallAmounts() {
+        var rechnungen = new ArrayList<Rechnung>();
+        rechnungen.add(new InterneVerechnung("HR", 1e15d));
+        for (int i = 0; i < 100_000; i++) rechnungen.add(new InterneVerechnung("HR", 0.01d));
+
+        var netto = MwStAuswertung.auswerten(rechnungen).abteilungen().get("HR").netto();
+
+        assertThat(netto).isEqualTo(1e15d + 1_000d);
+    }
+
+    @Test
+    void emptyList() {
+        var ergebnis = MwStAuswertung.auswerten(List.of());
+
+        assertThat(ergebnis.gesamt()).isEqualTo(MwStAuswertung.Summe.LEER);
+        assertThat(ergebnis.abteilungen()).isEmpty();
+    }
+
+    @Test
+    void invoiceWithoutCustomer() {
+        assertThatThrownBy(() -> MwStAuswertung.auswerten(List.of(new ExternVersandt(null, 1d))))
+                .isInstanceOf(NullPointerException.class);
+    }
+
+    private static MwStAuswertung.Ergebnis auswerten(List<Rechnung> rechnungen, int parallelism) {
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            return MwStAuswertung.auswerten(rechnungen, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double wert(Rechnung rechnung) {
+        return switch (rechnung) {
+            case InterneVerechnung(_, var wert) -> wert;
+            case ExternVersandt(_, var wert) -> wert;
+        };
+    }
+
+    private static double exakt(List<Rechnung> rechnungen, Predicate<Rechnung> filter,
+                                ToDoubleFunction<Rechnung> betrag) {
+        return rechnungen.stream()
+                .filter(filter)
+                .map(r -> new BigDecimal(betrag.applyAsDouble(r)))
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .doubleValue();
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the columnar {@linkplain MwStRechner.Batch} and {@linkplain MwStRechner.Vectorized} calculate the
+ * same MwSt as {@linkplain MwStRechner.SwitchExpressionWhenClauseUnnamed} for every row of a
+ * {@linkplain RechnungsBatch}
+ *
+ * @see RechnungsBatch
+ * @see MwStRechner.Batch
+ * @see MwStRechner.Vectorized
+ */
+class MwStBatchTest {
+
+    static List<Rechnung> randomRechnungen(int size, long seed) {
+        var random = new Random(seed);
+        var rechnungen = new ArrayList<Rechnung>(size);
+        for (int i = 0; i < size; i++) {
+            var wert = random.nextDouble() * 10_000d;
+            rechnungen.add(switch (random.nextInt(4)) {
+                case 0 -> new InterneVerechnung("HR", wert);
+                case 1 -> new ExternVersandt(new Privatkunde("p" + i, "p@dummy.de"), wert);
+                case 2 -> new ExternVersandt(new Businesskunde("b" + i, "b@dummy.de", true), wert);
+                default -> new ExternVersandt(new Businesskunde("b" + i, "b@dummy.de", false), wert);
+            });
+        }
+        return rechnungen;
+    }
+
+    static double expectedMwSt(Rechnung rechnung) {
+        return switch (rechnung) {
+            case InterneVerechnung _ -> 0d;
+            case ExternVersandt(var kunde, var wert) ->
+                    MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert);
+        };
+    }
+
+    @Test
+    void sameMwStAsSwitchExpressionWhenClauseUnnamed() {
+        var rechnungen = randomRechnungen(1_000, 42L);
+        var batch = RechnungsBatch.of(rechnungen);
+        var mwst = new double[batch.size()];
+
+        MwStRechner.Batch.calculateMwSt(batch, mwst);
+
+        for (int i = 0; i < rechnungen.size(); i++) {
+            assertThat(mwst[i]).as("row %d: %s", i, rechnungen.get(i)).isEqualTo(expectedMwSt(rechnungen.get(i)));
+        }
+    }
+
+    @ParameterizedTest(name = "Vectorized matches scalar batch for {0} invoices")
+    @ValueSource(ints = {0, 1, 3, 7, 8, 9, 63, 64, 65, 127, 1_000})
+    void vectorizedSameMwStAsBatch(int size) {
+        var batch = RechnungsBatch.of(randomRechnungen(size, size));
+        var expected = new double[size];
+        var actual = new double[size];
+
+        MwStRechner.Batch.calculateMwSt(batch, expected);
+        MwStRechner.Vectorized.calculateMwSt(batch, actual);
+
+        assertThat(actual).containsExactly(expected);
+    }
+
+    @Test
+    void vectorizedDoesNotWriteBehindBatch() {
+        var batch = RechnungsBatch.of(randomRechnungen(5, 7L));
+        var mwst = new double[16];
+        Arrays.fill(mwst, -1d);
+
+        MwStRechner.Vectorized.calculateMwSt(batch, mwst);
+
+        assertThat(Arrays.copyOfRange(mwst, 5, 16)).containsOnly(-1d);
+    }
+
+    /**
+     * The build runs this class a second time without the module and {@code -DvectorApi=false}
+     */
+    @Test
+    void vectorApiModuleIsUsedUnlessDisabled() {
+        boolean erwartet = !"false".equals(System.getProperty("vectorApi"));
+
+        assertThat(MwStRechner.Vectorized.VECTOR_API).isEqualTo(erwartet);
+    }
+
+    @Test
+    void columnsKeepInvoiceOrder() {
+        var batch = RechnungsBatch.of(List.of(
+                new InterneVerechnung("HR", 1d),
+                new ExternVersandt(new Businesskunde("adesso SE", "", true), 2d),
+                new ExternVersandt(new Privatkunde("Merlin", ""), 3d)));
+
+        assertThat(batch.size()).isEqualTo(3);
+        assertThat(batch.kundenArt(0)).isEqualTo(RechnungsBatch.INTERN);
+        assertThat(batch.kundenArt(1)).isEqualTo(RechnungsBatch.BUSINESSKUNDE);
+        assertThat(batch.isVorsteuerAbzugsberechtigt(1)).isTrue();
+        assertThat(batch.kundenArt(2)).isEqualTo(RechnungsBatch.PRIVATKUNDE);
+        assertThat(batch.wert(2)).isEqualTo(3d);
+    }
+
+    @Test
+    void clearedBatchForgetsVorsteuerAbzug() {
+        var batch = new RechnungsBatch(2);
+        batch.add(new ExternVersandt(new Businesskunde("adesso SE", "", true), 100d));
+        batch.clear();
+        batch.add(new ExternVersandt(new Businesskunde("adesso SE", "", false), 100d));
+        var mwst = new double[1];
+
+        MwStRechner.Batch.calculateMwSt(batch, mwst);
+
+        assertThat(mwst[0]).isEqualTo(10d);
+    }
+
+    @Test
+    void rechnungWithoutKunde() {
+        var batch = new RechnungsBatch(1);
+
+        assertThatThrownBy(() -> batch.add(new ExternVersandt(null, 100d)))
+                .isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    void resultColumnTooSmall() {
+        var batch = RechnungsBatch.of(randomRechnungen(10, 1L));
+
+        assertThatThrownBy(() -> MwStRechner.Batch.calculateMwSt(batch, new double[5]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
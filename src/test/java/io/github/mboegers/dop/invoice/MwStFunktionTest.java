@@ -0,0 +1,90 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the bulk variants of {@linkplain MwStFunktion} calculate the same MwSt as the single call for every
+ * strategy inside {@linkplain MwStRechner}
+ *
+ * @see MwStFunktion
+ * @see MwStRechner
+ */
+class MwStFunktionTest {
+
+    record Strategie(String name, MwStFunktion mwst) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static Stream<Strategie> strategien() {
+        return Stream.of(
+                new Strategie("PlainOOP", MwStRechner.PlainOOP::calculateMwSt),
+                new Strategie("InstanceOfPattern", MwStRechner.InstanceOfPattern::calculateMwSt),
+                new Strategie("SwichExpression", MwStRechner.SwichExpression::calculateMwSt),
+                new Strategie("SwitchExpressionWhenClause", MwStRechner.SwitchExpressionWhenClause::calculateMwSt),
+                new Strategie("SwitchExpressionWhenClauseDeconstruct",
+                        MwStRechner.SwitchExpressionWhenClauseDeconstruct::calculateMwSt),
+                new Strategie("SwitchExpressionWhenClauseDeconstructVar",
+                        MwStRechner.SwitchExpressionWhenClauseDeconstructVar::calculateMwSt),
+                new Strategie("SwitchExpressionWhenClauseUnnamed",
+                        MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt));
+    }
+
+    private static final Kunde[] KUNDEN = {
+            new Privatkunde("p", "p@dummy.de"),
+            new Businesskunde("b", "b@dummy.de", true),
+            new Businesskunde("b", "b@dummy.de", false),
+            new Privatkunde("q", "q@dummy.de")};
+    private static final double[] WERTE = {100d, 200d, 300d, 0.05d};
+
+    @ParameterizedTest
+    @MethodSource("strategien")
+    void columnsMatchSingleCalls(Strategie strategie) {
+        var mwst = new double[KUNDEN.length];
+
+        strategie.mwst().calculateMwSt(KUNDEN, WERTE, mwst);
+
+        for (int i = 0; i < KUNDEN.length; i++) {
+            assertThat(mwst[i]).isEqualTo(strategie.mwst().calculateMwSt(KUNDEN[i], WERTE[i]));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategien")
+    void streamMatchesSingleCalls(Strategie strategie) {
+        var kunde = new Businesskunde("b", "b@dummy.de", false);
+
+        assertThat(strategie.mwst().calculateMwSt(kunde, DoubleStream.of(WERTE)).toArray())
+                .containsExactly(DoubleStream.of(WERTE).map(w -> strategie.mwst().calculateMwSt(kunde, w)).toArray());
+        assertThat(strategie.mwst().calculateMwSt(kunde, DoubleStream.of(100d, 500d)).toArray())
+                .containsExactly(10d, 50d);
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategien")
+    void rejectsTooSmallColumns(Strategie strategie) {
+        assertThatThrownBy(() -> strategie.mwst().calculateMwSt(KUNDEN, new double[3], new double[4]))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> strategie.mwst().calculateMwSt(KUNDEN, WERTE, new double[3]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(CalculateMwStMethodProvider.class)
+    void defaultColumnsRejectNullKunde(MwStFunktion sut) {
+        var kunden = new Kunde[]{KUNDEN[0], null};
+
+        assertThatThrownBy(() -> sut.calculateMwSt(kunden, new double[2], new double[2]))
+                .isInstanceOf(NullPointerException.class);
+    }
+}
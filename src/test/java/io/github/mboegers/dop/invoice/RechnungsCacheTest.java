@@ -0,0 +1,120 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check whether the {@linkplain RechnungsCache} reuses MwSt and text for equal invoices, evicts the least recently
+ * used invoices and reports its metrics
+ *
+ * @see RechnungsCache
+ */
+class RechnungsCacheTest {
+
+    private static final ExternVersandt ABO = new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 9.99d);
+
+    @Test
+    void equalInvoicesAreComputedOnce() {
+        var berechnet = new AtomicInteger();
+        var cache = new RechnungsCache(100, 4, (k, w) -> {
+            berechnet.incrementAndGet();
+            return MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(k, w);
+        }, Main::produceInvoiceText);
+
+        var text = cache.text(ABO);
+        var nochmal = cache.text(new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 9.99d));
+
+        assertThat(nochmal).isSameAs(text).isEqualTo(Main.produceInvoiceText(ABO.kunde(), 9.99d, 9.99d * 0.1d));
+        assertThat(cache.mwst(ABO)).isEqualTo(9.99d * 0.1d);
+        assertThat(berechnet).hasValue(1);
+        assertThat(cache.statistik()).satisfies(s -> {
+            assertThat(s.treffer()).isEqualTo(2);
+            assertThat(s.fehlschlaege()).isEqualTo(1);
+            assertThat(s.eintraege()).isEqualTo(1);
+            assertThat(s.geschaetzteBytes()).isGreaterThan(2L * text.length());
+            assertThat(s.trefferquote()).isEqualTo(2d / 3d);
+        });
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        var cache = new RechnungsCache(2, 1, MwStRechner.SwitchExpressionWhenClauseUnnamed::calculateMwSt,
+                Main::produceInvoiceText);
+        var zwei = new ExternVersandt(ABO.kunde(), 2d);
+        var drei = new ExternVersandt(ABO.kunde(), 3d);
+
+        cache.mwst(ABO);
+        cache.mwst(zwei);
+        cache.mwst(ABO);
+        cache.mwst(drei);
+        cache.mwst(ABO);
+        cache.mwst(zwei);
+
+        var statistik = cache.statistik();
+        assertThat(statistik.treffer()).isEqualTo(2);
+        assertThat(statistik.verdraengt()).isEqualTo(2);
+        assertThat(statistik.eintraege()).isEqualTo(2);
+    }
+
+    @Test
+    void clearingReleasesMemory() {
+        var cache = new RechnungsCache(100);
+        for (int i = 0; i < 50; i++) cache.text(new ExternVersandt(ABO.kunde(), i));
+
+        cache.leeren();
+
+        assertThat(cache.statistik().eintraege()).isZero();
+        assertThat(cache.statistik().geschaetzteBytes()).isZero();
+    }
+
+    @Test
+    void boundedUnderConcurrentDispatch() throws Exception {
+        var cache = new RechnungsCache(64);
+        var mail = new ArrayList<String>();
+        var rechnungen = new ArrayList<Rechnung>();
+        for (int i = 0; i < 10_000; i++) {
+            rechnungen.add(new ExternVersandt(new Businesskunde("b" + i % 100, "b@dummy.de", i % 3 == 0), i % 100));
+        }
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var rechnung : rechnungen) {
+                executor.submit(() -> Main.sendInvoiceFor2(rechnung, (_, text) -> {
+                    synchronized (mail) {
+                        mail.add(text);
+                    }
+                }, (_, _) -> {
+                }, cache));
+            }
+        }
+
+        var statistik = cache.statistik();
+        assertThat(mail).hasSize(rechnungen.size());
+        assertThat(statistik.treffer() + statistik.fehlschlaege()).isEqualTo(rechnungen.size());
+        assertThat(statistik.eintraege()).isLessThanOrEqualTo(64);
+        var erwartet = new ArrayList<String>();
+        for (var r : rechnungen) {
+            var e = (ExternVersandt) r;
+            erwartet.add(Main.produceInvoiceText(e.kunde(), e.wert(),
+                    MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(e.kunde(), e.wert())));
+        }
+        assertThat(mail).containsExactlyInAnyOrderElementsOf(erwartet);
+    }
+
+    @Test
+    void internalInvoicesBypassCache() {
+        var cache = new RechnungsCache(10);
+        var gespeichert = new ArrayList<String>();
+
+        Main.sendInvoiceFor2(new InterneVerechnung("HR", 10d), (_, _) -> {
+        }, (abt, _) -> gespeichert.add(abt), cache);
+
+        assertThat(gespeichert).isEqualTo(List.of("HR"));
+        assertThat(cache.statistik().fehlschlaege()).isZero();
+    }
+}
@@ -0,0 +1,179 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchRuntimeException;
+
+/**
+ * Check whether the {@linkplain RechnungsPipeline} delivers every invoice exactly like the sequential
+ * {@linkplain Main#sendInvoiceFor2(Rechnung)} and applies backpressure when a sink is slow
+ *
+ * @see RechnungsPipeline
+ */
+class RechnungsPipelineTest {
+
+    record Mail(String empf, String txt) {
+    }
+
+    record Eintrag(String abt, double wert) {
+    }
+
+    @Test
+    void deliversAllInvoices() {
+        var mails = new ConcurrentLinkedQueue<Mail>();
+        var eintraege = new ConcurrentLinkedQueue<Eintrag>();
+        var privat = new Privatkunde("Merlin", "merlin@dummy.de");
+        var business = new Businesskunde("adesso SE", "info@dummy.de", true);
+
+        try (var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(4, 3),
+                (empf, txt) -> mails.add(new Mail(empf, txt)), (abt, wert) -> eintraege.add(new Eintrag(abt, wert)))) {
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit(new InterneVerechnung("HR", i));
+                pipeline.submit(new ExternVersandt(privat, i));
+                pipeline.submit(new ExternVersandt(business, i));
+            }
+        }
+
+        assertThat(eintraege).hasSize(100).contains(new Eintrag("HR", 42d));
+        assertThat(mails).hasSize(200).contains(
+                new Mail("merlin@dummy.de", Main.produceInvoiceText(privat, 42d, 4.2d)),
+                new Mail("info@dummy.de", Main.produceInvoiceText(business, 42d, 0d)));
+    }
+
+    @Test
+    void slowSinkBlocksSubmit() throws InterruptedException {
+        var kapazitaet = 2;
+        var freigabe = new CountDownLatch(1);
+        var gesendet = new AtomicInteger();
+        var eingereicht = new AtomicInteger();
+        var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(kapazitaet, 1),
+                (empf, txt) -> {
+                    await(freigabe);
+                    gesendet.incrementAndGet();
+                }, (abt, wert) -> {
+        });
+        var produzent = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit(new ExternVersandt(new Privatkunde("Merlin", ""), i));
+                eingereicht.incrementAndGet();
+            }
+        });
+
+        produzent.join(500);
+
+        // je Stufe höchstens Kapazität wartend plus ein Auftrag in Arbeit
+        assertThat(produzent.isAlive()).isTrue();
+        assertThat(eingereicht.get()).isLessThanOrEqualTo(4 * (kapazitaet + 1));
+        assertThat(pipeline.statistik()).allSatisfy(s -> assertThat(s.queueTiefe()).isLessThanOrEqualTo(kapazitaet));
+
+        freigabe.countDown();
+        produzent.join();
+        pipeline.close();
+
+        assertThat(gesendet.get()).isEqualTo(100);
+        assertThat(pipeline.statistik()).extracting(RechnungsPipeline.StufenStatistik::verarbeitet)
+                .containsExactly(100L, 100L, 100L, 100L);
+        assertThat(pipeline.durchsatz()).isPositive();
+    }
+
+    @Test
+    void failingSinkIsCountedAndDoesNotStopPipeline() {
+        var gesendet = new ConcurrentLinkedQueue<String>();
+        var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(4, 1),
+                (empf, txt) -> {
+                    if (empf.equals("fail")) throw new IllegalStateException("Mailserver nicht erreichbar");
+                    gesendet.add(empf);
+                }, (abt, wert) -> {
+        });
+
+        List.of("ok1", "fail", "ok2").forEach(empf -> pipeline.submit(new ExternVersandt(new Privatkunde("", empf), 1d)));
+
+        assertThatThrownBy(pipeline::close).hasMessage("Mailserver nicht erreichbar");
+
+        assertThat(gesendet).containsExactlyInAnyOrder("ok1", "ok2");
+        assertThat(pipeline.statistik().getLast().fehler()).isEqualTo(1L);
+        assertThat(pipeline.statistik().getLast().ersterFehler()).hasMessage("Mailserver nicht erreichbar");
+        assertThat(pipeline.statistik().getFirst().ersterFehler()).isNull();
+    }
+
+    @Test
+    void closeThrowsFirstFailureOfEachStage() {
+        var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(4, 1),
+                (empf, txt) -> {
+                    throw new IllegalStateException("Mailserver nicht erreichbar");
+                }, (abt, wert) -> {
+        });
+
+        pipeline.submit(new ExternVersandt(null, 1d));
+        pipeline.submit(new ExternVersandt(new Privatkunde("", "a@privat.de"), 1d));
+        pipeline.submit(new ExternVersandt(new Privatkunde("", "b@privat.de"), 1d));
+
+        var fehler = catchRuntimeException(pipeline::close);
+        assertThat(fehler).isInstanceOf(NullPointerException.class);
+        assertThat(fehler.getSuppressed()).singleElement()
+                .satisfies(e -> assertThat(e).hasMessage("Mailserver nicht erreichbar"));
+    }
+
+    @Test
+    void submitAfterClose() {
+        var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(1, 1),
+                (empf, txt) -> {
+                }, (abt, wert) -> {
+        });
+        pipeline.close();
+
+        assertThatThrownBy(() -> pipeline.submit(new InterneVerechnung("HR", 1d)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void submitConcurrentWithCloseIsDeliveredOrRejected() throws InterruptedException {
+        for (int lauf = 0; lauf < 50; lauf++) {
+            var gespeichert = new AtomicInteger();
+            var angenommen = new AtomicInteger();
+            var pipeline = new RechnungsPipeline(RechnungsPipeline.Konfiguration.einheitlich(2, 1),
+                    (empf, txt) -> {
+                    }, (abt, wert) -> gespeichert.incrementAndGet());
+            var start = new CountDownLatch(1);
+            var produzenten = new ArrayList<Thread>();
+            for (int p = 0; p < 4; p++) {
+                produzenten.add(Thread.ofPlatform().start(() -> {
+                    await(start);
+                    try {
+                        while (true) {
+                            pipeline.submit(new InterneVerechnung("HR", 1d));
+                            angenommen.incrementAndGet();
+                        }
+                    } catch (IllegalStateException e) {
+                        // geschlossen
+                    }
+                }));
+            }
+
+            start.countDown();
+            Thread.sleep(1);
+            pipeline.close();
+            for (var produzent : produzenten) produzent.join(10_000);
+
+            assertThat(produzenten).noneMatch(Thread::isAlive);
+            assertThat(gespeichert.get()).isEqualTo(angenommen.get());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
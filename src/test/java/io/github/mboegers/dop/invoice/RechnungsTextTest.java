@@ -0,0 +1,81 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static java.util.FormatProcessor.FMT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the precompiled {@linkplain RechnungsText} produces byte for byte the same text as the
+ * {@code FMT} string templates in {@linkplain Main}
+ *
+ * @see RechnungsText
+ * @see DezimalSchreiber
+ */
+class RechnungsTextTest {
+
+    @ParameterizedTest(name = "%.2f of {0}")
+    @ValueSource(doubles = {0d, -0d, 0.001, -0.001, 0.005, 0.015, 0.125, 1.005, 1.115, 2.675, 10.05, 0.435, 99.995,
+            100.5, 1055d, 105.5, 0.29, 4.35, 1e7 - 0.005, 1e7, 1e7 + 0.005, 1.23e15, -42.425,
+            Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY})
+    void decimalLikeFmt(double betrag) {
+        assertThat(DezimalSchreiber.appendZweiStellen(new StringBuilder(), betrag).toString())
+                .isEqualTo(FMT."%.2f\{betrag}");
+    }
+
+    @Test
+    void decimalLikeFmtForRandomAmounts() {
+        var random = new Random(42L);
+        for (int i = 0; i < 200_000; i++) {
+            // Cent-Beträge, deren MwSt genau auf einem halben Cent liegen kann, und beliebige Beträge
+            var cent = random.nextInt(10_000_000) / 100d;
+            var beliebig = random.nextDouble() * Math.pow(10, random.nextInt(9)) - 50d;
+            for (var betrag : new double[]{cent, cent * 0.1d, beliebig}) {
+                assertThat(DezimalSchreiber.appendZweiStellen(new StringBuilder(), betrag).toString())
+                        .as("%s", betrag)
+                        .isEqualTo(FMT."%.2f\{betrag}");
+            }
+        }
+    }
+
+    @Test
+    void sameTextAsProduceInvoiceText() {
+        var random = new Random(4711L);
+        for (int i = 0; i < 10_000; i++) {
+            Kunde kunde = random.nextBoolean()
+                    ? new Privatkunde("Merlin " + i, "")
+                    : new Businesskunde("adesso SE " + i, "", random.nextBoolean());
+            var wert = random.nextInt(1_000_000) / 100d;
+            var mwst = MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert);
+
+            assertThat(RechnungsText.STANDARD.render(kunde, wert, mwst))
+                    .isEqualTo(Main.produceInvoiceText(kunde, wert, mwst));
+        }
+    }
+
+    @Test
+    void renderAppendsToBuffer() {
+        var sb = new StringBuilder("Betreff\n");
+
+        RechnungsText.compile("${name}: ${wert} + ${mwst}").render(sb, "Merlin", 10d, 1d);
+
+        assertThat(sb.toString()).isEqualTo("Betreff\nMerlin: 10.00 + 1.00");
+    }
+
+    @Test
+    void unknownPlaceholder() {
+        assertThatThrownBy(() -> RechnungsText.compile("Hallo ${vorname}"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void unclosedPlaceholder() {
+        assertThatThrownBy(() -> RechnungsText.compile("Hallo ${name"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check whether the {@linkplain Schnellstart} handles invoices exactly like {@link Main#sendInvoiceFor} and writes the
+ * same lines as the {@linkplain Dummy} sinks
+ *
+ * @see Schnellstart
+ */
+class SchnellstartTest {
+
+    private static final List<Rechnung> RECHNUNGEN = List.of(
+            new InterneVerechnung("HR", 10.5d),
+            new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 1234.565d),
+            new ExternVersandt(new Businesskunde("adesso SE", "info@dummy.de", false), 99.99d),
+            new ExternVersandt(new Businesskunde("Eureg JUG", "jug@dummy.de", true), 0.01d));
+
+    @Test
+    void sameResultAsMain() {
+        var erwartet = new ArrayList<String>();
+        MailSenke mailMain = (empf, txt) -> erwartet.add(empf + "|" + txt);
+        DbSenke dbMain = (abt, wert) -> erwartet.add(abt + "|" + wert);
+        var tatsaechlich = new ArrayList<String>();
+        MailSenke mail = (empf, txt) -> tatsaechlich.add(empf + "|" + txt);
+        DbSenke db = (abt, wert) -> tatsaechlich.add(abt + "|" + wert);
+
+        RECHNUNGEN.forEach(r -> Main.sendInvoiceFor(r, mailMain, dbMain));
+        RECHNUNGEN.forEach(r -> Schnellstart.versende(r, mail, db));
+
+        assertThat(tatsaechlich).hasSize(4).isEqualTo(erwartet);
+    }
+
+    @Test
+    void ausgabeMatchesDummy() {
+        var puffer = new ByteArrayOutputStream();
+        var ausgabe = new Schnellstart.Ausgabe(new PrintStream(puffer, true, StandardCharsets.UTF_8));
+
+        ausgabe.storeInDB("HR", 10.5d);
+        ausgabe.sendViaMail("merlin@dummy.de", "Text");
+
+        assertThat(puffer.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "Speicher %s€ zur Verrechnung mit Abteilung %s%n".formatted(10.5d, "HR")
+                        + "Sende E-Mail an %s mit Inhalt:%n%s%n".formatted("merlin@dummy.de", "Text"));
+    }
+
+    @Test
+    void processesCsvFile(@TempDir Path verzeichnis) throws IOException {
+        var datei = verzeichnis.resolve("rechnungen.csv");
+        Files.writeString(datei, """
+                I;HR;10.50
+                P;Merlin;merlin@dummy.de;100
+                B;Eureg JUG;jug@dummy.de;true;200
+                """);
+        var puffer = new ByteArrayOutputStream();
+
+        long anzahl = Schnellstart.verarbeite(datei,
+                new Schnellstart.Ausgabe(new PrintStream(puffer, true, StandardCharsets.UTF_8)));
+
+        assertThat(anzahl).isEqualTo(3);
+        assertThat(puffer.toString(StandardCharsets.UTF_8))
+                .contains("Speicher 10.5€ zur Verrechnung mit Abteilung HR", "Sende E-Mail an merlin@dummy.de",
+                        "in Höhe von 200.00€ plus 0.00€ MwSt.");
+    }
+
+    @Test
+    void trainingRunLeavesNoFiles() throws IOException {
+        var temp = Path.of(System.getProperty("java.io.tmpdir"));
+        long vorher;
+        try (var dateien = Files.list(temp)) {
+            vorher = dateien.filter(p -> p.getFileName().toString().startsWith("rechnungen-training")).count();
+        }
+
+        Schnellstart.trainieren();
+
+        try (var dateien = Files.list(temp)) {
+            assertThat(dateien.filter(p -> p.getFileName().toString().startsWith("rechnungen-training")).count())
+                    .isEqualTo(vorher);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.mboegers.dop.invoice;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Minimaler SMTP Server im selben Prozess für Tests und Benchmarks der {@linkplain SmtpSenke}.
+ * <p>
+ * Versteht {@code EHLO/HELO, MAIL, RCPT, DATA, RSET, NOOP} und {@code QUIT}, kündigt {@code PIPELINING} an und merkt
+ * sich alle angenommenen {@linkplain Nachricht Nachrichten}. Jede Verbindung wird in einem virtuellen Thread bedient.
+ * Mit {@link #antwortZeit(Duration)} wird vor jedem Senden von Antworten gewartet, wie bei einer Netzwerkverbindung
+ * mit dieser Umlaufzeit. Gepipelinete Befehle kosten die Zeit daher nur einmal. Fehler lassen sich mit
+ * {@link #trenneNach(int)} und {@link #verweigere(String, int, int)} erzeugen.
+ * {@snippet :
+ *   try (var server = new SmtpAttrappe();
+ *        var mail = new SmtpSenke(SmtpSenke.Konfiguration.lokal(server.port()), _ -> true)) {
+ *       rechnungen.forEach(r -> Main.sendInvoiceFor(r, mail, Dummy::storeInDB));
+ *       mail.flush();
+ *       var anzahl = server.nachrichten().size();
+ *   }
+ *}
+ */
+final class SmtpAttrappe implements AutoCloseable {
+
+    record Nachricht(String absender, String empfaenger, String inhalt) {
+    }
+
+    private final ServerSocket server;
+    private final Thread annahme;
+    private final ConcurrentLinkedQueue<Nachricht> nachrichten = new ConcurrentLinkedQueue<>();
+    private final AtomicLong angenommen = new AtomicLong();
+    private final List<Socket> offen = new CopyOnWriteArrayList<>();
+    private final AtomicInteger verbindungen = new AtomicInteger();
+    private final Map<String, AtomicInteger> verweigert = new ConcurrentHashMap<>();
+    private final Map<String, Integer> verweigerungsCode = new ConcurrentHashMap<>();
+    private final AtomicLong trennenBei = new AtomicLong(Long.MAX_VALUE);
+    private volatile long antwortNanos;
+
+    /**
+     * Starte auf einem freien Port von localhost.
+     */
+    SmtpAttrappe() throws IOException {
+        this.server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.annahme = Thread.ofPlatform().daemon().name("smtp-attrappe").start(this::annehmen);
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    List<Nachricht> nachrichten() {
+        return List.copyOf(nachrichten);
+    }
+
+    /**
+     * Vergiss die bisher angenommenen Nachrichten, damit lange Benchmarks nicht beliebig viel Speicher belegen.
+     */
+    void leeren() {
+        nachrichten.clear();
+    }
+
+    /**
+     * Anzahl bisher angenommener Verbindungen
+     */
+    int verbindungen() {
+        return verbindungen.get();
+    }
+
+    void antwortZeit(Duration umlauf) {
+        if (umlauf.isNegative()) throw new IllegalArgumentException("Umlaufzeit %s ist negativ".formatted(umlauf));
+        this.antwortNanos = umlauf.toNanos();
+    }
+
+    /**
+     * Trenne die Verbindung einmalig, sobald insgesamt {@code nachrichten} Nachrichten angenommen wurden.
+     */
+    void trenneNach(int nachrichten) {
+        trennenBei.set(nachrichten);
+    }
+
+    /**
+     * Beantworte die nächsten {@code anzahl} {@code RCPT} an {@code empfaenger} mit {@code code}, z.B. 451 für einen
+     * vorübergehenden oder 550 für einen dauerhaften Fehler.
+     */
+    void verweigere(String empfaenger, int code, int anzahl) {
+        verweigerungsCode.put(requireNonNull(empfaenger), code);
+        verweigert.put(empfaenger, new AtomicInteger(anzahl));
+    }
+
+    private void annehmen() {
+        while (!server.isClosed()) {
+            try {
+                var socket = server.accept();
+                verbindungen.incrementAndGet();
+                offen.add(socket);
+                Thread.ofVirtual().name("smtp-attrappe-", verbindungen.get()).start(() -> bediene(socket));
+            } catch (SocketException e) {
+                return; // geschlossen
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void bediene(Socket socket) {
+        try (socket;
+             var ein = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             var aus = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            antworte(aus, ein, "220 attrappe ESMTP");
+            String absender = null;
+            String empfaenger = null;
+            String zeile;
+            while ((zeile = ein.readLine()) != null) {
+                var befehl = zeile.length() < 4 ? zeile.toUpperCase() : zeile.substring(0, 4).toUpperCase();
+                switch (befehl) {
+                    case "EHLO" -> antworte(aus, ein, "250-attrappe\r\n250-PIPELINING\r\n250 8BITMIME");
+                    case "HELO" -> antworte(aus, ein, "250 attrappe");
+                    case "MAIL" -> {
+                        absender = adresse(zeile);
+                        empfaenger = null;
+                        antworte(aus, ein, "250 OK");
+                    }
+                    case "RCPT" -> {
+                        var an = adresse(zeile);
+                        var rest = verweigert.get(an);
+                        if (rest != null && rest.getAndDecrement() > 0) {
+                            antworte(aus, ein, verweigerungsCode.get(an) + " abgelehnt");
+                        } else {
+                            empfaenger = an;
+                            antworte(aus, ein, "250 OK");
+                        }
+                    }
+                    case "DATA" -> {
+                        if (absender == null || empfaenger == null) {
+                            antworte(aus, ein, "503 Reihenfolge");
+                            continue;
+                        }
+                        antworte(aus, ein, "354 Ende mit <CRLF>.<CRLF>");
+                        var inhalt = new StringBuilder();
+                        while ((zeile = ein.readLine()) != null && !zeile.equals(".")) {
+                            inhalt.append(zeile.startsWith(".") ? zeile.substring(1) : zeile).append('\n');
+                        }
+                        if (zeile == null) return; // Verbindung während DATA beendet, Nachricht unvollständig
+                        nachrichten.add(new Nachricht(absender, empfaenger, inhalt.toString()));
+                        if (angenommen.incrementAndGet() >= trennenBei.get()) {
+                            trennenBei.set(Long.MAX_VALUE);
+                            return; // ohne Bestätigung, die Nachricht ist angekommen, der Client weiß es nicht
+                        }
+                        absender = empfaenger = null;
+                        antworte(aus, ein, "250 OK angenommen");
+                    }
+                    case "RSET" -> {
+                        absender = empfaenger = null;
+                        antworte(aus, ein, "250 OK");
+                    }
+                    case "NOOP" -> antworte(aus, ein, "250 OK");
+                    case "QUIT" -> {
+                        antworte(aus, ein, "221 Tschüss");
+                        return;
+                    }
+                    default -> antworte(aus, ein, "500 unbekannt");
+                }
+            }
+        } catch (IOException e) {
+            // Verbindung vom Client oder durch close() beendet
+        } finally {
+            offen.remove(socket);
+        }
+    }
+
+    /**
+     * Sende gesammelte Antworten erst, wenn keine weiteren Befehle mehr anliegen.
+     */
+    private void antworte(BufferedWriter aus, BufferedReader ein, String antwort) throws IOException {
+        aus.write(antwort);
+        aus.write("\r\n");
+        if (ein.ready()) return;
+        long nanos = antwortNanos;
+        if (nanos > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(nanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Unterbrochen", e);
+            }
+        }
+        aus.flush();
+    }
+
+    private static String adresse(String zeile) {
+        int start = zeile.indexOf('<');
+        int ende = zeile.lastIndexOf('>');
+        return start >= 0 && ende > start ? zeile.substring(start + 1, ende) : zeile.substring(zeile.indexOf(':') + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (var socket : offen) socket.close();
+        try {
+            annahme.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
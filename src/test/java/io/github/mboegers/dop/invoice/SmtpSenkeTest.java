@@ -0,0 +1,216 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the {@linkplain SmtpSenke} delivers invoices as digest or single mails over pooled, pipelined
+ * connections and retries transient failures against the {@linkplain SmtpAttrappe}
+ *
+ * @see SmtpSenke
+ */
+class SmtpSenkeTest {
+
+    private static final Duration LANGE = Duration.ofHours(1);
+
+    private SmtpAttrappe server;
+
+    @BeforeEach
+    void starteServer() throws IOException {
+        server = new SmtpAttrappe();
+    }
+
+    @AfterEach
+    void stoppeServer() throws IOException {
+        server.close();
+    }
+
+    private SmtpSenke.Konfiguration konfiguration(int verbindungen, int versuche) {
+        return new SmtpSenke.Konfiguration("localhost", server.port(), "rechnung@localhost", verbindungen, 1_000,
+                LANGE, versuche, Duration.ofMillis(1));
+    }
+
+    private List<String> empfaenger() {
+        return server.nachrichten().stream().map(SmtpAttrappe.Nachricht::empfaenger).toList();
+    }
+
+    @Test
+    void digestsInvoicesPerRecipientWhereAllowed() {
+        try (var mail = new SmtpSenke(konfiguration(1, 1), empf -> empf.endsWith("@firma.de"))) {
+            mail.sendViaMail("a@firma.de", "Rechnung 1");
+            mail.sendViaMail("b@privat.de", "Rechnung 2");
+            mail.sendViaMail("a@firma.de", "Rechnung 3");
+            mail.sendViaMail("b@privat.de", "Rechnung 4");
+            mail.flush();
+
+            assertThat(empfaenger()).containsExactly("b@privat.de", "b@privat.de", "a@firma.de");
+            var sammelmail = server.nachrichten().getLast().inhalt();
+            assertThat(sammelmail).contains("Subject: 2 Rechnungen", "Rechnung 1\n----\nRechnung 3");
+            assertThat(mail.statistik()).isEqualTo(new SmtpSenke.Statistik(4, 3, 1, 1, 0, 0, null));
+        }
+    }
+
+    @Test
+    void reusesPooledConnectionsAcrossFlushes() {
+        try (var mail = new SmtpSenke(konfiguration(2, 1), _ -> false)) {
+            for (int i = 0; i < 10; i++) mail.sendViaMail("kunde%d@privat.de".formatted(i), "Rechnung " + i);
+            mail.flush();
+            for (int i = 0; i < 10; i++) mail.sendViaMail("kunde%d@privat.de".formatted(i), "Rechnung " + i);
+            mail.flush();
+
+            assertThat(server.nachrichten()).hasSize(20);
+            assertThat(server.verbindungen()).isEqualTo(2);
+            assertThat(mail.statistik().verbindungen()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void escapesLeadingDotsAndKeepsUmlauts() {
+        try (var mail = new SmtpSenke(konfiguration(1, 1), _ -> false)) {
+            mail.sendViaMail("a@firma.de", "Größe\n.\n..zwei Punkte");
+            mail.flush();
+
+            assertThat(server.nachrichten().getFirst().inhalt()).endsWith("\nGröße\n.\n..zwei Punkte\n");
+        }
+    }
+
+    @Test
+    void retriesAfterDroppedConnection() {
+        server.trenneNach(3);
+        try (var mail = new SmtpSenke(konfiguration(1, 3), _ -> false)) {
+            for (int i = 0; i < 5; i++) mail.sendViaMail("kunde%d@privat.de".formatted(i), "Rechnung " + i);
+            mail.flush();
+
+            // the third mail arrived but was never acknowledged, so it is delivered twice
+            assertThat(empfaenger()).containsExactly("kunde0@privat.de", "kunde1@privat.de", "kunde2@privat.de",
+                    "kunde2@privat.de", "kunde3@privat.de", "kunde4@privat.de");
+            assertThat(mail.statistik().wiederholungen()).isEqualTo(1);
+            assertThat(mail.statistik().mails()).isEqualTo(5);
+            assertThat(server.verbindungen()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void retriesTransientRejection() {
+        server.verweigere("b@privat.de", 451, 1);
+        try (var mail = new SmtpSenke(konfiguration(1, 2), _ -> false)) {
+            mail.sendViaMail("a@privat.de", "Rechnung 1");
+            mail.sendViaMail("b@privat.de", "Rechnung 2");
+            mail.flush();
+
+            assertThat(empfaenger()).containsExactly("a@privat.de", "b@privat.de");
+            assertThat(mail.statistik().wiederholungen()).isEqualTo(1);
+            assertThat(mail.unzustellbar()).isEmpty();
+        }
+    }
+
+    @Test
+    void reportsPermanentRejectionWithoutRetry() {
+        server.verweigere("b@privat.de", 550, 1);
+        try (var mail = new SmtpSenke(konfiguration(1, 3), _ -> false)) {
+            mail.sendViaMail("a@privat.de", "Rechnung 1");
+            mail.sendViaMail("b@privat.de", "Rechnung 2");
+            mail.sendViaMail("c@privat.de", "Rechnung 3");
+            mail.flush();
+
+            assertThat(empfaenger()).containsExactly("a@privat.de", "c@privat.de");
+            assertThat(mail.unzustellbar()).containsExactly(
+                    new SmtpSenke.Unzustellbar("b@privat.de", List.of("Rechnung 2"), 550));
+            assertThat(mail.statistik().wiederholungen()).isZero();
+        }
+    }
+
+    @Test
+    void keepsInvoicesBufferedWhenAllAttemptsFail() {
+        server.verweigere("a@privat.de", 421, 2);
+        try (var mail = new SmtpSenke(konfiguration(1, 2), _ -> false)) {
+            mail.sendViaMail("a@privat.de", "Rechnung 1");
+
+            assertThatThrownBy(mail::flush).isInstanceOf(UncheckedIOException.class);
+            assertThat(server.nachrichten()).isEmpty();
+
+            mail.flush();
+            assertThat(empfaenger()).containsExactly("a@privat.de");
+        }
+    }
+
+    @Test
+    void acceptsInvoiceDespiteFailedFlushAndResendsOnlyUndelivered() {
+        server.verweigere("b@privat.de", 421, 2);
+        var konfiguration = new SmtpSenke.Konfiguration("localhost", server.port(), "rechnung@localhost", 2, 2, LANGE,
+                2, Duration.ofMillis(1));
+        try (var mail = new SmtpSenke(konfiguration, _ -> false)) {
+            mail.sendViaMail("a@privat.de", "Rechnung 1");
+            mail.sendViaMail("b@privat.de", "Rechnung 2");
+
+            assertThat(empfaenger()).containsExactly("a@privat.de");
+            assertThat(mail.statistik().fehlschlaege()).isEqualTo(1);
+            assertThat(mail.statistik().letzterFehler()).isInstanceOf(UncheckedIOException.class);
+
+            // paused after the failure, the full buffer does not trigger another attempt
+            mail.sendViaMail("c@privat.de", "Rechnung 3");
+            assertThat(empfaenger()).containsExactly("a@privat.de");
+
+            mail.flush();
+            assertThat(empfaenger()).containsExactlyInAnyOrder("a@privat.de", "b@privat.de", "c@privat.de");
+            assertThat(mail.statistik().rechnungen()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void failedCloseKeepsInvoicesForNextClose() {
+        server.verweigere("a@privat.de", 421, 2);
+        var mail = new SmtpSenke(konfiguration(1, 2), _ -> false);
+        mail.sendViaMail("a@privat.de", "Rechnung 1");
+
+        assertThatThrownBy(mail::close).isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> mail.sendViaMail("b@privat.de", "Rechnung 2"))
+                .isInstanceOf(IllegalStateException.class);
+        mail.close();
+
+        assertThat(empfaenger()).containsExactly("a@privat.de");
+    }
+
+    @Test
+    void rejectsAddressesThatInjectCommands() {
+        try (var mail = new SmtpSenke(konfiguration(1, 1), _ -> false)) {
+            for (var empf : List.of("x>\r\nRCPT TO:<y@privat.de", "x@privat.de\nBcc: y@privat.de", "x\r@privat.de")) {
+                assertThatThrownBy(() -> mail.sendViaMail(empf, "Rechnung"))
+                        .isInstanceOf(IllegalArgumentException.class);
+            }
+            mail.flush();
+        }
+        assertThatThrownBy(() -> new SmtpSenke.Konfiguration("localhost", server.port(), "a@b>\r\nDATA", 1, 1, LANGE,
+                1, Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(server.nachrichten()).isEmpty();
+    }
+
+    @Test
+    void singlePathOpensOneConnectionPerInvoice() {
+        var mail = SmtpSenke.einzeln(konfiguration(1, 1));
+
+        Main.sendInvoiceFor(new ExternVersandt(new Privatkunde("A", "a@privat.de"), 100d), mail, (_, _) -> {
+        });
+        mail.sendViaMail("b@privat.de", "Rechnung 2");
+
+        assertThat(empfaenger()).containsExactly("a@privat.de", "b@privat.de");
+        assertThat(server.verbindungen()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsInvalidKonfiguration() {
+        assertThatThrownBy(() -> new SmtpSenke.Konfiguration("localhost", 0, "a@b", 1, 1, LANGE, 1, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> konfiguration(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> konfiguration(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
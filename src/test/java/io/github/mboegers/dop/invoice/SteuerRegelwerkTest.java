@@ -0,0 +1,204 @@
+package io.github.mboegers.dop.invoice;
+
+import io.github.mboegers.dop.invoice.SteuerRegelwerk.Kundenart;
+import io.github.mboegers.dop.invoice.SteuerRegelwerk.Regel;
+import io.github.mboegers.dop.invoice.SteuerRegelwerk.Satzklasse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check whether the compiled {@linkplain SteuerRegelwerk} picks the most specific rule per country, date, customer
+ * kind and rate class, reproduces the hard-coded rates of {@linkplain MwStRechner} and reloads atomically
+ *
+ * @see SteuerRegelwerk
+ */
+class SteuerRegelwerkTest {
+
+    private static final LocalDate HEUTE = LocalDate.of(2024, 6, 1);
+    private static final Kunde PRIVAT = new Privatkunde("Merlin", "merlin@dummy.de");
+    private static final Kunde BUSINESS = new Businesskunde("adesso SE", "info@dummy.de", false);
+    private static final Kunde BUSINESS_ABZUG = new Businesskunde("Eureg JUG", "jug@dummy.de", true);
+
+    @TempDir
+    Path verzeichnis;
+
+    @Test
+    void standardRulesMatchSwitchExpression() {
+        var tarif = new SteuerRegelwerk(SteuerRegelwerk.STANDARD).tarif("DE", HEUTE);
+        var random = new Random(42L);
+
+        for (int i = 0; i < 10_000; i++) {
+            var kunde = List.of(PRIVAT, BUSINESS, BUSINESS_ABZUG).get(i % 3);
+            var wert = random.nextDouble() * 10_000d;
+            assertThat(tarif.calculateMwSt(kunde, wert))
+                    .isEqualTo(MwStRechner.SwitchExpressionWhenClauseUnnamed.calculateMwSt(kunde, wert));
+            assertThat(tarif.calculateMwSt(kunde, Satzklasse.NORMAL, (long) (wert * 100), RoundingMode.HALF_EVEN))
+                    .isEqualTo(MwStRechner.SwitchExpressionWhenClauseUnnamed
+                            .calculateMwSt(kunde, (long) (wert * 100), RoundingMode.HALF_EVEN));
+        }
+    }
+
+    @Test
+    void standardRulesExemptSteuerfreiForEveryCustomer() {
+        var tarif = new SteuerRegelwerk(SteuerRegelwerk.STANDARD).tarif("DE", HEUTE);
+
+        for (var kunde : List.of(PRIVAT, BUSINESS, BUSINESS_ABZUG)) {
+            assertThat(tarif.satz(kunde, Satzklasse.STEUERFREI)).as("%s", kunde).isEqualByComparingTo("0");
+            assertThat(tarif.calculateMwSt(kunde, Satzklasse.STEUERFREI, 100d)).as("%s", kunde).isZero();
+            assertThat(tarif.calculateMwSt(kunde, Satzklasse.STEUERFREI, 10_000L, RoundingMode.HALF_UP))
+                    .as("%s", kunde).isZero();
+        }
+    }
+
+    @Test
+    void countriesAndRateClasses() {
+        var regelwerk = new SteuerRegelwerk(List.of(
+                new Regel("DE", null, null, "19"),
+                new Regel("DE", null, Satzklasse.ERMAESSIGT, "7"),
+                new Regel("DE", null, Satzklasse.STEUERFREI, "0"),
+                new Regel("FR", null, Satzklasse.NORMAL, "20"),
+                new Regel("FR", null, Satzklasse.ERMAESSIGT, "5.5")));
+
+        assertThat(regelwerk.tarif("DE", HEUTE).satz(PRIVAT, Satzklasse.NORMAL)).isEqualByComparingTo("19");
+        assertThat(regelwerk.tarif("DE", HEUTE).satz(BUSINESS, Satzklasse.ERMAESSIGT)).isEqualByComparingTo("7");
+        assertThat(regelwerk.tarif("FR", HEUTE).calculateMwSt(PRIVAT, Satzklasse.ERMAESSIGT, 1000L, RoundingMode.HALF_UP))
+                .isEqualTo(55L);
+        assertThat(regelwerk.tarif("DE", HEUTE).calculateMwSt(PRIVAT, Satzklasse.STEUERFREI, 100d)).isZero();
+        assertThatThrownBy(() -> regelwerk.tarif("FR", HEUTE).calculateMwSt(PRIVAT, Satzklasse.STEUERFREI, 100d))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("FR");
+        assertThatThrownBy(() -> regelwerk.tarif("AT", HEUTE)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void temporaryReductionOverridesGeneralRule() {
+        var regelwerk = new SteuerRegelwerk(List.of(
+                new Regel("DE", null, null, null, new BigDecimal("19"), LocalDate.of(2007, 1, 1), null),
+                new Regel("DE", null, null, null, new BigDecimal("16"),
+                        LocalDate.of(2020, 7, 1), LocalDate.of(2020, 12, 31))));
+
+        assertThat(regelwerk.tarif("DE", LocalDate.of(2020, 6, 30)).satz(PRIVAT, Satzklasse.NORMAL))
+                .isEqualByComparingTo("19");
+        assertThat(regelwerk.tarif("DE", LocalDate.of(2020, 7, 1)).satz(PRIVAT, Satzklasse.NORMAL))
+                .isEqualByComparingTo("16");
+        assertThat(regelwerk.tarif("DE", LocalDate.of(2020, 12, 31)).satz(PRIVAT, Satzklasse.NORMAL))
+                .isEqualByComparingTo("16");
+        assertThat(regelwerk.tarif("DE", LocalDate.of(2021, 1, 1)).satz(PRIVAT, Satzklasse.NORMAL))
+                .isEqualByComparingTo("19");
+        assertThatThrownBy(() -> regelwerk.tarif("DE", LocalDate.of(2006, 12, 31)).satz(PRIVAT, Satzklasse.NORMAL))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void customerOverride() {
+        var besonders = new Businesskunde("Besonders GmbH", "b@dummy.de", false);
+        var regelwerk = new SteuerRegelwerk(List.of(
+                new Regel("DE", null, null, "19"),
+                new Regel("DE", besonders, null, Satzklasse.NORMAL, new BigDecimal("0"), null, null)));
+        var tarif = regelwerk.tarif("DE", HEUTE);
+
+        assertThat(tarif.calculateMwSt(besonders, 100d)).isZero();
+        assertThat(tarif.calculateMwSt(besonders, Satzklasse.ERMAESSIGT, 100d)).isEqualTo(19d);
+        assertThat(tarif.calculateMwSt(BUSINESS, 100d)).isEqualTo(19d);
+    }
+
+    @Test
+    void conflictingRules() {
+        var regeln = List.of(new Regel("DE", null, null, "19"), new Regel("DE", null, null, "7"));
+
+        assertThatThrownBy(() -> new SteuerRegelwerk(regeln))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Widersprüchliche");
+    }
+
+    @Test
+    void invalidRules() {
+        assertThatThrownBy(() -> new Regel("DE", null, null, "5.555")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Regel("DE", null, null, "101")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Regel("DE", PRIVAT, Kundenart.BUSINESS, null, BigDecimal.TEN, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void failedReloadKeepsOldRules() {
+        var regelwerk = new SteuerRegelwerk(SteuerRegelwerk.STANDARD);
+
+        assertThatThrownBy(() -> regelwerk.neuLaden(List.of(
+                new Regel("DE", null, null, "19"), new Regel("DE", null, null, "7"))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(regelwerk.tarif("DE", HEUTE).calculateMwSt(PRIVAT, 100d)).isEqualTo(10d);
+    }
+
+    @Test
+    void reloadWhileCalculating() throws InterruptedException {
+        var alt = List.of(new Regel("DE", null, null, "10"));
+        var neu = List.of(new Regel("DE", null, null, "19"), new Regel("DE", null, Satzklasse.ERMAESSIGT, "7"));
+        var regelwerk = new SteuerRegelwerk(alt);
+        var laeuft = new AtomicBoolean(true);
+        var fehler = new ArrayList<String>();
+        var gestartet = new CountDownLatch(1);
+
+        var rechner = Thread.ofPlatform().start(() -> {
+            gestartet.countDown();
+            while (laeuft.get()) {
+                var tarif = regelwerk.tarif("DE", HEUTE);
+                double normal = tarif.calculateMwSt(PRIVAT, Satzklasse.NORMAL, 100d);
+                double ermaessigt = tarif.calculateMwSt(PRIVAT, Satzklasse.ERMAESSIGT, 100d);
+                if (!(normal == 10d && ermaessigt == 10d || normal == 19d && ermaessigt == 100d * 0.07d)) {
+                    synchronized (fehler) {
+                        fehler.add("%s/%s".formatted(normal, ermaessigt));
+                    }
+                }
+            }
+        });
+        gestartet.await();
+        for (int i = 0; i < 1_000; i++) regelwerk.neuLaden(i % 2 == 0 ? neu : alt);
+        laeuft.set(false);
+        rechner.join();
+
+        assertThat(fehler).isEmpty();
+    }
+
+    @Test
+    void readsRuleTable() throws IOException {
+        var datei = Files.writeString(verzeichnis.resolve("steuern.csv"), """
+                # land;kunde;art;klasse;satz;gueltigAb;gueltigBis
+                DE;*;*;*;19;2007-01-01;
+
+                DE;*;*;ERMAESSIGT;7;;
+                DE;*;BUSINESS_VORSTEUERABZUG;*;0;;
+                DE;adesso SE|info@dummy.de;BUSINESS;*;0;2024-01-01;2024-12-31
+                """);
+
+        var tarif = new SteuerRegelwerk(SteuerRegelwerk.lese(datei)).tarif("DE", HEUTE);
+
+        assertThat(tarif.calculateMwSt(PRIVAT, 100d)).isEqualTo(19d);
+        assertThat(tarif.calculateMwSt(PRIVAT, Satzklasse.ERMAESSIGT, 100d)).isEqualTo(100d * 0.07d);
+        assertThat(tarif.calculateMwSt(BUSINESS_ABZUG, 100d)).isZero();
+        assertThat(tarif.calculateMwSt(BUSINESS, 100d)).isZero();
+    }
+
+    @Test
+    void malformedRuleTableReportsLine() throws IOException {
+        var datei = Files.writeString(verzeichnis.resolve("steuern.csv"), "DE;*;*;*;19;;\nDE;*;KEINE;*;19;;\n");
+
+        assertThatThrownBy(() -> SteuerRegelwerk.lese(datei))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Zeile 2");
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Check whether the {@linkplain VerteilterVersand} partitions invoices by customer, keeps their order within a
+ * partition, merges the same totals as a sequential evaluation and reassigns the partition of a crashed worker
+ *
+ * @see VerteilterVersand
+ */
+class VerteilterVersandTest {
+
+    private static final int ANZAHL = 2_000;
+    /**
+     * The worker output is compared with the expected {@linkplain Dummy} lines, including the euro sign
+     */
+    private static final String UTF8 = "-Dstdout.encoding=UTF-8";
+
+    /**
+     * Worker, der beim ersten Aufruf im ganzen Lauf vor der vierten Mail abstürzt
+     */
+    static final class AbstuerzenderWorker {
+        public static void main(String[] args) throws IOException {
+            var marke = Path.of(System.getProperty("absturz.marke"));
+            int[] mails = {0};
+            MailSenke mail = (empf, txt) -> {
+                if (++mails[0] == 4 && !Files.exists(marke)) {
+                    try {
+                        Files.createFile(marke);
+                    } catch (IOException e) {
+                        // ein anderer Worker ist schon abgestürzt
+                        Dummy.sendViaMail(empf, txt);
+                        return;
+                    }
+                    Runtime.getRuntime().halt(137);
+                }
+                Dummy.sendViaMail(empf, txt);
+            };
+            VerteilterVersand.arbeite(args, mail, Dummy::storeInDB);
+            System.out.flush();
+        }
+    }
+
+    private static List<Rechnung> rechnungen() {
+        var konfiguration = new Lastgenerator.Konfiguration(Lastgenerator.Mischung.STANDARD, 200, 1.1d,
+                Lastgenerator.Betraege.LOGNORMAL, 3L);
+        return new Lastgenerator(konfiguration).erzeuge(ANZAHL);
+    }
+
+    private static Path csv(Path verzeichnis, List<Rechnung> rechnungen) throws IOException {
+        var zeilen = rechnungen.stream().map(r -> switch (r) {
+            case InterneVerechnung(var abt, var wert) -> "I;%s;%s".formatted(abt, wert);
+            case ExternVersandt(Privatkunde(var name, var mail), var wert) -> "P;%s;%s;%s".formatted(name, mail, wert);
+            case ExternVersandt(Businesskunde(var name, var mail, var abzug), var wert) ->
+                    "B;%s;%s;%s;%s".formatted(name, mail, abzug, wert);
+            case ExternVersandt(_, _) -> throw new IllegalArgumentException();
+        }).toList();
+        return Files.write(verzeichnis.resolve("rechnungen.csv"), zeilen);
+    }
+
+    private static VerteilterVersand.Konfiguration konfiguration(int worker, int partitionen) {
+        return new VerteilterVersand.Konfiguration(worker, partitionen, 3, Duration.ofMinutes(2), List.of(UTF8),
+                VerteilterVersand.class.getName());
+    }
+
+    /**
+     * First line of every {@linkplain Dummy} output in the order the invoices are sent
+     */
+    private static List<String> erwarteteAusgabe(List<Rechnung> rechnungen) {
+        var zeilen = new ArrayList<String>();
+        MailSenke mail = (empf, _) -> zeilen.add("Sende E-Mail an %s mit Inhalt:".formatted(empf));
+        DbSenke db = (abt, wert) -> zeilen.add("Speicher %s€ zur Verrechnung mit Abteilung %s".formatted(wert, abt));
+        rechnungen.forEach(r -> Main.sendInvoiceFor(r, mail, db));
+        return zeilen;
+    }
+
+    private static List<String> ausgabe(Path verzeichnis, int partition) throws IOException {
+        return Files.readAllLines(verzeichnis.resolve("partition-%d.ausgabe".formatted(partition))).stream()
+                .filter(zeile -> zeile.startsWith("Sende E-Mail an ") || zeile.startsWith("Speicher "))
+                .toList();
+    }
+
+    private static void assertSameTotals(MwStAuswertung.Ergebnis tatsaechlich, MwStAuswertung.Ergebnis erwartet) {
+        var a = tatsaechlich.gesamt();
+        var b = erwartet.gesamt();
+        assertThat(a.anzahl()).isEqualTo(b.anzahl());
+        assertThat(a.netto()).isCloseTo(b.netto(), within(1e-6));
+        assertThat(a.mwst()).isCloseTo(b.mwst(), within(1e-6));
+        assertThat(tatsaechlich.privatkunden().anzahl()).isEqualTo(erwartet.privatkunden().anzahl());
+        assertThat(tatsaechlich.steuerfreieBusinesskunden().anzahl())
+                .isEqualTo(erwartet.steuerfreieBusinesskunden().anzahl());
+        assertThat(tatsaechlich.abteilungen().keySet()).isEqualTo(erwartet.abteilungen().keySet());
+    }
+
+    @Test
+    void mergesSameTotalsAsSequentialEvaluation(@TempDir Path verzeichnis) throws Exception {
+        var rechnungen = rechnungen();
+
+        var ergebnis = VerteilterVersand.verteile(csv(verzeichnis, rechnungen), verzeichnis, konfiguration(2, 3));
+
+        assertThat(ergebnis.rechnungen()).isEqualTo(ANZAHL);
+        assertThat(ergebnis.partitionen()).hasSize(3)
+                .allSatisfy(teil -> assertThat(teil.unsicher()).isEmpty())
+                .allSatisfy(teil -> assertThat(teil.rechnungen()).isPositive());
+        assertThat(ergebnis.neuVergeben()).isZero();
+        assertSameTotals(ergebnis.summen(), MwStAuswertung.auswerten(rechnungen));
+    }
+
+    @Test
+    void keepsCustomerOrderWithinPartition(@TempDir Path verzeichnis) throws Exception {
+        var rechnungen = rechnungen();
+
+        VerteilterVersand.verteile(csv(verzeichnis, rechnungen), verzeichnis, konfiguration(3, 3));
+
+        var nachPartition = rechnungen.stream()
+                .collect(Collectors.groupingBy(r -> VerteilterVersand.partition(r, 3)));
+        for (int p = 0; p < 3; p++) {
+            assertThat(ausgabe(verzeichnis, p)).isEqualTo(erwarteteAusgabe(nachPartition.get(p)));
+        }
+    }
+
+    @Test
+    void partialResultKeepsNullAndLongDepartments(@TempDir Path verzeichnis) throws IOException {
+        var lang = "A".repeat(70_000);
+        var summen = MwStAuswertung.auswerten(List.of(
+                new InterneVerechnung(null, 1d), new InterneVerechnung(lang, 2d), new InterneVerechnung("HR", 3d)));
+        var datei = verzeichnis.resolve("teil-0");
+
+        VerteilterVersand.schreibe(datei, new FortsetzbarerVersand.Stand(3, summen, List.of(2L)));
+        var teil = VerteilterVersand.lese(datei, 0, 1);
+
+        assertThat(teil.rechnungen()).isEqualTo(3);
+        assertThat(teil.unsicher()).containsExactly(2L);
+        assertThat(teil.summen().abteilungen()).isEqualTo(summen.abteilungen()).containsKeys(null, lang, "HR");
+    }
+
+    @Test
+    void sameCustomerSamePartition() {
+        var a = new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 1d);
+        var b = new ExternVersandt(new Privatkunde("Merlin", "merlin@dummy.de"), 2d);
+        var hr = new InterneVerechnung("HR", 3d);
+
+        for (int partitionen = 1; partitionen < 17; partitionen++) {
+            assertThat(VerteilterVersand.partition(a, partitionen))
+                    .isEqualTo(VerteilterVersand.partition(b, partitionen))
+                    .isBetween(0, partitionen - 1);
+            assertThat(VerteilterVersand.partition(hr, partitionen))
+                    .isEqualTo(VerteilterVersand.partition(new InterneVerechnung("HR", 4d), partitionen));
+        }
+    }
+
+    @Test
+    void reassignsPartitionOfCrashedWorker(@TempDir Path verzeichnis) throws Exception {
+        var rechnungen = rechnungen();
+        var marke = verzeichnis.resolve("abgestuerzt");
+        var konfiguration = new VerteilterVersand.Konfiguration(2, 2, 2, Duration.ofMinutes(2),
+                List.of(UTF8, "-Dabsturz.marke=" + marke), AbstuerzenderWorker.class.getName());
+
+        var ergebnis = VerteilterVersand.verteile(csv(verzeichnis, rechnungen), verzeichnis, konfiguration);
+
+        assertThat(marke).exists();
+        assertThat(ergebnis.neuVergeben()).isEqualTo(1);
+        assertThat(ergebnis.rechnungen()).isEqualTo(ANZAHL);
+        assertSameTotals(ergebnis.summen(), MwStAuswertung.auswerten(rechnungen));
+
+        var neu = ergebnis.partitionen().stream().filter(t -> t.versuche() == 2).findFirst().orElseThrow();
+        assertThat(neu.unsicher()).hasSize(1);
+        // the crashed worker halted before the fourth mail, the new one skips delivered and uncertain invoices
+        var partition = rechnungen.stream()
+                .filter(r -> VerteilterVersand.partition(r, 2) == neu.partition())
+                .toList();
+        var ohneUnsichere = new ArrayList<>(partition);
+        ohneUnsichere.remove(neu.unsicher().getFirst().intValue());
+        assertThat(ausgabe(verzeichnis, neu.partition())).isEqualTo(erwarteteAusgabe(ohneUnsichere));
+    }
+
+    @Test
+    void failsAfterLastAttempt(@TempDir Path verzeichnis) throws Exception {
+        var csv = csv(verzeichnis, rechnungen());
+        var konfiguration = new VerteilterVersand.Konfiguration(1, 1, 2, Duration.ofMinutes(2), List.of(),
+                "io.github.mboegers.dop.invoice.GibtEsNicht");
+
+        assertThatThrownBy(() -> VerteilterVersand.verteile(csv, verzeichnis, konfiguration))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Partition 0 nach 2 Versuchen");
+    }
+
+    @Test
+    void rejectsInvalidKonfiguration() {
+        assertThatThrownBy(() -> konfiguration(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> konfiguration(1, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VerteilterVersand.Konfiguration(1, 1, 0, Duration.ofMinutes(1), List.of(),
+                VerteilterVersand.class.getName())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VerteilterVersand.Konfiguration(1, 1, 1, Duration.ZERO, List.of(),
+                VerteilterVersand.class.getName())).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.mboegers.dop.invoice;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check whether the {@linkplain VirtuellerVersand} delivers a whole batch for both dispatch styles, respects the
+ * concurrency limit per sink and collects failures per invoice
+ *
+ * @see VirtuellerVersand
+ */
+class VirtuellerVersandTest {
+
+    @ParameterizedTest
+    @EnumSource(VirtuellerVersand.Stil.class)
+    void failedInvoiceDoesNotAbortBatch(VirtuellerVersand.Stil stil) throws InterruptedException {
+        var gesendet = new ConcurrentLinkedQueue<String>();
+        var gespeichert = new ConcurrentLinkedQueue<String>();
+        var rechnungen = new ArrayList<Rechnung>();
+        for (int i = 0; i < 50; i++) {
+            rechnungen.add(new ExternVersandt(new Privatkunde("p" + i, "p" + i + "@dummy.de"), i));
+            rechnungen.add(new InterneVerechnung("abt" + i, i));
+        }
+        rechnungen.set(10, new ExternVersandt(new Businesskunde("kaputt", "fail", false), 1d));
+        var versand = new VirtuellerVersand(stil, (empf, txt) -> {
+            if (empf.equals("fail")) throw new IllegalStateException("Mailserver nicht erreichbar");
+            gesendet.add(empf);
+        }, 8, (abt, wert) -> gespeichert.add(abt), 2);
+
+        var ergebnis = versand.versende(rechnungen);
+
+        assertThat(ergebnis.versendet()).isEqualTo(99);
+        assertThat(ergebnis.fehlschlaege()).singleElement().satisfies(f -> {
+            assertThat(f.index()).isEqualTo(10);
+            assertThat(f.fehler()).isInstanceOf(IllegalStateException.class);
+        });
+        assertThat(gesendet).hasSize(49);
+        assertThat(gespeichert).hasSize(50);
+    }
+
+    @ParameterizedTest
+    @EnumSource(VirtuellerVersand.Stil.class)
+    void concurrencyLimitPerSink(VirtuellerVersand.Stil stil) throws InterruptedException {
+        var limit = 3;
+        var aktiv = new AtomicInteger();
+        var maximum = new AtomicInteger();
+        var latenz = new LatenzSenke(Duration.ofMillis(5));
+        MailSenke mail = (empf, txt) -> {
+            maximum.accumulateAndGet(aktiv.incrementAndGet(), Math::max);
+            latenz.sendViaMail(empf, txt);
+            aktiv.decrementAndGet();
+        };
+        var rechnungen = new ArrayList<Rechnung>();
+        for (int i = 0; i < 30; i++) {
+            rechnungen.add(new ExternVersandt(new Privatkunde("p", "p@dummy.de"), i));
+        }
+
+        var ergebnis = new VirtuellerVersand(stil, mail, limit, latenz, 1).versende(rechnungen);
+
+        assertThat(ergebnis.versendet()).isEqualTo(30);
+        assertThat(ergebnis.fehlschlaege()).isEmpty();
+        assertThat(maximum.get()).isBetween(1, limit);
+        assertThat(latenz.aufrufe()).isEqualTo(30);
+    }
+}